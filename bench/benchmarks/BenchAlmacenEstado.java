@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import utilidades.AlmacenEstado;
+import utilidades.AlmacenEstadoMapeado;
+import utilidades.AlmacenEstadoMemoria;
+
+/**
+ * Mide las operaciones de los dos {@link AlmacenEstado} con valores del
+ * tamaño de una partida: una lectura, una jugada completa (lectura y
+ * reemplazo) y una escritura.
+ *
+ * <p>
+ * El almacén mapeado se crea con un archivo de 1 MB para que las escrituras
+ * lo llenen y se mida también el coste de compactarlo. Su lectura se mide
+ * desde la caché cercana y desde el archivo, con una caché de una sola
+ * entrada.</p>
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchAlmacenEstado}. Se
+ * ejecuta en {@code build/bench-datos} y borra sus archivos al terminar.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchAlmacenEstado {
+
+    private static final int CLAVES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        medir("memoria", new AlmacenEstadoMemoria());
+
+        AlmacenEstadoMapeado mapeado = new AlmacenEstadoMapeado("bench-estado.dat", 1 << 20, 20, 10000);
+        medir("mapeado", mapeado);
+        System.out.println("Compactaciones del archivo: " + mapeado.getCompactaciones());
+
+        // Una caché de una entrada obliga a leer del archivo al alternar claves
+        AlmacenEstadoMapeado sinCache = new AlmacenEstadoMapeado("bench-estado-sin-cache.dat", 1 << 20, 20, 1);
+        for (int i = 0; i < CLAVES; i++) {
+            sinCache.escribir("partida:dados:" + i, new byte[13], 0);
+        }
+        Thread.sleep(200);
+        int[] siguiente = {0};
+        new Medidor().medir("Leer, mapeado sin caché", () -> sinCache.leer("partida:dados:" + (siguiente[0]++ % CLAVES)));
+
+        Files.deleteIfExists(Paths.get("bench-estado.dat"));
+        Files.deleteIfExists(Paths.get("bench-estado-sin-cache.dat"));
+    }
+
+    private static void medir(String nombre, AlmacenEstado almacen) throws Exception {
+        for (int i = 0; i < CLAVES; i++) {
+            almacen.escribir("partida:dados:" + i, new byte[13], 0);
+        }
+        Medidor medidor = new Medidor();
+        medidor.medir("Leer, " + nombre, () -> almacen.leer("partida:dados:500"));
+        medidor.medir("Jugada, " + nombre, () -> {
+            byte[] actual = almacen.leer("partida:dados:500");
+            return almacen.reemplazar("partida:dados:500", actual, new byte[13], 0);
+        });
+        // Se rotan las claves para que los lotes no se reduzcan a una sola escritura
+        int[] siguiente = {0};
+        medidor.medir("Escribir, " + nombre, () -> {
+            almacen.escribir("partida:dados:" + (siguiente[0]++ % CLAVES), new byte[13], 0);
+            return almacen;
+        });
+    }
+}
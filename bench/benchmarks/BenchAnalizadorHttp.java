@@ -0,0 +1,125 @@
+package benchmarks;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import servidor_main.AnalizadorHttp;
+import servidor_main.Peticion;
+
+/**
+ * Mide el análisis de peticiones con {@link AnalizadorHttp}, tal como lo hacen
+ * los dos motores de red: un analizador por conexión que se reinicia entre
+ * peticiones. Como referencia mide también la lectura con
+ * {@link BufferedReader#readLine()} y {@link String#split(String)} que se hacía
+ * antes en el motor bloqueante, sin volcar las cabeceras por la salida
+ * estándar como hacía entonces.
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchAnalizadorHttp}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchAnalizadorHttp {
+
+    private static final byte[] GET = ("GET /index HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Accept-Language: es-ES,es;q=0.8,en-US;q=0.5,en;q=0.3\r\n"
+            + "Accept-Encoding: gzip, deflate, br\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Cookie: tema=oscuro; sessionID=0f8e6d1c-3b2a-4c5d-9e8f-7a6b5c4d3e2f\r\n"
+            + "Upgrade-Insecure-Requests: 1\r\n"
+            + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final byte[] POST = ("POST / HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:128.0) Gecko/20100101 Firefox/128.0\r\n"
+            + "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"
+            + "Content-Type: application/x-www-form-urlencoded\r\n"
+            + "Content-Length: 54\r\n"
+            + "Connection: keep-alive\r\n"
+            + "\r\n"
+            + "user=usuario%40correo.com&pass=Abc123&accion=login&x=1").getBytes(StandardCharsets.ISO_8859_1);
+
+    public static void main(String[] args) throws Exception {
+        AnalizadorHttp analizador = new AnalizadorHttp();
+
+        Medidor medidor = new Medidor();
+        medidor.medir("GET con readLine (antes)", () -> leerConReadLine(GET));
+        medidor.medir("Analizar GET con cookie", () -> analizar(analizador, GET));
+        medidor.medir("POST con readLine (antes)", () -> leerConReadLine(POST));
+        medidor.medir("Analizar POST de formulario", () -> analizar(analizador, POST));
+    }
+
+    private static Object analizar(AnalizadorHttp analizador, byte[] peticion) {
+        analizador.analizar(peticion, 0, peticion.length);
+        Object resultado = analizador.getPeticion();
+        analizador.reiniciar();
+        return resultado;
+    }
+
+    /**
+     * Lectura anterior de una petición: un {@link BufferedReader} por
+     * conexión, una cadena por línea y un cuerpo de {@code Content-Length}
+     * caracteres.
+     */
+    private static Peticion leerConReadLine(byte[] peticion) throws IOException {
+        BufferedReader br = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(peticion), StandardCharsets.UTF_8));
+        String linea;
+        String metodo = "";
+        String url = "";
+        String version = "HTTP/1.0";
+        do {
+            linea = br.readLine();
+        } while (linea != null && linea.isEmpty());
+        String[] metodoSplit = linea.split(" ");
+        if (metodoSplit.length >= 2) {
+            metodo = metodoSplit[0];
+            url = metodoSplit[1];
+        }
+        if (metodoSplit.length >= 3) {
+            version = metodoSplit[2];
+        }
+
+        int contentLength = 0;
+        String sessionID = "";
+        String conexion = "";
+        while ((linea = br.readLine()) != null && !linea.isEmpty()) {
+            if (linea.startsWith("Content-Length:")) {
+                contentLength = Integer.parseInt(linea.split(": ")[1]);
+            } else if (linea.startsWith("Cookie: ")) {
+                String[] cookie = linea.substring(8).split("; ");
+                for (String estaCookie : cookie) {
+                    if (estaCookie.startsWith("sessionID=")) {
+                        sessionID = estaCookie.substring(10);
+                    }
+                }
+            } else if (linea.regionMatches(true, 0, "Connection:", 0, 11)) {
+                conexion = linea.substring(11).trim();
+            }
+        }
+
+        String cuerpo = "";
+        if (contentLength > 0) {
+            char[] buffer = new char[contentLength];
+            int leidos = 0;
+            while (leidos < contentLength) {
+                int n = br.read(buffer, leidos, contentLength - leidos);
+                if (n < 0) {
+                    break;
+                }
+                leidos += n;
+            }
+            cuerpo = new String(buffer, 0, leidos);
+        }
+
+        boolean keepAlive = version.equals("HTTP/1.1")
+                ? !conexion.equalsIgnoreCase("close")
+                : conexion.equalsIgnoreCase("keep-alive");
+        return new Peticion(metodo, url, sessionID, cuerpo, keepAlive);
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.mindrot.jbcrypt.BCrypt;
+import seguridad.CacheCredenciales;
+import seguridad.Cifradora;
+
+/**
+ * Mide la comprobación de una contraseña: con BCrypt a través del pool de
+ * {@link seguridad.EjecutorBCrypt}, como en un inicio de sesión sin caché, y
+ * con un acierto de {@link CacheCredenciales}.
+ *
+ * <p>
+ * El coste de BCrypt se elige con {@code -Dbench.coste} (10 por defecto) para
+ * que cada ronda tenga suficientes operaciones; el tiempo se multiplica por
+ * dos con cada punto de coste.</p>
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchBCrypt}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchBCrypt {
+
+    private static final int COSTE = Integer.getInteger("bench.coste", 10);
+
+    public static void main(String[] args) throws Exception {
+        String hash = BCrypt.hashpw("Abc123", BCrypt.gensalt(COSTE));
+        CacheCredenciales.guardar("usuario@correo.com", "Abc123", hash);
+
+        Medidor medidor = new Medidor();
+        medidor.medir("comprobarPassword, coste " + COSTE, () -> Cifradora.comprobarPassword("Abc123", hash));
+        medidor.medir("Acierto de la caché de credenciales", () -> CacheCredenciales.comprobar("usuario@correo.com", "Abc123", hash));
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import paginas.BufferSalida;
+import paginas.Cabecera;
+
+/**
+ * Mide la generación de la cabecera HTTP de una respuesta: como texto con
+ * {@link Cabecera#generarCabecera(int, int, String, boolean)} y en bytes
+ * sobre el búfer del hilo, como hace el servidor.
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchCabecera}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchCabecera {
+
+    private static final String SESION = "0f8e6d1c-3b2a-4c5d-9e8f-7a6b5c4d3e2f";
+
+    public static void main(String[] args) throws Exception {
+        Medidor medidor = new Medidor();
+        medidor.medir("generarCabecera (String)", () -> Cabecera.generarCabecera(4132, 200, SESION, true));
+        medidor.medir("escribirCabecera (BufferSalida del hilo)", () -> {
+            BufferSalida salida = BufferSalida.delHilo();
+            Cabecera.escribirCabecera(salida, 4132, 200, SESION, true);
+            return salida.getLongitud();
+        });
+        medidor.medir("escribirCabecera redirección sin sesión", () -> {
+            BufferSalida salida = BufferSalida.delHilo();
+            Cabecera.escribirCabecera(salida, 0, 300, "", false);
+            return salida.getLongitud();
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import config.Configuracion;
+import java.nio.charset.StandardCharsets;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import seguridad.Cifradora;
+
+/**
+ * Compara el cifrado AES de un registro de usuario con los objetos
+ * {@link Cipher} reutilizados de {@link Cifradora} frente a la preparación en
+ * cada llamada que se hacía antes: buscar el proveedor, construir la clave e
+ * inicializar el {@link Cipher}.
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchCifradora}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchCifradora {
+
+    public static void main(String[] args) throws Exception {
+        byte[] registro = "usuario@correo.com:$2a$12$lFsmVVcRGNFrpqS0bDkOg.XYXSx.xWvN/QOE8LbM5gEip6KC7tJzm"
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] cifrado = Cifradora.cifrar(registro);
+
+        Medidor medidor = new Medidor();
+        medidor.medir("Cifrar registro (preparación por llamada)", () -> porLlamada(Cipher.ENCRYPT_MODE, registro));
+        medidor.medir("Cifrar registro (Cipher del hilo)", () -> Cifradora.cifrar(registro));
+        medidor.medir("Descifrar registro (preparación por llamada)", () -> porLlamada(Cipher.DECRYPT_MODE, cifrado));
+        medidor.medir("Descifrar registro (Cipher del hilo)", () -> Cifradora.descifrar(cifrado));
+    }
+
+    /**
+     * Reproduce la preparación que se hacía en cada operación.
+     */
+    private static byte[] porLlamada(int modo, byte[] datos) throws Exception {
+        Cipher cipher = Cipher.getInstance(Configuracion.getAlgoritmo());
+        SecretKey clave = new SecretKeySpec(Configuracion.getClaveCifrado().getBytes(), Configuracion.getAlgoritmo());
+        cipher.init(modo, clave);
+        return cipher.doFinal(datos);
+    }
+}
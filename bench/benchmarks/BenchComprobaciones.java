@@ -0,0 +1,24 @@
+package benchmarks;
+
+import utilidades.Comprobaciones;
+
+/**
+ * Mide la validación de los datos de registro con
+ * {@link Comprobaciones#comprobarDatos(String, String)}, para datos válidos y
+ * para cada tipo de error.
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchComprobaciones}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchComprobaciones {
+
+    public static void main(String[] args) throws Exception {
+        Medidor medidor = new Medidor();
+        medidor.medir("Datos válidos", () -> Comprobaciones.comprobarDatos("usuario@correo.com", "Abc123"));
+        medidor.medir("Correo no válido", () -> Comprobaciones.comprobarDatos("usuario.correo.com", "Abc123"));
+        medidor.medir("Contraseña demasiado corta", () -> Comprobaciones.comprobarDatos("usuario@correo.com", "Ab1"));
+        medidor.medir("Contraseña sin mayúscula", () -> Comprobaciones.comprobarDatos("usuario@correo.com", "abc123"));
+    }
+}
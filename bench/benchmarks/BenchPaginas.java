@@ -0,0 +1,47 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import paginas.PaginaAdivina;
+import paginas.PaginaDado;
+import paginas.PaginaLogin;
+import paginas.PaginaPPT;
+
+/**
+ * Mide la generación de las páginas dinámicas con sus {@link paginas.Plantilla}
+ * y los mismos valores que usan los manejadores. Como referencia mide también
+ * la sustitución con {@link String#replaceAll(String, String)} y la
+ * codificación posterior que se hacía antes en cada petición.
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchPaginas}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchPaginas {
+
+    public static void main(String[] args) throws Exception {
+        Medidor medidor = new Medidor();
+        medidor.medir("Adivina con replaceAll (antes)", () -> PaginaAdivina.getPagina()
+                .replaceAll("<!--RESULTADO-->", "El número es MAYOR<br>Intentos restantes: 9")
+                .getBytes(StandardCharsets.UTF_8));
+        medidor.medir("Adivina con plantilla", () -> PaginaAdivina.getPlantilla().renderizar(
+                "El número es MAYOR<br>Intentos restantes: 9", null, null));
+        medidor.medir("Dados con plantilla", () -> PaginaDado.getPlantilla().renderizar(
+                "Ronda 2 de 5<br>",
+                "Has sacado un: 4<br><br>",
+                "La banca saca un: 2<br><br>",
+                "3",
+                "1",
+                null));
+        medidor.medir("PPT con plantilla", () -> PaginaPPT.getPlantilla().renderizar(
+                (String) null,
+                null,
+                "Piedra",
+                "Tijera",
+                "Has ganado la ronda<br>",
+                "2",
+                "1"));
+        medidor.medir("Login con mensaje de error", () -> PaginaLogin.getPlantilla().renderizar(
+                "Error: usuario o contraseña incorrectos."));
+    }
+}
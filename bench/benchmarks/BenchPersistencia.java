@@ -0,0 +1,69 @@
+package benchmarks;
+
+import config.Configuracion;
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Base64;
+import org.mindrot.jbcrypt.BCrypt;
+import seguridad.Cifradora;
+import seguridad.Persistencia;
+
+/**
+ * Mide {@link Persistencia} con un archivo de {@code -Dbench.usuarios}
+ * usuarios (1000 por defecto): el tiempo de carga del archivo y el de
+ * {@link Persistencia#loginUsuario(String, String)} para un usuario que no
+ * existe y para uno cuya credencial ya está en la caché.
+ *
+ * <p>
+ * El archivo se genera con el mismo formato de registros que escribe el
+ * servidor. Todos los usuarios comparten un único hash BCrypt con el coste
+ * actual, para que generar un millón de usuarios no lleve horas y ningún
+ * inicio de sesión dispare el recálculo del hash. La comprobación BCrypt se
+ * mide aparte en {@link BenchBCrypt}.</p>
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchPersistencia
+ * -Dbench.usuarios=100000}. Se ejecuta en {@code build/bench-datos} y
+ * sustituye su {@code usuarios.txt}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchPersistencia {
+
+    private static final int USUARIOS = Integer.getInteger("bench.usuarios", 1000);
+
+    public static void main(String[] args) throws Exception {
+        String hash = BCrypt.hashpw("Abc123", BCrypt.gensalt(Cifradora.getCoste()));
+        generar(hash);
+
+        Medidor medidor = new Medidor();
+        long inicio = System.nanoTime();
+        Persistencia.cargar();
+        medidor.anotar("Cargar " + USUARIOS + " usuarios", System.nanoTime() - inicio, 0);
+
+        String conocido = "usuario" + (USUARIOS / 2) + "@bench.com";
+        if (!Persistencia.loginUsuario(conocido, "Abc123")) {
+            throw new IllegalStateException("El usuario generado no puede iniciar sesión");
+        }
+        medidor.medir("Login inexistente, " + USUARIOS + " usuarios", () -> Persistencia.loginUsuario("nadie@bench.com", "Abc123"));
+        medidor.medir("Login en caché, " + USUARIOS + " usuarios", () -> Persistencia.loginUsuario(conocido, "Abc123"));
+    }
+
+    /**
+     * Escribe el archivo de usuarios: una línea en Base64 por usuario con el
+     * par {@code usuario:hash} cifrado.
+     */
+    private static void generar(String hash) throws Exception {
+        Base64.Encoder base64 = Base64.getEncoder();
+        try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(Paths.get(Configuracion.getRutaArchivoUsuarios())), 1 << 20)) {
+            for (int i = 0; i < USUARIOS; i++) {
+                byte[] cifrado = Cifradora.cifrar(("usuario" + i + "@bench.com:" + hash).getBytes(StandardCharsets.UTF_8));
+                salida.write(base64.encode(cifrado));
+                salida.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import config.Configuracion;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import seguridad.Logueadora;
+import seguridad.Origen;
+
+/**
+ * Compara lo que cuesta, en el hilo de la petición, registrar una entrada no
+ * válida de un juego: recorrer la pila para obtener el método y la línea y
+ * formatear la fecha, como se hacía antes, frente a dejar en el log un evento
+ * con un {@link Origen} constante.
+ *
+ * <p>
+ * El escritor del log funciona durante la prueba, así que se mide el coste
+ * real de encolar con el búfer lleno o vaciándose. El archivo de log generado
+ * se borra al terminar.</p>
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchRegistroErrores}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchRegistroErrores {
+
+    private static final Origen ORIGEN = new Origen(4, "adivina", "BenchRegistroErrores");
+
+    public static void main(String[] args) throws Exception {
+        Logueadora.configurarLogger();
+
+        Medidor medidor = new Medidor();
+        medidor.medir("Captura de pila y fecha (antes)", BenchRegistroErrores::capturaPila);
+        medidor.medir("Origen constante (Logueadora.registrar)", () -> {
+            Logueadora.registrar(ORIGEN, "abc");
+            return null;
+        });
+        System.out.println("Eventos escritos: " + Logueadora.getEscritos() + ", descartados por búfer lleno: " + Logueadora.getDescartados());
+        // El log de la prueba solo contiene eventos de relleno
+        Files.deleteIfExists(Paths.get(Configuracion.getRutaLog()));
+    }
+
+    /**
+     * Reproduce lo que hacía cada sitio antes de llamar al log.
+     */
+    private static Object capturaPila() {
+        String nombreMetodo = Thread.currentThread().getStackTrace()[1].getMethodName();
+        int lineaError = new Exception().getStackTrace()[0].getLineNumber();
+        String ahora = LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog()));
+        return nombreMetodo + lineaError + ahora;
+    }
+}
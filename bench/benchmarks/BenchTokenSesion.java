@@ -0,0 +1,38 @@
+package benchmarks;
+
+import seguridad.Sesiones;
+import seguridad.TokenSesion;
+
+/**
+ * Mide la emisión y verificación de los {@link TokenSesion} que se usan con
+ * sesiones firmadas: un token válido, uno con la firma alterada y uno mal
+ * codificado. Como referencia mide también la validación de una sesión
+ * guardada en memoria con {@link Sesiones#sesionValida(String)}.
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.BenchTokenSesion}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BenchTokenSesion {
+
+    public static void main(String[] args) throws Exception {
+        long ahora = System.currentTimeMillis();
+        long caduca = ahora + 86_400_000L;
+        String token = TokenSesion.emitir("usuario@correo.com", ahora, caduca);
+        // Se cambia un carácter de la firma; el último puede llevar solo bits de relleno
+        int posicion = token.length() - 4;
+        String alterado = token.substring(0, posicion) + (token.charAt(posicion) == 'A' ? 'B' : 'A') + token.substring(posicion + 1);
+        if (TokenSesion.verificar(token, ahora) == null || TokenSesion.verificar(alterado, ahora) != null) {
+            throw new IllegalStateException("La verificación de tokens no funciona");
+        }
+        String enMemoria = Sesiones.iniciarSesion("usuario@correo.com", "");
+
+        Medidor medidor = new Medidor();
+        medidor.medir("Emitir token", () -> TokenSesion.emitir("usuario@correo.com", ahora, caduca));
+        medidor.medir("Verificar token válido", () -> TokenSesion.verificar(token, ahora));
+        medidor.medir("Verificar token con firma alterada", () -> TokenSesion.verificar(alterado, ahora));
+        medidor.medir("Verificar token mal codificado", () -> TokenSesion.verificar("no es un token!", ahora));
+        medidor.medir("Validar sesión en memoria (referencia)", () -> Sesiones.sesionValida(enMemoria));
+    }
+}
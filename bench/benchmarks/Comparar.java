@@ -0,0 +1,83 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compara los resultados de una ejecución de las pruebas de rendimiento con
+ * una referencia y termina con error si alguna medida ha empeorado.
+ *
+ * <p>
+ * Los archivos tienen una línea {@code clase;medida;ns/op;B/op} por medida,
+ * como las que escribe {@link Medidor}. Por defecto solo se comparan los bytes
+ * reservados por operación, que apenas dependen de la máquina: una medida
+ * empeora si supera la referencia en más de {@code -Dbench.toleranciaBytes}
+ * veces (1,25) y 64 bytes. El tiempo solo se compara si se indica
+ * {@code -Dbench.toleranciaTiempo}, útil en una máquina dedicada. Las medidas
+ * sin referencia se muestran pero no se comprueban.</p>
+ *
+ * <p>
+ * Uso: {@code ant bench-todos}, que lo ejecuta al final con
+ * {@code bench/referencia.csv}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class Comparar {
+
+    private static final double TOLERANCIA_BYTES = Double.parseDouble(System.getProperty("bench.toleranciaBytes", "1.25"));
+    private static final double HOLGURA_BYTES = 64;
+    private static final double TOLERANCIA_TIEMPO = Double.parseDouble(System.getProperty("bench.toleranciaTiempo", "0"));
+
+    public static void main(String[] args) throws Exception {
+        Map<String, double[]> resultados = leer(Paths.get(System.getProperty("bench.resultados")));
+        Map<String, double[]> referencia = leer(Paths.get(System.getProperty("bench.referencia")));
+
+        int empeoradas = 0;
+        for (Map.Entry<String, double[]> medida : resultados.entrySet()) {
+            double[] actual = medida.getValue();
+            double[] esperado = referencia.get(medida.getKey());
+            String estado;
+            if (esperado == null) {
+                estado = "sin referencia";
+            } else if (actual[1] > esperado[1] * TOLERANCIA_BYTES + HOLGURA_BYTES) {
+                estado = String.format("EMPEORA: %.1f B/op frente a %.1f", actual[1], esperado[1]);
+                empeoradas++;
+            } else if (TOLERANCIA_TIEMPO > 0 && actual[0] > esperado[0] * TOLERANCIA_TIEMPO) {
+                estado = String.format("EMPEORA: %.1f ns/op frente a %.1f", actual[0], esperado[0]);
+                empeoradas++;
+            } else {
+                estado = "ok";
+            }
+            System.out.printf("%-75s %s%n", medida.getKey(), estado);
+        }
+        if (empeoradas > 0) {
+            System.out.println(empeoradas + " medidas han empeorado respecto a la referencia");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Lee un archivo de resultados. Si una medida aparece varias veces se
+     * queda la última.
+     */
+    private static Map<String, double[]> leer(Path archivo) throws Exception {
+        Map<String, double[]> medidas = new LinkedHashMap<>();
+        if (!Files.exists(archivo)) {
+            return medidas;
+        }
+        List<String> lineas = Files.readAllLines(archivo, StandardCharsets.UTF_8);
+        for (String linea : lineas) {
+            String[] campos = linea.split(";");
+            if (campos.length == 4) {
+                medidas.put(campos[0] + " / " + campos[1],
+                        new double[]{Double.parseDouble(campos[2]), Double.parseDouble(campos[3])});
+            }
+        }
+        return medidas;
+    }
+}
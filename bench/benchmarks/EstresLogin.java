@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import seguridad.Persistencia;
+
+/**
+ * Prueba de estrés de {@link Persistencia}: mide la latencia de los inicios
+ * de sesión mientras otros hilos registran usuarios nuevos sin parar.
+ *
+ * <p>
+ * Muestra los percentiles 50, 99 y máximo de {@code loginUsuario}. Con la
+ * antigua espera activa de un segundo el percentil 99 superaba el segundo en
+ * cuanto había un registro en curso; con el cerrojo de lectura y escritura
+ * debe quedarse en el coste de la comprobación BCrypt.</p>
+ *
+ * <p>
+ * Uso: {@code ant bench -Dbench.clase=benchmarks.EstresLogin}, con
+ * {@code -Dbench.hilosLogin}, {@code -Dbench.hilosRegistro} y
+ * {@code -Dbench.segundos} opcionales. Se ejecuta en
+ * {@code build/bench-datos}, con su propio {@code usuarios.txt}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class EstresLogin {
+
+    private static final int HILOS_LOGIN = Integer.getInteger("bench.hilosLogin", 8);
+    private static final int HILOS_REGISTRO = Integer.getInteger("bench.hilosRegistro", 2);
+    private static final int SEGUNDOS = Integer.getInteger("bench.segundos", 20);
+
+    public static void main(String[] args) throws Exception {
+        Persistencia.cargar();
+        Persistencia.guardarUsuario("estres@login.com", "Abc123");
+
+        AtomicBoolean parar = new AtomicBoolean();
+        AtomicInteger registros = new AtomicInteger();
+        List<Long> latencias = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch fin = new CountDownLatch(HILOS_LOGIN + HILOS_REGISTRO);
+        long prefijo = System.nanoTime();
+
+        for (int i = 0; i < HILOS_REGISTRO; i++) {
+            new Thread(() -> {
+                try {
+                    while (!parar.get()) {
+                        String usuario = "nuevo" + prefijo + "-" + registros.incrementAndGet() + "@login.com";
+                        Persistencia.guardarUsuario(usuario, "Abc123");
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    fin.countDown();
+                }
+            }, "registro-" + i).start();
+        }
+        for (int i = 0; i < HILOS_LOGIN; i++) {
+            new Thread(() -> {
+                try {
+                    while (!parar.get()) {
+                        long inicio = System.nanoTime();
+                        if (!Persistencia.loginUsuario("estres@login.com", "Abc123")) {
+                            throw new IllegalStateException("Login rechazado");
+                        }
+                        latencias.add(System.nanoTime() - inicio);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    fin.countDown();
+                }
+            }, "login-" + i).start();
+        }
+
+        Thread.sleep(SEGUNDOS * 1000L);
+        parar.set(true);
+        fin.await();
+
+        List<Long> ordenadas = new ArrayList<>(latencias);
+        Collections.sort(ordenadas);
+        System.out.printf("Registros: %d, inicios de sesión: %d%n", registros.get(), ordenadas.size());
+        System.out.printf("Login p50: %.1f ms, p99: %.1f ms, máximo: %.1f ms%n",
+                percentil(ordenadas, 0.50), percentil(ordenadas, 0.99), percentil(ordenadas, 1.0));
+    }
+
+    private static double percentil(List<Long> ordenadas, double p) {
+        if (ordenadas.isEmpty()) {
+            return 0;
+        }
+        int indice = (int) Math.ceil(p * ordenadas.size()) - 1;
+        return ordenadas.get(Math.max(0, indice)) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,125 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Utilidad mínima para medir el tiempo y la memoria reservada por operación
+ * de un fragmento de código, en el hilo actual.
+ *
+ * <p>
+ * Ejecuta primero una fase de calentamiento para que el compilador JIT
+ * optimice el código y después varias rondas de medida, de las que muestra la
+ * mejor. La memoria se mide con el contador de bytes reservados por hilo de
+ * la JVM ({@code com.sun.management.ThreadMXBean}), si está disponible.</p>
+ *
+ * <p>
+ * Si se indica {@code -Dbench.resultados=archivo}, cada medida se añade
+ * además a ese archivo como una línea {@code clase;medida;ns/op;B/op}, que
+ * {@link Comparar} contrasta con una referencia.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class Medidor {
+
+    /**
+     * Operación a medir. Devuelve un valor para que el JIT no pueda eliminar
+     * el trabajo como código muerto.
+     */
+    public interface Operacion {
+
+        Object ejecutar() throws Exception;
+    }
+
+    private static final com.sun.management.ThreadMXBean HILOS = hilos();
+
+    private static volatile Object sumidero;
+
+    private final int calentamiento = Integer.getInteger("bench.calentamiento", 3);
+    private final int rondas = Integer.getInteger("bench.rondas", 5);
+    private final long milisRonda = Long.getLong("bench.milisRonda", 1000);
+
+    /**
+     * Mide una operación y muestra una línea con su nombre, el tiempo por
+     * operación y los bytes reservados por operación.
+     *
+     * @param nombre nombre de la medida
+     * @param operacion operación a medir
+     * @return nanosegundos por operación de la mejor ronda
+     * @throws Exception si la operación falla
+     */
+    public double medir(String nombre, Operacion operacion) throws Exception {
+        for (int i = 0; i < calentamiento; i++) {
+            ronda(operacion);
+        }
+        double mejorNanos = Double.MAX_VALUE;
+        double bytes = 0;
+        for (int i = 0; i < rondas; i++) {
+            double[] resultado = ronda(operacion);
+            if (resultado[0] < mejorNanos) {
+                mejorNanos = resultado[0];
+                bytes = resultado[1];
+            }
+        }
+        anotar(nombre, mejorNanos, bytes);
+        return mejorNanos;
+    }
+
+    /**
+     * Muestra una medida y la añade al archivo de resultados, si se ha
+     * indicado uno. Sirve también para medidas que no se toman con
+     * {@link #medir(String, Operacion)}, como el tiempo de una carga.
+     *
+     * @param nombre nombre de la medida
+     * @param nanos nanosegundos por operación
+     * @param bytes bytes reservados por operación
+     * @throws IOException si no se puede escribir el archivo de resultados
+     */
+    public void anotar(String nombre, double nanos, double bytes) throws IOException {
+        System.out.printf("%-45s %14.1f ns/op %12.1f B/op%n", nombre, nanos, bytes);
+        String resultados = System.getProperty("bench.resultados");
+        if (resultados != null && !resultados.isBlank()) {
+            String linea = String.format(Locale.ROOT, "%s;%s;%.1f;%.1f%n",
+                    System.getProperty("bench.clase", "?"), nombre, nanos, bytes);
+            Files.write(Paths.get(resultados), linea.getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Ejecuta la operación durante el tiempo de una ronda.
+     *
+     * @return nanosegundos y bytes reservados por operación
+     */
+    private double[] ronda(Operacion operacion) throws Exception {
+        long hilo = Thread.currentThread().getId();
+        long bytesInicio = HILOS != null ? HILOS.getThreadAllocatedBytes(hilo) : 0;
+        long inicio = System.nanoTime();
+        long limite = inicio + milisRonda * 1_000_000L;
+        long operaciones = 0;
+        long ahora;
+        do {
+            sumidero = operacion.ejecutar();
+            operaciones++;
+            ahora = System.nanoTime();
+        } while (ahora < limite);
+        long bytes = HILOS != null ? HILOS.getThreadAllocatedBytes(hilo) - bytesInicio : 0;
+        return new double[]{(double) (ahora - inicio) / operaciones, (double) bytes / operaciones};
+    }
+
+    private static com.sun.management.ThreadMXBean hilos() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (hilos.isThreadAllocatedMemorySupported()) {
+                hilos.setThreadAllocatedMemoryEnabled(true);
+                return hilos;
+            }
+        }
+        return null;
+    }
+}
@@ -1,26 +1,40 @@
 package config;
 
-import java.util.logging.Logger;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Clase de configuración centralizada para parámetros del servidor.
  *
  * <p>
- * Esta clase proporciona acceso a constantes utilizadas en la configuración de
- * un servidor, como el puerto de conexión, el algoritmo de cifrado, las rutas
- * de archivos, configuraciones SSL, y el formato de fecha y hora.
+ * Esta clase proporciona acceso a los parámetros del servidor, como el puerto
+ * de conexión, los tamaños de los pools de hilos y de las cachés, los tiempos
+ * de espera, las rutas de archivos, la configuración SSL y el formato de fecha
+ * y hora.
  * </p>
  *
  * <p>
- * Todos los valores están definidos como constantes privadas y son accesibles a
- * través de métodos públicos estáticos, lo que permite mantener un punto único
- * y seguro para modificar parámetros clave del sistema.
+ * Cada parámetro se lee de las fuentes de {@link FuentesConfiguracion}, con
+ * precedencia de la línea de comandos sobre las propiedades del sistema, el
+ * entorno y el archivo de propiedades, y si ninguna lo define se usa su valor
+ * por defecto. Los valores se comprueban al cargar la clase y
+ * {@link #validar()} informa de todos los errores a la vez al arrancar, en
+ * lugar de usar en silencio el valor por defecto de un parámetro mal escrito.
  * </p>
  *
  * <p>
- * También proporciona una instancia global de {@link Logger} para el registro
- * de eventos del sistema, así como detalles sobre el algoritmo y clave de
- * cifrado utilizados en operaciones de seguridad.
+ * Casi todos los valores se leen una sola vez. Los que se pueden cambiar sin
+ * reiniciar (tamaños de los pools, tiempos de espera de keep-alive y BCrypt,
+ * tamaños de las cachés de credenciales y sesiones y el nivel y la política
+ * de los registros) se vuelven a leer cuando cambia el archivo de
+ * propiedades, si {@link #vigilarArchivo()} está activo. Los nuevos valores
+ * se aplican todos juntos, y solo si son todos válidos, y después se avisa a
+ * los oyentes registrados con {@link #agregarOyente(Runnable)}.
  * </p>
  *
  * <p>
@@ -31,32 +45,108 @@ import java.util.logging.Logger;
  */
 public class Configuracion {
 
+// Estado de la lectura de la configuración
+    private static final List<String> errores = new ArrayList<>();
+    private static final Set<String> conocidos = new HashSet<>();
+    private static final List<Runnable> oyentes = new CopyOnWriteArrayList<>();
+
 // Parámetros del servidor
-    private static final int PUERTO = Integer.parseInt(System.getenv("PORT"));
+    private static final int PUERTO = leerEntero("PORT", 8080, 1, 65535);
+    private static final int TAMANO_BUFER = leerEntero("TAMANO_BUFER", 8192, 1024, 1 << 20);
+    private static final int RECARGA_CONFIGURACION = leerEntero("RECARGA_CONFIGURACION", 5, 0, 3600);
+
+// Parámetros del motor de red
+    private static final String MOTOR = leerOpcion("MOTOR", "bloqueante", "bloqueante", "nio");
+    private static final int HILOS_NIO = leerEntero("HILOS_NIO", Runtime.getRuntime().availableProcessors(), 1, 1024);
+
+// Parámetros del ejecutor de conexiones
+    private static final String MODO_HILOS = leerOpcion("MODO_HILOS", "plataforma", "plataforma", "virtual");
+    private static final int COLA_CONEXIONES = leerEntero("COLA_CONEXIONES", 1000, 1, 1_000_000);
+
+// Parámetros del pool de cálculos BCrypt
+    private static final int COLA_BCRYPT = leerEntero("COLA_BCRYPT", 64, 1, 1_000_000);
+
+// Parámetros del coste de BCrypt
+    private static final int COSTE_BCRYPT = leerEntero("COSTE_BCRYPT", 12, 4, 31);
+    private static final boolean CALIBRAR_BCRYPT = leerBooleano("CALIBRAR_BCRYPT", false);
+    private static final int PRESUPUESTO_BCRYPT = leerEntero("PRESUPUESTO_BCRYPT", 250, 1, 60_000);
+
+// Parámetros de las sesiones
+    private static final int TTL_INACTIVIDAD_SESION = leerEntero("TTL_INACTIVIDAD_SESION", 1800, 1, Integer.MAX_VALUE);
+    private static final int TTL_ABSOLUTO_SESION = leerEntero("TTL_ABSOLUTO_SESION", 86400, 1, Integer.MAX_VALUE);
+    private static final String MODO_SESIONES = leerOpcion("MODO_SESIONES", "memoria", "memoria", "firmada");
+    private static final String CLAVE_SESIONES = leerVariable("CLAVE_SESIONES", "");
+
+// Parámetros del almacén de estado de sesiones y partidas
+    private static final String ALMACEN_ESTADO = leerOpcion("ALMACEN_ESTADO", "memoria", "memoria", "mapeado");
+    private static final String RUTA_ALMACEN_ESTADO = leerVariable("RUTA_ALMACEN_ESTADO", "estado.dat");
+    private static final int TAMANO_ALMACEN_ESTADO = leerEntero("TAMANO_ALMACEN_ESTADO", 64, 1, 2047);
+    private static final int ESPERA_ALMACEN_ESTADO = leerEntero("ESPERA_ALMACEN_ESTADO", 20, 1, 10_000);
+    private static final int MAX_CACHE_ESTADO = leerEntero("MAX_CACHE_ESTADO", 10000, 1, Integer.MAX_VALUE);
 
 // Parámetros del logger
-    private static final String LOGGER_NOMBRE = "MiLog";
-    private static final String RUTA_LOG = "logErrores.log";
-    private static final Logger LOGGER = Logger.getLogger(LOGGER_NOMBRE);
+    private static final String RUTA_LOG = leerVariable("RUTA_LOG", "logErrores.log");
+    private static final int CAPACIDAD_LOG = leerEntero("CAPACIDAD_LOG", 8192, 1, 1_000_000);
 
 // Parámetros de usuarios y datos
-    private static final String ARCHIVO_DE_DATOS_USUARIOS = "usuarios.txt";
+    private static final String ARCHIVO_DE_DATOS_USUARIOS = leerVariable("ARCHIVO_USUARIOS", "usuarios.txt");
 
 // Parámetros de cifrado
     private static final String ALGORITMO = "AES";
-    private static final String KEY = "1234567890123456";
+    private static final String KEY = leerVariable("CLAVE_CIFRADO", "1234567890123456");
 
 // Formatos de fecha y hora
     private static final String FORMATO_LOG = "yyyy-MM-dd HH:mm:ss";
     private static final String FORMATO_SERVIDOR = "dd-MM-yyyy HH:mm";
 
 // Parámetros del almacén SSL (Keystore)
-    private static final String RUTA_ALMACEN_SSL = "AlmacenSSL";
-    private static final String PASS_ALMACEN_SSL = "123456";
-    private static final String TIPO_ALMACEN = "JKS";
+    private static final String RUTA_ALMACEN_SSL = leerVariable("RUTA_ALMACEN_SSL", "AlmacenSSL");
+    private static final String PASS_ALMACEN_SSL = leerVariable("PASSWORD_ALMACEN_SSL", "123456");
+    private static final String TIPO_ALMACEN = leerVariable("TIPO_ALMACEN_SSL", "JKS");
     private static final String ALGORITMO_ALMACEN_SSL = "SunX509";
     private static final String PROTOCOLO_ALMACEN_SSL = "TLS";
 
+// Parámetros de TLS
+    private static final boolean TLS = leerBooleano("TLS", false);
+    private static final String PROTOCOLOS_TLS = leerVariable("PROTOCOLOS_TLS", "TLSv1.3,TLSv1.2");
+    private static final String CIFRADOS_TLS = leerVariable("CIFRADOS_TLS", "");
+    private static final int CACHE_SESIONES_TLS = leerEntero("CACHE_SESIONES_TLS", 20000, 0, Integer.MAX_VALUE);
+    private static final int TTL_SESIONES_TLS = leerEntero("TTL_SESIONES_TLS", 86400, 0, Integer.MAX_VALUE);
+    private static final boolean TICKETS_TLS = leerBooleano("TICKETS_TLS", true);
+
+// Parámetros que se pueden cambiar sin reiniciar
+    private static final Set<String> RECARGABLES = Set.of("HILOS_MAXIMOS", "HILOS_BCRYPT", "TIEMPO_KEEP_ALIVE",
+            "MAX_PETICIONES_CONEXION", "ESPERA_BCRYPT", "TTL_CACHE_CREDENCIALES", "MAX_CACHE_CREDENCIALES",
+            "MAX_SESIONES", "POLITICA_LOG", "NIVEL_LOG_ACCESOS", "MUESTREO_LOG_ACCESOS");
+    private static volatile Recargables recargables = new Recargables();
+
+    /**
+     * Valores de los parámetros que se pueden cambiar sin reiniciar. Se
+     * sustituyen todos a la vez para que nunca se vea una mezcla de valores
+     * antiguos y nuevos.
+     */
+    private static final class Recargables {
+
+        // Ejecutor de conexiones y pool de BCrypt
+        final int hilosMaximos = leerEntero("HILOS_MAXIMOS", 200, 1, 10_000);
+        final int hilosBCrypt = leerEntero("HILOS_BCRYPT", Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 1, 1024);
+        final int esperaBCrypt = leerEntero("ESPERA_BCRYPT", 5000, 1, 600_000);
+
+        // Conexiones persistentes (keep-alive)
+        final int tiempoKeepAlive = leerEntero("TIEMPO_KEEP_ALIVE", 5, 1, 3600);
+        final int maxPeticionesConexion = leerEntero("MAX_PETICIONES_CONEXION", 100, 1, 1_000_000);
+
+        // Cachés de credenciales y sesiones
+        final int ttlCacheCredenciales = leerEntero("TTL_CACHE_CREDENCIALES", 60, 0, 86400);
+        final int maxCacheCredenciales = leerEntero("MAX_CACHE_CREDENCIALES", 10000, 0, Integer.MAX_VALUE);
+        final int maxSesiones = leerEntero("MAX_SESIONES", 100000, 1, Integer.MAX_VALUE);
+
+        // Registros
+        final String politicaLog = leerOpcion("POLITICA_LOG", "descartar", "descartar", "bloquear");
+        final String nivelLogAccesos = leerOpcion("NIVEL_LOG_ACCESOS", "acceso", "ninguno", "acceso", "depuracion");
+        final int muestreoLogAccesos = leerEntero("MUESTREO_LOG_ACCESOS", 1, 1, 1_000_000);
+    }
+
     /**
      * Obtiene el puerto TCP en el que escucha el servidor.
      *
@@ -67,12 +157,314 @@ public class Configuracion {
     }
 
     /**
-     * Devuelve la instancia de {@link Logger} utilizada para el sistema.
+     * Devuelve el tamaño en bytes del búfer en el que se leen las peticiones
+     * de cada conexión.
+     *
+     * @return tamaño del búfer de lectura
+     */
+    public static int getTamanoBufer() {
+        return Configuracion.TAMANO_BUFER;
+    }
+
+    /**
+     * Devuelve cada cuántos segundos se comprueba si ha cambiado el archivo
+     * de propiedades, o 0 si no se vigila.
+     *
+     * @return intervalo de comprobación del archivo en segundos
+     */
+    public static int getRecargaConfiguracion() {
+        return Configuracion.RECARGA_CONFIGURACION;
+    }
+
+    /**
+     * Devuelve el motor de red del servidor: {@code "bloqueante"} para
+     * {@link java.net.ServerSocket} con un hilo por conexión activa o
+     * {@code "nio"} para el motor no bloqueante basado en selectores.
+     *
+     * @return motor de red configurado
+     */
+    public static String getMotor() {
+        return Configuracion.MOTOR;
+    }
+
+    /**
+     * Devuelve el número de bucles de eventos del motor NIO.
+     *
+     * @return número de hilos de bucle de eventos
+     */
+    public static int getHilosNIO() {
+        return Configuracion.HILOS_NIO;
+    }
+
+    /**
+     * Devuelve el modo de ejecución de las conexiones: {@code "plataforma"}
+     * para un pool acotado de hilos o {@code "virtual"} para un hilo virtual
+     * por conexión.
+     *
+     * @return modo de ejecución de las conexiones
+     */
+    public static String getModoHilos() {
+        return Configuracion.MODO_HILOS;
+    }
+
+    /**
+     * Devuelve el número máximo de hilos del pool de conexiones.
+     *
+     * @return tamaño máximo del pool de hilos
+     */
+    public static int getHilosMaximos() {
+        return Configuracion.recargables.hilosMaximos;
+    }
+
+    /**
+     * Devuelve el número máximo de conexiones que pueden quedar en cola a la
+     * espera de un hilo libre.
+     *
+     * @return profundidad de la cola de conexiones
+     */
+    public static int getColaConexiones() {
+        return Configuracion.COLA_CONEXIONES;
+    }
+
+    /**
+     * Devuelve los segundos que una conexión persistente puede permanecer
+     * inactiva antes de cerrarse.
+     *
+     * @return tiempo de inactividad en segundos
+     */
+    public static int getTiempoKeepAlive() {
+        return Configuracion.recargables.tiempoKeepAlive;
+    }
+
+    /**
+     * Devuelve el número máximo de peticiones que se atienden por una misma
+     * conexión antes de cerrarla.
+     *
+     * @return máximo de peticiones por conexión
+     */
+    public static int getMaxPeticionesConexion() {
+        return Configuracion.recargables.maxPeticionesConexion;
+    }
+
+    /**
+     * Devuelve el número de hilos dedicados a los cálculos BCrypt de las
+     * contraseñas. Por defecto la mitad de los núcleos, para que el resto
+     * atienda a los juegos durante una ráfaga de inicios de sesión.
+     *
+     * @return tamaño del pool de BCrypt
+     */
+    public static int getHilosBCrypt() {
+        return Configuracion.recargables.hilosBCrypt;
+    }
+
+    /**
+     * Devuelve el número máximo de cálculos BCrypt que pueden esperar en cola.
+     * Si la cola está llena los inicios de sesión se rechazan.
+     *
+     * @return profundidad de la cola de BCrypt
+     */
+    public static int getColaBCrypt() {
+        return Configuracion.COLA_BCRYPT;
+    }
+
+    /**
+     * Devuelve los milisegundos que una petición espera como mucho a que
+     * termine su cálculo BCrypt, contando el tiempo en cola.
+     *
+     * @return tiempo máximo de espera en milisegundos
+     */
+    public static int getEsperaBCrypt() {
+        return Configuracion.recargables.esperaBCrypt;
+    }
+
+    /**
+     * Devuelve el factor de coste de BCrypt para los hash nuevos, si no se
+     * calibra al arrancar.
+     *
+     * @return factor de coste de BCrypt (de 4 a 31)
+     */
+    public static int getCosteBCrypt() {
+        return Configuracion.COSTE_BCRYPT;
+    }
+
+    /**
+     * Indica si el coste de BCrypt se calibra al arrancar midiendo el tiempo
+     * de cálculo en esta máquina, en lugar de usar {@link #getCosteBCrypt()}.
+     *
+     * @return {@code true} si se calibra el coste
+     */
+    public static boolean isCalibrarBCrypt() {
+        return Configuracion.CALIBRAR_BCRYPT;
+    }
+
+    /**
+     * Devuelve los milisegundos que puede tardar como mucho un cálculo BCrypt
+     * al calibrar el coste.
+     *
+     * @return presupuesto de tiempo de BCrypt en milisegundos
+     */
+    public static int getPresupuestoBCrypt() {
+        return Configuracion.PRESUPUESTO_BCRYPT;
+    }
+
+    /**
+     * Devuelve los segundos durante los que una credencial verificada se da
+     * por buena sin repetir la comprobación BCrypt.
+     *
+     * @return tiempo de vida de la caché de credenciales en segundos
+     */
+    public static int getTtlCacheCredenciales() {
+        return Configuracion.recargables.ttlCacheCredenciales;
+    }
+
+    /**
+     * Devuelve el número máximo de usuarios en la caché de credenciales.
+     *
+     * @return tamaño máximo de la caché de credenciales
+     */
+    public static int getMaxCacheCredenciales() {
+        return Configuracion.recargables.maxCacheCredenciales;
+    }
+
+    /**
+     * Devuelve los segundos sin uso tras los que caduca una sesión.
+     *
+     * @return tiempo de inactividad de las sesiones en segundos
+     */
+    public static int getTtlInactividadSesion() {
+        return Configuracion.TTL_INACTIVIDAD_SESION;
+    }
+
+    /**
+     * Devuelve los segundos tras los que caduca una sesión aunque se siga
+     * usando.
+     *
+     * @return duración máxima de las sesiones en segundos
+     */
+    public static int getTtlAbsolutoSesion() {
+        return Configuracion.TTL_ABSOLUTO_SESION;
+    }
+
+    /**
+     * Devuelve el número máximo de sesiones abiertas a la vez.
+     *
+     * @return máximo de sesiones
+     */
+    public static int getMaxSesiones() {
+        return Configuracion.recargables.maxSesiones;
+    }
+
+    /**
+     * Devuelve el modo de las sesiones: {@code "memoria"} para guardarlas en
+     * este proceso o {@code "firmada"} para llevarlas en la cookie como un
+     * token firmado que cualquier nodo con la misma clave puede verificar.
+     *
+     * @return modo de las sesiones configurado
+     */
+    public static String getModoSesiones() {
+        return Configuracion.MODO_SESIONES;
+    }
+
+    /**
+     * Devuelve la clave compartida, en Base64, con la que se firman los
+     * tokens de sesión. Vacía si no se ha configurado.
+     *
+     * @return clave de firma de las sesiones en Base64
+     */
+    public static String getClaveSesiones() {
+        return Configuracion.CLAVE_SESIONES;
+    }
+
+    /**
+     * Devuelve dónde se guardan las sesiones y las partidas: {@code "memoria"}
+     * para la memoria del proceso o {@code "mapeado"} para un archivo mapeado
+     * en memoria que sobrevive a los reinicios y que pueden compartir varios
+     * procesos de la misma máquina.
+     *
+     * @return tipo de almacén de estado configurado
+     */
+    public static String getAlmacenEstado() {
+        return Configuracion.ALMACEN_ESTADO;
+    }
+
+    /**
+     * Devuelve la ruta del archivo del almacén de estado mapeado.
+     *
+     * @return ruta del archivo del almacén de estado
+     */
+    public static String getRutaAlmacenEstado() {
+        return Configuracion.RUTA_ALMACEN_ESTADO;
+    }
+
+    /**
+     * Devuelve el tamaño del archivo del almacén de estado al crearlo, en
+     * megabytes. Un archivo existente conserva su tamaño.
      *
-     * @return instancia global de Logger
+     * @return tamaño del almacén de estado en megabytes
      */
-    public static Logger getLog() {
-        return Configuracion.LOGGER;
+    public static int getTamanoAlmacenEstado() {
+        return Configuracion.TAMANO_ALMACEN_ESTADO;
+    }
+
+    /**
+     * Devuelve cada cuántos milisegundos se escribe en el archivo el lote de
+     * escrituras pendientes del almacén de estado.
+     *
+     * @return intervalo entre lotes en milisegundos
+     */
+    public static int getEsperaAlmacenEstado() {
+        return Configuracion.ESPERA_ALMACEN_ESTADO;
+    }
+
+    /**
+     * Devuelve el número máximo de entradas de la caché cercana del almacén de
+     * estado.
+     *
+     * @return tamaño máximo de la caché del almacén de estado
+     */
+    public static int getMaxCacheEstado() {
+        return Configuracion.MAX_CACHE_ESTADO;
+    }
+
+    /**
+     * Devuelve el número máximo de eventos de log pendientes de escribir.
+     *
+     * @return capacidad del búfer del log
+     */
+    public static int getCapacidadLog() {
+        return Configuracion.CAPACIDAD_LOG;
+    }
+
+    /**
+     * Devuelve qué hacer cuando el búfer del log está lleno:
+     * {@code "descartar"} el evento o {@code "bloquear"} el hilo hasta que
+     * haya sitio.
+     *
+     * @return política de desbordamiento del log
+     */
+    public static String getPoliticaLog() {
+        return Configuracion.recargables.politicaLog;
+    }
+
+    /**
+     * Devuelve el nivel del registro de accesos: {@code "ninguno"},
+     * {@code "acceso"} para una línea por petición o {@code "depuracion"} para
+     * añadir además las cabeceras de cada petición y las conexiones nuevas.
+     *
+     * @return nivel del registro de accesos
+     */
+    public static String getNivelLogAccesos() {
+        return Configuracion.recargables.nivelLogAccesos;
+    }
+
+    /**
+     * Devuelve la proporción de peticiones correctas que se registran: una de
+     * cada N. Las respuestas de error se registran siempre.
+     *
+     * @return N, el muestreo del registro de accesos
+     */
+    public static int getMuestreoLogAccesos() {
+        return Configuracion.recargables.muestreoLogAccesos;
     }
 
     /**
@@ -178,4 +570,247 @@ public class Configuracion {
         return Configuracion.PROTOCOLO_ALMACEN_SSL;
     }
 
+    /**
+     * Indica si el servidor atiende las conexiones con TLS, en cualquiera de
+     * los dos motores de red.
+     *
+     * @return {@code true} si las conexiones usan TLS
+     */
+    public static boolean isTLS() {
+        return Configuracion.TLS;
+    }
+
+    /**
+     * Devuelve los protocolos TLS admitidos, separados por comas. El cliente y
+     * el servidor acuerdan siempre la versión más alta que tengan en común.
+     *
+     * @return protocolos TLS habilitados
+     */
+    public static String getProtocolosTLS() {
+        return Configuracion.PROTOCOLOS_TLS;
+    }
+
+    /**
+     * Devuelve las suites de cifrado admitidas, separadas por comas y en orden
+     * de preferencia del servidor. Vacío para usar las de la JVM.
+     *
+     * @return suites de cifrado habilitadas
+     */
+    public static String getCifradosTLS() {
+        return Configuracion.CIFRADOS_TLS;
+    }
+
+    /**
+     * Devuelve el número máximo de sesiones TLS que el servidor guarda para
+     * reanudarlas sin repetir el intercambio de claves completo.
+     *
+     * @return tamaño de la caché de sesiones TLS
+     */
+    public static int getCacheSesionesTLS() {
+        return Configuracion.CACHE_SESIONES_TLS;
+    }
+
+    /**
+     * Devuelve los segundos durante los que una sesión TLS se puede reanudar.
+     *
+     * @return duración de las sesiones TLS en segundos
+     */
+    public static int getTtlSesionesTLS() {
+        return Configuracion.TTL_SESIONES_TLS;
+    }
+
+    /**
+     * Indica si el servidor emite tickets de sesión TLS, con los que el
+     * cliente reanuda la sesión sin que el servidor la tenga guardada.
+     *
+     * @return {@code true} si se emiten tickets de sesión
+     */
+    public static boolean isTicketsTLS() {
+        return Configuracion.TICKETS_TLS;
+    }
+
+    /**
+     * Comprueba la configuración leída al arrancar: los valores de cada
+     * parámetro, que el archivo de propiedades se haya podido leer y que no
+     * haya parámetros desconocidos en la línea de comandos o en el archivo.
+     *
+     * @throws IllegalArgumentException con la lista de todos los errores
+     * encontrados
+     */
+    public static synchronized void validar() {
+        List<String> encontrados = new ArrayList<>(errores);
+        String errorArchivo = FuentesConfiguracion.getErrorArchivo();
+        if (errorArchivo != null) {
+            encontrados.add(errorArchivo);
+        }
+        int longitudClave = KEY.getBytes(StandardCharsets.UTF_8).length;
+        if (longitudClave != 16 && longitudClave != 24 && longitudClave != 32) {
+            encontrados.add(FuentesConfiguracion.origen("CLAVE_CIFRADO") + ": la clave AES debe tener 16, 24 o 32 bytes");
+        }
+        for (String nombre : FuentesConfiguracion.nombresDefinidos()) {
+            if (!conocidos.contains(nombre) && !nombre.equals("CONFIGURACION")) {
+                encontrados.add(FuentesConfiguracion.origen(nombre) + ": parámetro desconocido");
+            }
+        }
+        if (!encontrados.isEmpty()) {
+            throw new IllegalArgumentException("Configuración no válida:\n  " + String.join("\n  ", encontrados));
+        }
+    }
+
+    /**
+     * Registra una acción que se ejecuta cada vez que se aplican nuevos
+     * valores de los parámetros que se pueden cambiar sin reiniciar, por
+     * ejemplo para redimensionar un pool.
+     *
+     * @param oyente acción a ejecutar tras cada recarga
+     */
+    public static void agregarOyente(Runnable oyente) {
+        oyentes.add(oyente);
+    }
+
+    /**
+     * Arranca un hilo que comprueba cada {@link #getRecargaConfiguracion()}
+     * segundos si ha cambiado el archivo de propiedades y, si es así, aplica
+     * los nuevos valores con {@link #recargar()}. No hace nada si el
+     * intervalo es 0.
+     */
+    public static void vigilarArchivo() {
+        if (RECARGA_CONFIGURACION <= 0) {
+            return;
+        }
+        Thread hilo = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(RECARGA_CONFIGURACION * 1000L);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                recargar();
+            }
+        }, "configuracion-recarga");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * Vuelve a leer el archivo de propiedades si ha cambiado y aplica los
+     * valores de los parámetros que se pueden cambiar sin reiniciar.
+     *
+     * <p>
+     * Si algún valor nuevo no es válido no se aplica ninguno y se sigue con
+     * los anteriores. Los cambios en el resto de parámetros se anuncian pero
+     * no tienen efecto hasta el siguiente arranque.</p>
+     *
+     * @return {@code true} si se han aplicado valores nuevos
+     */
+    public static synchronized boolean recargar() {
+        Set<String> cambiados;
+        try {
+            cambiados = FuentesConfiguracion.recargarArchivo();
+        } catch (IOException e) {
+            System.out.println("No se puede recargar la configuración: " + e.getMessage());
+            return false;
+        }
+        if (cambiados.isEmpty()) {
+            return false;
+        }
+        List<String> aplicables = new ArrayList<>();
+        List<String> alReiniciar = new ArrayList<>();
+        for (String nombre : cambiados) {
+            (RECARGABLES.contains(nombre) ? aplicables : alReiniciar).add(nombre);
+        }
+        if (!alReiniciar.isEmpty()) {
+            System.out.println("Cambios de configuración que se aplicarán al reiniciar: " + alReiniciar);
+        }
+        if (aplicables.isEmpty()) {
+            return false;
+        }
+
+        errores.clear();
+        Recargables nuevos = new Recargables();
+        if (!errores.isEmpty()) {
+            System.out.println("Configuración recargada no válida, se mantiene la anterior:\n  " + String.join("\n  ", errores));
+            errores.clear();
+            return false;
+        }
+        recargables = nuevos;
+        System.out.println("Configuración recargada: " + aplicables);
+        for (Runnable oyente : oyentes) {
+            oyente.run();
+        }
+        return true;
+    }
+
+    /**
+     * Lee un parámetro de texto devolviendo un valor por defecto si ninguna
+     * fuente lo define.
+     *
+     * @param nombre nombre del parámetro
+     * @param defecto valor a devolver si el parámetro no está definido
+     * @return valor del parámetro o el valor por defecto
+     */
+    private static String leerVariable(String nombre, String defecto) {
+        conocidos.add(nombre);
+        String valor = FuentesConfiguracion.leer(nombre);
+        return valor == null ? defecto : valor;
+    }
+
+    /**
+     * Lee un parámetro numérico comprobando que esté dentro de un rango. Si
+     * no es un número o se sale del rango se anota el error y se devuelve el
+     * valor por defecto.
+     *
+     * @param nombre nombre del parámetro
+     * @param defecto valor a devolver si el parámetro no está definido o no es
+     * válido
+     * @param minimo valor mínimo admitido
+     * @param maximo valor máximo admitido
+     * @return valor numérico del parámetro o el valor por defecto
+     */
+    private static int leerEntero(String nombre, int defecto, int minimo, int maximo) {
+        String texto = leerVariable(nombre, null);
+        if (texto == null) {
+            return defecto;
+        }
+        try {
+            int valor = Integer.parseInt(texto);
+            if (valor >= minimo && valor <= maximo) {
+                return valor;
+            }
+        } catch (NumberFormatException e) {
+            // Se anota igual que un valor fuera de rango
+        }
+        errores.add(FuentesConfiguracion.origen(nombre) + "=" + texto + ": se esperaba un entero entre "
+                + minimo + " y " + maximo);
+        return defecto;
+    }
+
+    /**
+     * Lee un parámetro {@code true} o {@code false}. Cualquier otro valor se
+     * anota como error y se devuelve el valor por defecto.
+     */
+    private static boolean leerBooleano(String nombre, boolean defecto) {
+        return Boolean.parseBoolean(leerOpcion(nombre, String.valueOf(defecto), "true", "false"));
+    }
+
+    /**
+     * Lee un parámetro que debe ser una de las opciones dadas, sin distinguir
+     * mayúsculas. Cualquier otro valor se anota como error y se devuelve el
+     * valor por defecto.
+     */
+    private static String leerOpcion(String nombre, String defecto, String... opciones) {
+        String texto = leerVariable(nombre, null);
+        if (texto == null) {
+            return defecto;
+        }
+        for (String opcion : opciones) {
+            if (opcion.equalsIgnoreCase(texto)) {
+                return opcion;
+            }
+        }
+        errores.add(FuentesConfiguracion.origen(nombre) + "=" + texto + ": se esperaba uno de "
+                + String.join(", ", opciones));
+        return defecto;
+    }
+
 }
@@ -0,0 +1,236 @@
+package config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Fuentes de las que {@link Configuracion} lee sus parámetros.
+ *
+ * <p>
+ * Cada parámetro se busca por su nombre, por ejemplo {@code HILOS_MAXIMOS}, en
+ * este orden de precedencia:</p>
+ * <ol>
+ * <li>Argumentos de la línea de comandos, con la forma
+ * {@code --HILOS_MAXIMOS=400}.</li>
+ * <li>Propiedades del sistema, con la forma {@code -DHILOS_MAXIMOS=400}.</li>
+ * <li>Variables de entorno.</li>
+ * <li>El archivo de propiedades indicado por el parámetro
+ * {@code CONFIGURACION}, que se busca en las tres fuentes anteriores. Por
+ * defecto es {@code servidor.properties} en el directorio de trabajo y puede
+ * no existir.</li>
+ * <li>El valor por defecto de {@link Configuracion}.</li>
+ * </ol>
+ *
+ * <p>
+ * Los valores vacíos se ignoran. El archivo se puede volver a leer con
+ * {@link #recargarArchivo()} mientras el servidor está activo; el resto de
+ * fuentes no cambian.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class FuentesConfiguracion {
+
+    private static final String PREFIJO_ARGUMENTO = "--";
+
+    private static final Map<String, String> argumentos = new HashMap<>();
+    private static volatile boolean leida = false;
+
+    private static Path rutaArchivo;
+    private static boolean archivoObligatorio;
+    private static volatile Properties archivo = new Properties();
+    private static long modificacionArchivo = -1;
+    private static String errorArchivo;
+
+    /**
+     * Guarda los argumentos de la línea de comandos. Debe llamarse al
+     * principio de {@code main}, antes de leer ningún parámetro.
+     *
+     * @param args argumentos de la línea de comandos
+     * @throws IllegalArgumentException si algún argumento no tiene la forma
+     * {@code --NOMBRE=valor}
+     * @throws IllegalStateException si ya se ha leído algún parámetro
+     */
+    public static synchronized void cargarArgumentos(String[] args) {
+        if (leida) {
+            throw new IllegalStateException("Los argumentos deben cargarse antes de leer la configuración");
+        }
+        for (String argumento : args) {
+            int igual = argumento.indexOf('=');
+            if (!argumento.startsWith(PREFIJO_ARGUMENTO) || igual <= PREFIJO_ARGUMENTO.length()) {
+                throw new IllegalArgumentException("Argumento no válido, se esperaba --NOMBRE=valor: " + argumento);
+            }
+            argumentos.put(argumento.substring(PREFIJO_ARGUMENTO.length(), igual), argumento.substring(igual + 1));
+        }
+    }
+
+    /**
+     * Devuelve el valor de un parámetro según la precedencia de las fuentes.
+     *
+     * @param nombre nombre del parámetro
+     * @return el valor sin espacios alrededor, o {@code null} si ninguna
+     * fuente lo define
+     */
+    static String leer(String nombre) {
+        iniciar();
+        String valor = leerSinArchivo(nombre);
+        return valor != null ? valor : noVacio(archivo.getProperty(nombre));
+    }
+
+    /**
+     * Describe de qué fuente sale el valor de un parámetro, para los mensajes
+     * de error.
+     *
+     * @param nombre nombre del parámetro
+     * @return descripción de la fuente
+     */
+    static String origen(String nombre) {
+        if (noVacio(argumentos.get(nombre)) != null) {
+            return "argumento --" + nombre;
+        }
+        if (noVacio(System.getProperty(nombre)) != null) {
+            return "propiedad del sistema " + nombre;
+        }
+        if (noVacio(System.getenv(nombre)) != null) {
+            return "variable de entorno " + nombre;
+        }
+        return nombre + " en " + rutaArchivo;
+    }
+
+    /**
+     * Devuelve los nombres definidos en la línea de comandos y en el archivo,
+     * para detectar parámetros mal escritos. Las propiedades del sistema y el
+     * entorno contienen muchas más variables y no se comprueban.
+     *
+     * @return nombres de los parámetros definidos
+     */
+    static Set<String> nombresDefinidos() {
+        iniciar();
+        Set<String> nombres = new HashSet<>(argumentos.keySet());
+        nombres.addAll(archivo.stringPropertyNames());
+        return nombres;
+    }
+
+    /**
+     * Devuelve el error al leer el archivo de propiedades al arrancar.
+     *
+     * @return el mensaje de error, o {@code null} si se ha leído bien o no
+     * existe y no es obligatorio
+     */
+    static synchronized String getErrorArchivo() {
+        iniciar();
+        return errorArchivo;
+    }
+
+    /**
+     * Vuelve a leer el archivo de propiedades si ha cambiado desde la última
+     * lectura.
+     *
+     * @return los nombres cuyo valor ha cambiado en el archivo, vacío si no ha
+     * cambiado ninguno
+     * @throws IOException si el archivo existe pero no se puede leer; en ese
+     * caso se conservan los valores anteriores
+     */
+    static synchronized Set<String> recargarArchivo() throws IOException {
+        iniciar();
+        long modificacion = modificacion(rutaArchivo);
+        if (modificacion == modificacionArchivo) {
+            return Set.of();
+        }
+        Properties nuevas = leerArchivo(rutaArchivo);
+        Properties anteriores = archivo;
+        archivo = nuevas;
+        modificacionArchivo = modificacion;
+
+        Set<String> cambiadas = new HashSet<>();
+        for (String nombre : nuevas.stringPropertyNames()) {
+            if (!nuevas.getProperty(nombre).equals(anteriores.getProperty(nombre))) {
+                cambiadas.add(nombre);
+            }
+        }
+        for (String nombre : anteriores.stringPropertyNames()) {
+            if (!nuevas.containsKey(nombre)) {
+                cambiadas.add(nombre);
+            }
+        }
+        return cambiadas;
+    }
+
+    /**
+     * Localiza y lee el archivo de propiedades la primera vez que se pide un
+     * parámetro. A partir de ese momento los argumentos ya no se pueden
+     * cambiar.
+     */
+    private static synchronized void iniciar() {
+        if (leida) {
+            return;
+        }
+        String ruta = leerSinArchivo("CONFIGURACION");
+        archivoObligatorio = ruta != null;
+        rutaArchivo = Paths.get(ruta != null ? ruta : "servidor.properties");
+        try {
+            modificacionArchivo = modificacion(rutaArchivo);
+            archivo = leerArchivo(rutaArchivo);
+            if (archivoObligatorio && modificacionArchivo == 0) {
+                errorArchivo = "No existe el archivo de configuración " + rutaArchivo;
+            }
+        } catch (IOException e) {
+            errorArchivo = "No se puede leer el archivo de configuración " + rutaArchivo + ": " + e.getMessage();
+        }
+        leida = true;
+    }
+
+    private static String leerSinArchivo(String nombre) {
+        String valor = noVacio(argumentos.get(nombre));
+        if (valor == null) {
+            valor = noVacio(System.getProperty(nombre));
+        }
+        if (valor == null) {
+            valor = noVacio(System.getenv(nombre));
+        }
+        return valor;
+    }
+
+    /**
+     * Lee un archivo de propiedades en UTF-8. Si no existe devuelve unas
+     * propiedades vacías.
+     */
+    private static Properties leerArchivo(Path ruta) throws IOException {
+        Properties propiedades = new Properties();
+        try (InputStream entrada = Files.newInputStream(ruta)) {
+            propiedades.load(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+        } catch (NoSuchFileException e) {
+            // Sin archivo solo cuentan el resto de fuentes
+        }
+        return propiedades;
+    }
+
+    /**
+     * @return la fecha de modificación del archivo en milisegundos, o 0 si no
+     * existe
+     */
+    private static long modificacion(Path ruta) throws IOException {
+        try {
+            return Files.getLastModifiedTime(ruta).toMillis();
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private static String noVacio(String valor) {
+        return valor == null || valor.isBlank() ? null : valor.trim();
+    }
+}
@@ -0,0 +1,147 @@
+package paginas;
+
+import java.util.Arrays;
+
+/**
+ * Búfer de bytes reutilizable en el que se escribe el HTML de las respuestas
+ * ya codificado en UTF-8.
+ *
+ * <p>
+ * Lo usa {@link Plantilla} para generar las páginas sin crear cadenas
+ * intermedias: los trozos fijos se copian ya codificados y los valores se
+ * codifican carácter a carácter directamente en el búfer. Cada hilo tiene su
+ * propio búfer, que se obtiene con {@link #delHilo()} y crece según lo
+ * necesite.</p>
+ *
+ * <p>
+ * Esta clase no es segura para hilos.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class BufferSalida {
+
+    private static final ThreadLocal<BufferSalida> DEL_HILO = ThreadLocal.withInitial(() -> new BufferSalida(8192));
+
+    private byte[] datos;
+    private int longitud;
+
+    /**
+     * Crea un búfer vacío.
+     *
+     * @param capacidad capacidad inicial en bytes
+     */
+    public BufferSalida(int capacidad) {
+        this.datos = new byte[capacidad];
+    }
+
+    /**
+     * Devuelve el búfer del hilo actual, vacío y listo para escribir.
+     *
+     * @return el búfer del hilo
+     */
+    public static BufferSalida delHilo() {
+        BufferSalida buffer = DEL_HILO.get();
+        buffer.reiniciar();
+        return buffer;
+    }
+
+    /**
+     * Vacía el búfer conservando la memoria reservada.
+     */
+    public void reiniciar() {
+        longitud = 0;
+    }
+
+    /**
+     * @return número de bytes escritos
+     */
+    public int getLongitud() {
+        return longitud;
+    }
+
+    /**
+     * Copia el contenido escrito en un array del tamaño justo, que puede
+     * conservarse después de reutilizar el búfer.
+     *
+     * @return copia de los bytes escritos
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(datos, longitud);
+    }
+
+    /**
+     * Escribe bytes ya codificados.
+     *
+     * @param bytes bytes a escribir
+     */
+    public void escribir(byte[] bytes) {
+        reservar(bytes.length);
+        System.arraycopy(bytes, 0, datos, longitud, bytes.length);
+        longitud += bytes.length;
+    }
+
+    /**
+     * Escribe un texto codificándolo en UTF-8.
+     *
+     * @param texto texto a escribir
+     */
+    public void escribir(CharSequence texto) {
+        int n = texto.length();
+        reservar(n * 3);
+        for (int i = 0; i < n; i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                datos[longitud++] = (byte) c;
+            } else if (c < 0x800) {
+                datos[longitud++] = (byte) (0xC0 | (c >> 6));
+                datos[longitud++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, texto.charAt(++i));
+                datos[longitud++] = (byte) (0xF0 | (cp >> 18));
+                datos[longitud++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                datos[longitud++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                datos[longitud++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                datos[longitud++] = '?';
+            } else {
+                datos[longitud++] = (byte) (0xE0 | (c >> 12));
+                datos[longitud++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                datos[longitud++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Escribe un número entero en decimal sin crear ninguna cadena.
+     *
+     * @param numero número a escribir
+     */
+    public void escribir(int numero) {
+        reservar(11);
+        if (numero == Integer.MIN_VALUE) {
+            escribir(Integer.toString(numero));
+            return;
+        }
+        if (numero < 0) {
+            datos[longitud++] = '-';
+            numero = -numero;
+        }
+        int inicio = longitud;
+        do {
+            datos[longitud++] = (byte) ('0' + numero % 10);
+            numero /= 10;
+        } while (numero > 0);
+        // Los dígitos se han escrito al revés
+        for (int i = inicio, j = longitud - 1; i < j; i++, j--) {
+            byte b = datos[i];
+            datos[i] = datos[j];
+            datos[j] = b;
+        }
+    }
+
+    private void reservar(int adicional) {
+        if (longitud + adicional > datos.length) {
+            datos = Arrays.copyOf(datos, Math.max(datos.length * 2, longitud + adicional));
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package paginas;
 
+import config.Configuracion;
+import java.nio.charset.StandardCharsets;
+
 /**
  * Clase utilitaria para generar cabeceras HTTP para respuestas HTML.
  * <p>
@@ -20,6 +23,9 @@ public class Cabecera {
     // Cabecera para indicar tipo de contenido HTML con codificación UTF-8
     private static final String PRIMERA_CABECERA = "Content-Type:text/html;charset=UTF-8";
 
+    // Tipo de contenido de las respuestas en texto plano, con la versión del formato de métricas de Prometheus
+    private static final String CABECERA_TEXTO = "Content-Type:text/plain; version=0.0.4; charset=utf-8";
+
     // Línea de estado para respuesta exitosa HTTP
     private static final String PETICION_OK = "HTTP/1.1 200 OK";
 
@@ -27,7 +33,29 @@ public class Cabecera {
     private static final String PETICION_NOT_FOUND = "HTTP/1.1 404 Not Found";
 
     // Línea de estado para respuesta HTTP de redirección
-    private static final String PETICION_REDIRECCION = "HTTP/1.1 302 Found\nLocation: /\n";
+    private static final String PETICION_REDIRECCION = "HTTP/1.1 302 Found\nLocation: /";
+
+    // Respuesta completa para cuando el servidor no puede aceptar más conexiones
+    private static final String PETICION_NO_DISPONIBLE = "HTTP/1.1 503 Service Unavailable\n"
+            + "Content-Length: 0\n"
+            + "Retry-After: 1\n"
+            + "Connection: close\n\n";
+
+    // Trozos fijos de la cabecera codificados una sola vez al cargar la clase
+    private static final byte[] INICIO_OK = inicio(PETICION_OK);
+    private static final byte[] INICIO_OK_TEXTO = ascii(PETICION_OK + "\n" + CABECERA_TEXTO + "\nContent-Length: ");
+    private static final byte[] INICIO_NOT_FOUND = inicio(PETICION_NOT_FOUND);
+    private static final byte[] INICIO_REDIRECCION = inicio(PETICION_REDIRECCION);
+    private static final byte[] COOKIE_BORRADA = ascii("\nSet-Cookie: sessionID=; Path=/; Max-Age=0;\n");
+    private static final byte[] COOKIE_INICIO = ascii("\nSet-Cookie: sessionID=");
+    private static final byte[] COOKIE_FIN = ascii("; Path=/;\n");
+    private static final byte[] FIN_CLOSE = ascii("Connection: close\n\n");
+    // Se vuelve a generar si cambian los parámetros de keep-alive
+    private static volatile byte[] finKeepAlive = finKeepAlive();
+
+    static {
+        Configuracion.agregarOyente(() -> finKeepAlive = finKeepAlive());
+    }
 
     /**
      * Genera una cabecera HTTP completa adecuada para una respuesta HTML.
@@ -47,39 +75,143 @@ public class Cabecera {
      * @return una cadena de texto que representa la cabecera HTTP generada.
      */
     public static String generarCabecera(int longitudHtml, int tipoRespuesta, String sessionID) {
-        StringBuilder salida = new StringBuilder();
-        String cabecera = "";
-        String cookie = "";
+        return generarCabecera(longitudHtml, tipoRespuesta, sessionID, false);
+    }
+
+    /**
+     * Genera una cabecera HTTP completa indicando además si la conexión se
+     * mantiene abierta tras la respuesta.
+     * <p>
+     * Con {@code keepAlive} se añaden las cabeceras {@code Connection:
+     * keep-alive} y {@code Keep-Alive} con el tiempo de inactividad y el máximo
+     * de peticiones configurados; en caso contrario se envía
+     * {@code Connection: close}.
+     * </p>
+     *
+     * @param longitudHtml la longitud en bytes del contenido HTML que se va a
+     * enviar. Se ignora si el código de estado es 302 (redirección).
+     * @param tipoRespuesta el código de estado HTTP: 200 para éxito, 300 para
+     * redirección, 400 para recurso no encontrado.
+     * @param sessionID el identificador de sesión que se establecerá como
+     * cookie.
+     * @param keepAlive si la conexión seguirá abierta después de esta respuesta
+     * @return una cadena de texto que representa la cabecera HTTP generada.
+     */
+    public static String generarCabecera(int longitudHtml, int tipoRespuesta, String sessionID, boolean keepAlive) {
+        BufferSalida salida = new BufferSalida(256);
+        escribirCabecera(salida, longitudHtml, tipoRespuesta, sessionID, keepAlive);
+        return new String(salida.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Escribe la cabecera HTTP directamente en bytes.
+     * <p>
+     * La línea de estado, el tipo de contenido y el final de la cabecera están
+     * codificados de antemano, así que solo se escriben la longitud y la
+     * cookie de sesión.
+     * </p>
+     *
+     * @param salida búfer donde se escribe la cabecera
+     * @param longitudHtml la longitud en bytes del contenido HTML que se va a
+     * enviar. Se ignora si el código de estado es 302 (redirección).
+     * @param tipoRespuesta el código de estado HTTP: 200 para éxito, 300 para
+     * redirección, 400 para recurso no encontrado.
+     * @param sessionID el identificador de sesión que se establecerá como
+     * cookie.
+     * @param keepAlive si la conexión seguirá abierta después de esta respuesta
+     */
+    public static void escribirCabecera(BufferSalida salida, int longitudHtml, int tipoRespuesta, String sessionID, boolean keepAlive) {
+        escribirCabecera(salida, longitudHtml, tipoRespuesta, sessionID, keepAlive, false);
+    }
+
+    /**
+     * Escribe la cabecera HTTP directamente en bytes, para una respuesta HTML
+     * o en texto plano.
+     *
+     * @param salida búfer donde se escribe la cabecera
+     * @param longitudHtml la longitud en bytes del contenido que se va a
+     * enviar. Se ignora si el código de estado es 302 (redirección).
+     * @param tipoRespuesta el código de estado HTTP: 200 para éxito, 300 para
+     * redirección, 400 para recurso no encontrado.
+     * @param sessionID el identificador de sesión que se establecerá como
+     * cookie.
+     * @param keepAlive si la conexión seguirá abierta después de esta respuesta
+     * @param textoPlano si una respuesta 200 es texto plano en lugar de HTML
+     */
+    public static void escribirCabecera(BufferSalida salida, int longitudHtml, int tipoRespuesta, String sessionID, boolean keepAlive, boolean textoPlano) {
         int contentLength = longitudHtml;
 
-        switch (tipoRespuesta) {
+        switch (codigoHttp(tipoRespuesta)) {
             case 200:
-                cabecera = PETICION_OK;
+                salida.escribir(textoPlano ? INICIO_OK_TEXTO : INICIO_OK);
                 break;
-            case 300:
-                cabecera = PETICION_REDIRECCION;
+            case 302:
+                salida.escribir(INICIO_REDIRECCION);
                 contentLength = 0;
                 break;
-            case 400:
-                cabecera = PETICION_NOT_FOUND;
-                break;
             default:
-                cabecera = PETICION_NOT_FOUND; // Valor por defecto
+                salida.escribir(INICIO_NOT_FOUND); // Valor por defecto
                 break;
         }
+        salida.escribir(contentLength);
 
         if (sessionID.isEmpty()) {
-            cookie = "Set-Cookie: sessionID=; Path=/; Max-Age=0;\n";
+            salida.escribir(COOKIE_BORRADA);
         } else {
-            cookie = "Set-Cookie: sessionID=" + sessionID + "; Path=/;\n";
+            salida.escribir(COOKIE_INICIO);
+            salida.escribir(sessionID);
+            salida.escribir(COOKIE_FIN);
         }
+        // Conexión y línea vacía que separa cabecera del cuerpo
+        salida.escribir(keepAlive ? finKeepAlive : FIN_CLOSE);
+    }
 
-        salida.append(cabecera).append("\n");
-        salida.append(PRIMERA_CABECERA).append("\n");
-        salida.append("Content-Length: ").append(contentLength).append("\n");
-        salida.append(cookie);
-        salida.append("\n"); // Línea vacía que separa cabecera del cuerpo
+    /**
+     * Devuelve el código de estado HTTP que se envía para un tipo de
+     * respuesta: 200 para éxito, 302 para redirección (300), 503 para el
+     * servidor saturado y 404 para el resto.
+     *
+     * @param tipoRespuesta el tipo de respuesta: 200, 300, 400 o 503
+     * @return el código de la línea de estado
+     */
+    public static int codigoHttp(int tipoRespuesta) {
+        switch (tipoRespuesta) {
+            case 200:
+                return 200;
+            case 300:
+                return 302;
+            case 503:
+                return 503;
+            default:
+                return 404;
+        }
+    }
+
+    /**
+     * Genera la respuesta HTTP 503 que se envía cuando el servidor está
+     * saturado y rechaza una conexión.
+     * <p>
+     * No incluye cookie de sesión para no borrar la sesión del cliente, que
+     * podrá reintentar la petición más tarde.
+     * </p>
+     *
+     * @return la respuesta HTTP completa, sin cuerpo
+     */
+    public static String generarCabeceraNoDisponible() {
+        return PETICION_NO_DISPONIBLE;
+    }
+
+    private static byte[] inicio(String lineaEstado) {
+        return ascii(lineaEstado + "\n" + PRIMERA_CABECERA + "\nContent-Length: ");
+    }
+
+    private static byte[] finKeepAlive() {
+        return ascii("Connection: keep-alive\n"
+                + "Keep-Alive: timeout=" + Configuracion.getTiempoKeepAlive()
+                + ", max=" + Configuracion.getMaxPeticionesConexion() + "\n\n");
+    }
 
-        return salida.toString();
+    private static byte[] ascii(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
     }
 }
@@ -74,6 +74,22 @@ public class PaginaAdivina {
             + "</body>\n"
             + "</html>";
 
+    /**
+     * Índices de los valores de la plantilla: el mensaje del juego, el texto del
+     * botón y el campo para introducir el número.
+     */
+    public static final int RESULTADO = 0;
+    public static final int BOTON = 1;
+    public static final int CAMPO_NUMERO = 2;
+
+    /**
+     * Plantilla precompilada de la página con sus marcadores.
+     */
+    private static final Plantilla PLANTILLA = Plantilla.compilar(ADIVINA,
+            "<!--RESULTADO-->",
+            "Enviar",
+            " <input type=\"number\" name=\"numero\" min=\"1\" max=\"100\" required>\n");
+
     /**
      * Devuelve el HTML completo de la página "Adivina el Número".
      *
@@ -82,4 +98,25 @@ public class PaginaAdivina {
     public static String getPagina() {
         return PaginaAdivina.ADIVINA;
     }
+
+    /**
+     * Devuelve la plantilla precompilada de la página, con la que se genera el
+     * HTML sin usar {@code replaceAll}.
+     *
+     * @return la plantilla de la página
+     */
+    public static Plantilla getPlantilla() {
+        return PaginaAdivina.PLANTILLA;
+    }
+
+    /**
+     * Devuelve el HTML de la página ya codificado en UTF-8, listo para
+     * enviarse sin volver a codificarlo en cada petición. El array es
+     * compartido y no debe modificarse.
+     *
+     * @return la página en UTF-8
+     */
+    public static byte[] getBytes() {
+        return PaginaAdivina.PLANTILLA.getBytes();
+    }
 }
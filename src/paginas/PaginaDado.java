@@ -100,6 +100,28 @@ public class PaginaDado {
             + "</body>\n"
             + "</html>";
 
+    /**
+     * Índices de los valores de la plantilla: los resultados, los puntos y el
+     * texto del botón.
+     */
+    public static final int RESULTADO = 0;
+    public static final int RESULTADO_JUG = 1;
+    public static final int RESULTADO_BANCA = 2;
+    public static final int PUNTOS_JUG = 3;
+    public static final int PUNTOS_BANCA = 4;
+    public static final int BOTON = 5;
+
+    /**
+     * Plantilla precompilada de la página con sus marcadores.
+     */
+    private static final Plantilla PLANTILLA = Plantilla.compilar(DADOS,
+            "<!--RESULTADO-->",
+            "<!--RESULTADO_JUG-->",
+            "<!--RESULTADO_BANCA-->",
+            "<!--puntosJug-->",
+            "<!--puntosBanca-->",
+            "Lanzar");
+
     /**
      * Devuelve el HTML base de la página "Tira los Dados".
      * 
@@ -108,4 +130,25 @@ public class PaginaDado {
     public static String getPagina() {
         return PaginaDado.DADOS;
     }
+
+    /**
+     * Devuelve la plantilla precompilada de la página, con la que se genera el
+     * HTML sin usar {@code replaceAll}.
+     *
+     * @return la plantilla de la página
+     */
+    public static Plantilla getPlantilla() {
+        return PaginaDado.PLANTILLA;
+    }
+
+    /**
+     * Devuelve el HTML de la página ya codificado en UTF-8, listo para
+     * enviarse sin volver a codificarlo en cada petición. El array es
+     * compartido y no debe modificarse.
+     *
+     * @return la página en UTF-8
+     */
+    public static byte[] getBytes() {
+        return PaginaDado.PLANTILLA.getBytes();
+    }
 }
@@ -1,5 +1,7 @@
 package paginas;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Clase que representa una página HTML para errores de tipo 400 o 404.
  * 
@@ -74,6 +76,11 @@ public class PaginaError {
             + "</body>\n"
             + "</html>";
 
+    /**
+     * HTML de la página codificado en UTF-8 una sola vez al cargar la clase.
+     */
+    private static final byte[] PAGINA_ERROR_BYTES = PAGINA_ERROR.getBytes(StandardCharsets.UTF_8);
+
     /**
      * Devuelve la página HTML de error.
      * 
@@ -83,4 +90,14 @@ public class PaginaError {
         return PaginaError.PAGINA_ERROR;
     }
 
+    /**
+     * Devuelve el HTML de la página ya codificado en UTF-8, listo para
+     * enviarse sin volver a codificarlo en cada petición. El array es
+     * compartido y no debe modificarse.
+     *
+     * @return la página en UTF-8
+     */
+    public static byte[] getBytes() {
+        return PaginaError.PAGINA_ERROR_BYTES;
+    }
 }
@@ -1,6 +1,7 @@
 package paginas;
 
 import config.Configuracion;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
@@ -194,6 +195,11 @@ public class PaginaIndex {
             + "</body>\n"
             + "</html>";
 
+    /**
+     * HTML de la página codificado en UTF-8 una sola vez al cargar la clase.
+     */
+    private static final byte[] INDEX_BYTES = INDEX.getBytes(StandardCharsets.UTF_8);
+
     /**
      * Devuelve la página de inicio del casino en formato HTML.
      *
@@ -203,4 +209,14 @@ public class PaginaIndex {
         return PaginaIndex.INDEX;
     }
 
+    /**
+     * Devuelve el HTML de la página ya codificado en UTF-8, listo para
+     * enviarse sin volver a codificarlo en cada petición. El array es
+     * compartido y no debe modificarse.
+     *
+     * @return la página en UTF-8
+     */
+    public static byte[] getBytes() {
+        return PaginaIndex.INDEX_BYTES;
+    }
 }
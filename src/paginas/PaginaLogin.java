@@ -95,6 +95,20 @@ public class PaginaLogin {
             + "</body>\n"
             + "</html>";
 
+    /**
+     * Índices de los valores de la plantilla: el mensaje bajo el formulario y el
+     * estilo con el que se muestra.
+     */
+    public static final int ERRORES = 0;
+    public static final int ESTILO_MENSAJE = 1;
+
+    /**
+     * Plantilla precompilada de la página con sus marcadores.
+     */
+    private static final Plantilla PLANTILLA = Plantilla.compilar(LOGIN,
+            "<!--ERRORES-->",
+            "style=\"color: red;");
+
     /**
      * Devuelve la página de inicio de sesión en formato HTML.
      *
@@ -103,4 +117,25 @@ public class PaginaLogin {
     public static String getPagina() {
         return PaginaLogin.LOGIN;
     }
+
+    /**
+     * Devuelve la plantilla precompilada de la página, con la que se genera el
+     * HTML sin usar {@code replaceAll}.
+     *
+     * @return la plantilla de la página
+     */
+    public static Plantilla getPlantilla() {
+        return PaginaLogin.PLANTILLA;
+    }
+
+    /**
+     * Devuelve el HTML de la página ya codificado en UTF-8, listo para
+     * enviarse sin volver a codificarlo en cada petición. El array es
+     * compartido y no debe modificarse.
+     *
+     * @return la página en UTF-8
+     */
+    public static byte[] getBytes() {
+        return PaginaLogin.PLANTILLA.getBytes();
+    }
 }
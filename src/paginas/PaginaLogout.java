@@ -1,5 +1,7 @@
 package paginas;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Clase que representa la página HTML del juego "Logout".
  *
@@ -76,6 +78,11 @@ public class PaginaLogout {
             + "</body>\n"
             + "</html>";
 
+    /**
+     * HTML de la página codificado en UTF-8 una sola vez al cargar la clase.
+     */
+    private static final byte[] LOGOUT_BYTES = LOGOUT.getBytes(StandardCharsets.UTF_8);
+
     /**
      * Devuelve el HTML completo de la página "Logout", para volver a la pagina
      * de inicio e informar de logout exitoso.
@@ -85,4 +92,15 @@ public class PaginaLogout {
     public static String getPagina() {
         return PaginaLogout.LOGOUT;
     }
+
+    /**
+     * Devuelve el HTML de la página ya codificado en UTF-8, listo para
+     * enviarse sin volver a codificarlo en cada petición. El array es
+     * compartido y no debe modificarse.
+     *
+     * @return la página en UTF-8
+     */
+    public static byte[] getBytes() {
+        return PaginaLogout.LOGOUT_BYTES;
+    }
 }
@@ -99,6 +99,30 @@ public class PaginaPPT {
             + "</body>\n"
             + "</html>";
 
+    /**
+     * Índices de los valores de la plantilla: los botones de piedra y papel,
+     * el botón de tijera, las elecciones, el resultado y los puntos.
+     */
+    public static final int BOTONES = 0;
+    public static final int BOTON_TIJERA = 1;
+    public static final int RESULTADO_JUG = 2;
+    public static final int RESULTADO_BANCA = 3;
+    public static final int RESULTADO = 4;
+    public static final int PUNTOS_JUG = 5;
+    public static final int PUNTOS_BANCA = 6;
+
+    /**
+     * Plantilla precompilada de la página con sus marcadores.
+     */
+    private static final Plantilla PLANTILLA = Plantilla.compilar(PPT,
+            "<button type=\"submit\" name=\"opcion\" value=\"0\">Piedra</button><button type=\"submit\" name=\"opcion\" value=\"1\">Papel</button>",
+            "<button type=\"submit\" name=\"opcion\" value=\"2\">Tijera</button>",
+            "<!--RESULTADO_JUG-->",
+            "<!--RESULTADO_BANCA-->",
+            "<!--RESULTADO-->",
+            "<!--puntosJug-->",
+            "<!--puntosBanca-->");
+
     /**
      * Devuelve la página HTML del juego "Piedra, Papel o Tijera".
      *
@@ -107,4 +131,25 @@ public class PaginaPPT {
     public static String getPagina(){
         return PaginaPPT.PPT;
     }
+
+    /**
+     * Devuelve la plantilla precompilada de la página, con la que se genera el
+     * HTML sin usar {@code replaceAll}.
+     *
+     * @return la plantilla de la página
+     */
+    public static Plantilla getPlantilla() {
+        return PaginaPPT.PLANTILLA;
+    }
+
+    /**
+     * Devuelve el HTML de la página ya codificado en UTF-8, listo para
+     * enviarse sin volver a codificarlo en cada petición. El array es
+     * compartido y no debe modificarse.
+     *
+     * @return la página en UTF-8
+     */
+    public static byte[] getBytes() {
+        return PaginaPPT.PLANTILLA.getBytes();
+    }
 }
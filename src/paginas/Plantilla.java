@@ -0,0 +1,146 @@
+package paginas;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plantilla HTML precompilada.
+ *
+ * <p>
+ * Al crearla se busca en el HTML cada aparición de los marcadores indicados
+ * (por ejemplo {@code <!--RESULTADO-->}) y se divide en trozos fijos, ya
+ * codificados en UTF-8, y huecos. Al generar la página con
+ * {@link #renderizar(BufferSalida, CharSequence...)} se escriben los trozos
+ * fijos y el valor de cada hueco directamente en un {@link BufferSalida}, sin
+ * expresiones regulares ni copias intermedias de la página.</p>
+ *
+ * <p>
+ * Un marcador puede ser cualquier texto literal de la página, no solo un
+ * comentario HTML, lo que permite sustituir también el texto de un botón. Si
+ * el valor de un hueco es {@code null} se deja el texto original del
+ * marcador.</p>
+ *
+ * <p>
+ * Las plantillas son inmutables y pueden compartirse entre hilos.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class Plantilla {
+
+    /**
+     * Trozos fijos: el trozo {@code i} va antes del hueco {@code i}, y el
+     * último va al final.
+     */
+    private final byte[][] fijos;
+
+    /**
+     * Marcador que corresponde a cada hueco, en orden de aparición.
+     */
+    private final int[] huecos;
+
+    /**
+     * Texto original de cada marcador codificado, para los huecos sin valor.
+     */
+    private final byte[][] originales;
+
+    private final byte[] sinValores;
+
+    private Plantilla(byte[][] fijos, int[] huecos, byte[][] originales, byte[] sinValores) {
+        this.fijos = fijos;
+        this.huecos = huecos;
+        this.originales = originales;
+        this.sinValores = sinValores;
+    }
+
+    /**
+     * Compila una plantilla a partir de un HTML y sus marcadores.
+     *
+     * @param html HTML de la página
+     * @param marcadores textos literales que se sustituirán al generar la
+     * página; la posición de cada uno es el índice de su valor en
+     * {@link #renderizar(BufferSalida, CharSequence...)}
+     * @return la plantilla compilada
+     */
+    public static Plantilla compilar(String html, String... marcadores) {
+        List<byte[]> fijos = new ArrayList<>();
+        List<Integer> huecos = new ArrayList<>();
+
+        int desde = 0;
+        while (true) {
+            // Se busca el marcador que aparece antes a partir de la posición actual
+            int posicion = -1;
+            int marcador = -1;
+            for (int i = 0; i < marcadores.length; i++) {
+                int p = html.indexOf(marcadores[i], desde);
+                if (p >= 0 && (posicion < 0 || p < posicion)) {
+                    posicion = p;
+                    marcador = i;
+                }
+            }
+            if (marcador < 0) {
+                break;
+            }
+            fijos.add(html.substring(desde, posicion).getBytes(StandardCharsets.UTF_8));
+            huecos.add(marcador);
+            desde = posicion + marcadores[marcador].length();
+        }
+        fijos.add(html.substring(desde).getBytes(StandardCharsets.UTF_8));
+
+        byte[][] originales = new byte[marcadores.length][];
+        for (int i = 0; i < marcadores.length; i++) {
+            originales[i] = marcadores[i].getBytes(StandardCharsets.UTF_8);
+        }
+        int[] arrayHuecos = new int[huecos.size()];
+        for (int i = 0; i < arrayHuecos.length; i++) {
+            arrayHuecos[i] = huecos.get(i);
+        }
+        return new Plantilla(fijos.toArray(new byte[0][]), arrayHuecos, originales,
+                html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Escribe la página en el búfer sustituyendo cada marcador por su valor.
+     *
+     * @param salida búfer donde se escribe la página
+     * @param valores valor de cada marcador, en el orden en que se indicaron
+     * al compilar; los que falten o sean {@code null} conservan el texto
+     * original
+     */
+    public void renderizar(BufferSalida salida, CharSequence... valores) {
+        for (int i = 0; i < huecos.length; i++) {
+            salida.escribir(fijos[i]);
+            int marcador = huecos[i];
+            CharSequence valor = marcador < valores.length ? valores[marcador] : null;
+            if (valor == null) {
+                salida.escribir(originales[marcador]);
+            } else {
+                salida.escribir(valor);
+            }
+        }
+        salida.escribir(fijos[huecos.length]);
+    }
+
+    /**
+     * Genera la página en el búfer del hilo y devuelve una copia de sus
+     * bytes.
+     *
+     * @param valores valor de cada marcador
+     * @return la página generada, codificada en UTF-8
+     */
+    public byte[] renderizar(CharSequence... valores) {
+        BufferSalida salida = BufferSalida.delHilo();
+        renderizar(salida, valores);
+        return salida.toByteArray();
+    }
+
+    /**
+     * Devuelve la página sin sustituir ningún marcador, codificada una sola
+     * vez al compilar. El array es compartido y no debe modificarse.
+     *
+     * @return la página original en UTF-8
+     */
+    public byte[] getBytes() {
+        return sinValores;
+    }
+}
@@ -0,0 +1,198 @@
+package rutas;
+
+import config.Configuracion;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
+import seguridad.Sesiones;
+import utilidades.AlmacenEstado;
+
+/**
+ * Almacén del estado de un juego para cada sesión.
+ *
+ * <p>
+ * Cada sesión tiene su propia partida, un registro inmutable que se guarda
+ * codificado en el {@link AlmacenEstado} del servidor bajo la clave
+ * {@code partida:<juego>:<sesión>}. Con el almacén compartido, cualquier nodo
+ * puede continuar la partida que empezó otro. Las jugadas se aplican con una
+ * operación de comparar e intercambiar sobre la entrada de la sesión, sin
+ * bloqueos: las partidas de sesiones distintas no compiten entre sí, y si dos
+ * peticiones de la misma sesión llegan a la vez una de ellas repite la jugada
+ * sobre el estado que dejó la otra.</p>
+ *
+ * <p>
+ * Por eso la jugada debe ser una función pura del estado anterior: los
+ * valores aleatorios, como los dados o la opción de la banca, se eligen antes
+ * fuera de ella.</p>
+ *
+ * <p>
+ * El registro solo puede tener componentes {@code int} y {@code boolean}, que
+ * se codifican en orden en un array de bytes. Las partidas caducan a la vez
+ * que la sesión más larga posible, por si ningún nodo llega a borrarlas.</p>
+ *
+ * @param <T> registro con el estado de una partida
+ * @author Antonio Álvarez Cárdenas
+ */
+public class AlmacenPartidas<T extends Record> {
+
+    private static final List<AlmacenPartidas<?>> ALMACENES = new CopyOnWriteArrayList<>();
+
+    static {
+        Sesiones.agregarOyente(AlmacenPartidas::olvidarSesion);
+    }
+
+    private static final long TTL = Configuracion.getTtlAbsolutoSesion() * 1000L;
+
+    private final AlmacenEstado almacen = AlmacenEstado.getInstancia();
+    private final String prefijo;
+    private final T inicial;
+    private final Codificador<T> codificador;
+
+    /**
+     * Crea el almacén de un juego.
+     *
+     * @param juego nombre del juego, que forma parte de las claves
+     * @param inicial estado de una sesión que todavía no ha jugado
+     * @throws IllegalArgumentException si el registro tiene componentes que no
+     * son {@code int} ni {@code boolean}
+     */
+    public AlmacenPartidas(String juego, T inicial) {
+        this.prefijo = "partida:" + juego + ":";
+        this.inicial = inicial;
+        this.codificador = new Codificador<>(inicial);
+        ALMACENES.add(this);
+    }
+
+    /**
+     * Aplica una jugada a la partida de una sesión.
+     *
+     * @param sessionID identificador de sesión del jugador
+     * @param jugada función que calcula el estado nuevo a partir del anterior
+     * @return el estado anterior y el nuevo de la partida
+     */
+    public Jugada<T> jugar(String sessionID, UnaryOperator<T> jugada) {
+        String clave = prefijo + sessionID;
+        while (true) {
+            byte[] actual = almacen.leer(clave);
+            T anterior = actual == null ? inicial : codificador.decodificar(actual);
+            T nueva = jugada.apply(anterior);
+            if (almacen.reemplazar(clave, actual, codificador.codificar(nueva), System.currentTimeMillis() + TTL)) {
+                return new Jugada<>(anterior, nueva);
+            }
+        }
+    }
+
+    /**
+     * Devuelve la partida de una sesión.
+     *
+     * @param sessionID identificador de sesión del jugador
+     * @return el estado de la partida, o el inicial si no ha jugado
+     */
+    public T obtener(String sessionID) {
+        byte[] actual = almacen.leer(prefijo + sessionID);
+        return actual == null ? inicial : codificador.decodificar(actual);
+    }
+
+    /**
+     * Borra las partidas de una sesión en todos los juegos. Se llama cada vez
+     * que una sesión se cierra, caduca o es expulsada.
+     *
+     * @param sessionID identificador de la sesión
+     */
+    public static void olvidarSesion(String sessionID) {
+        for (AlmacenPartidas<?> partidas : ALMACENES) {
+            String clave = partidas.prefijo + sessionID;
+            if (partidas.almacen.leer(clave) != null) {
+                partidas.almacen.borrar(clave);
+            }
+        }
+    }
+
+    /**
+     * Codifica un registro de enteros y booleanos en bytes y lo reconstruye,
+     * con los accesores y el constructor canónico obtenidos una sola vez.
+     */
+    private static final class Codificador<T extends Record> {
+
+        private final MethodHandle[] accesores;
+        private final boolean[] booleanos;
+        private final MethodHandle constructor;
+        private final int longitud;
+
+        Codificador(T ejemplo) {
+            RecordComponent[] componentes = ejemplo.getClass().getRecordComponents();
+            accesores = new MethodHandle[componentes.length];
+            booleanos = new boolean[componentes.length];
+            Class<?>[] tipos = new Class<?>[componentes.length];
+            int bytes = 0;
+            try {
+                for (int i = 0; i < componentes.length; i++) {
+                    tipos[i] = componentes[i].getType();
+                    if (tipos[i] != int.class && tipos[i] != boolean.class) {
+                        throw new IllegalArgumentException("Componente no admitido en una partida: " + componentes[i]);
+                    }
+                    booleanos[i] = tipos[i] == boolean.class;
+                    bytes += booleanos[i] ? 1 : 4;
+                    Method accesor = componentes[i].getAccessor();
+                    accesor.setAccessible(true);
+                    accesores[i] = MethodHandles.lookup().unreflect(accesor);
+                }
+                Constructor<?> canonico = ejemplo.getClass().getDeclaredConstructor(tipos);
+                canonico.setAccessible(true);
+                constructor = MethodHandles.lookup().unreflectConstructor(canonico)
+                        .asSpreader(Object[].class, componentes.length);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("No se puede codificar " + ejemplo.getClass(), e);
+            }
+            longitud = bytes;
+        }
+
+        byte[] codificar(T registro) {
+            ByteBuffer salida = ByteBuffer.allocate(longitud);
+            try {
+                for (int i = 0; i < accesores.length; i++) {
+                    if (booleanos[i]) {
+                        salida.put((boolean) accesores[i].invoke(registro) ? (byte) 1 : (byte) 0);
+                    } else {
+                        salida.putInt((int) accesores[i].invoke(registro));
+                    }
+                }
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+            return salida.array();
+        }
+
+        @SuppressWarnings("unchecked")
+        T decodificar(byte[] datos) {
+            ByteBuffer entrada = ByteBuffer.wrap(datos);
+            Object[] valores = new Object[accesores.length];
+            for (int i = 0; i < valores.length; i++) {
+                valores[i] = booleanos[i] ? entrada.get() != 0 : entrada.getInt();
+            }
+            try {
+                return (T) constructor.invoke(valores);
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Resultado de una jugada: el estado de la partida antes y después de
+     * aplicarla.
+     *
+     * @param <T> registro con el estado de una partida
+     * @param anterior estado antes de la jugada
+     * @param nueva estado después de la jugada
+     */
+    public record Jugada<T extends Record>(T anterior, T nueva) {
+
+    }
+}
@@ -0,0 +1,28 @@
+package rutas;
+
+import servidor_main.Peticion;
+import servidor_main.Respuesta;
+
+/**
+ * Interfaz que implementan los manejadores de las rutas del servidor.
+ *
+ * <p>
+ * Cada manejador atiende las peticiones de una ruta y un método concretos, y
+ * se registra en una {@link TablaRutas}. Los manejadores se comparten entre
+ * todas las conexiones, por lo que deben poder usarse desde varios hilos a la
+ * vez.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+@FunctionalInterface
+public interface Manejador {
+
+    /**
+     * Atiende una petición y genera su respuesta.
+     *
+     * @param peticion petición recibida
+     * @return la respuesta a enviar al cliente
+     * @throws Exception si ocurre un error al atender la petición
+     */
+    Respuesta atender(Peticion peticion) throws Exception;
+}
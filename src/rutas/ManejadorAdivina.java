@@ -0,0 +1,128 @@
+package rutas;
+
+import java.util.concurrent.ThreadLocalRandom;
+import paginas.PaginaAdivina;
+import seguridad.Logueadora;
+import seguridad.Origen;
+import seguridad.Sesiones;
+import servidor_main.Peticion;
+import servidor_main.Respuesta;
+
+/**
+ * Manejador del juego "Adivina el número" ({@code POST /adivina}).
+ *
+ * <p>
+ * El servidor elige un número entre 1 y 100 y el jugador tiene 10 intentos
+ * para adivinarlo; en cada intento se le indica si el número es mayor o
+ * menor.</p>
+ *
+ * <p>
+ * Cada sesión juega su propia partida, guardada en un
+ * {@link AlmacenPartidas}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class ManejadorAdivina implements Manejador {
+
+    private static final int MAX_INTENTOS = 10;
+
+    private static final Origen NUMERO_NO_VALIDO = new Origen(4, "adivina", "ManejadorAdivina.numeroNoValido");
+    private static final Origen SIN_NUMERO = new Origen(4, "adivina", "ManejadorAdivina.sinNumero");
+
+    private final AlmacenPartidas<Partida> partidas = new AlmacenPartidas<>("adivina", new Partida(0, 0, true));
+
+    @Override
+    public Respuesta atender(Peticion peticion) {
+        String sessionID = peticion.getSessionID();
+        String cuerpo = peticion.getCuerpo();
+        String mensaje = "";
+        if (!Sesiones.sesionValida(sessionID)) {
+            return new Respuesta(300, sessionID, new byte[0]);
+        }
+
+        String[] arrayDatos;
+        String numeroAdivinado = "";
+        if (!cuerpo.isEmpty()) {
+
+            if (cuerpo.contains("numero=")) {
+
+                arrayDatos = cuerpo.split("=");
+                if (arrayDatos.length == 2) {
+                    numeroAdivinado = arrayDatos[1];
+                }
+
+            }
+        }
+        Integer numero = null;
+        if (!numeroAdivinado.equals("")) {
+            try {
+                numero = Integer.parseInt(numeroAdivinado);
+            } catch (NumberFormatException e) {
+                Logueadora.registrar(NUMERO_NO_VALIDO, numeroAdivinado);
+            }
+        }
+
+        int secretoNuevo = ThreadLocalRandom.current().nextInt(1, 101);
+        Integer intento = numero;
+        Partida partida = partidas.jugar(sessionID, p -> p.jugar(secretoNuevo, intento)).nueva();
+
+        if (numero != null) {
+            if (numero == partida.secreto()) {
+                mensaje = "¡Felicidades! Adivinaste el número en " + partida.intentos() + " intentos <br>";
+                mensaje += "El número era : " + partida.secreto();
+
+            } else if (partida.terminada()) {
+                mensaje = "Lo siento, agotaste tus 10 intentos. El número era " + partida.secreto();
+
+            } else if (numero < partida.secreto()) {
+                mensaje = "El número es MAYOR <br>";
+                mensaje += "Intentos restantes: " + (MAX_INTENTOS - partida.intentos());
+            } else {
+                mensaje = "El número es MENOR <br>";
+                mensaje += "Intentos restantes: " + (MAX_INTENTOS - partida.intentos());
+
+            }
+
+        } else if (numeroAdivinado.equals("")) {
+            mensaje = "No se ha enviado ningún número, no te hagas el listillo... <br>";
+            mensaje += "Intentos restantes: " + (MAX_INTENTOS - partida.intentos());
+
+            Logueadora.registrar(SIN_NUMERO, numeroAdivinado);
+        }
+        // Se genera la página con el mensaje del juego; al agotar los intentos se cambia el botón y se quita el campo
+        boolean agotados = partida.intentos() >= MAX_INTENTOS;
+        byte[] html = PaginaAdivina.getPlantilla().renderizar(
+                mensaje,
+                agotados ? "Volver a intentar" : null,
+                agotados ? "" : null);
+        return new Respuesta(200, sessionID, html);
+    }
+
+    /**
+     * Estado de la partida de una sesión.
+     *
+     * @param secreto número que hay que adivinar
+     * @param intentos intentos gastados
+     * @param terminada si se ha acertado o se han agotado los intentos; la
+     * siguiente petición empieza una partida nueva
+     */
+    private record Partida(int secreto, int intentos, boolean terminada) {
+
+        /**
+         * Aplica un intento a la partida.
+         *
+         * @param secretoNuevo número secreto si hay que empezar otra partida
+         * @param numero número enviado, o {@code null} si no hay un intento
+         * válido
+         * @return el estado de la partida tras el intento
+         */
+        Partida jugar(int secretoNuevo, Integer numero) {
+            Partida partida = terminada ? new Partida(secretoNuevo, 0, false) : this;
+            if (numero == null) {
+                return partida;
+            }
+            int gastados = partida.intentos + 1;
+            return new Partida(partida.secreto, gastados, numero == partida.secreto || gastados >= MAX_INTENTOS);
+        }
+    }
+}
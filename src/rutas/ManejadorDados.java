@@ -0,0 +1,102 @@
+package rutas;
+
+import java.util.concurrent.ThreadLocalRandom;
+import paginas.PaginaDado;
+import seguridad.Sesiones;
+import servidor_main.Peticion;
+import servidor_main.Respuesta;
+
+/**
+ * Manejador del juego "Tira los dados" ({@code POST /dados}).
+ *
+ * <p>
+ * En cada ronda el jugador y la banca lanzan un dado y gana el punto el que
+ * saca el número más alto. La partida termina tras cinco rondas sin
+ * empate en el marcador.</p>
+ *
+ * <p>
+ * Cada sesión juega su propia partida, guardada en un
+ * {@link AlmacenPartidas}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class ManejadorDados implements Manejador {
+
+    private static final int RONDAS = 5;
+
+    private final AlmacenPartidas<Partida> partidas = new AlmacenPartidas<>("dados", new Partida(1, 0, 0, false));
+
+    @Override
+    public Respuesta atender(Peticion peticion) {
+        String sessionID = peticion.getSessionID();
+        String mensaje;
+        if (!Sesiones.sesionValida(sessionID)) {
+            return new Respuesta(300, sessionID, new byte[0]);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int randomJugador = random.nextInt(1, 7);
+        int randombanca = random.nextInt(1, 7);
+        AlmacenPartidas.Jugada<Partida> jugada = partidas.jugar(sessionID, p -> p.tirar(randomJugador, randombanca));
+        Partida partida = jugada.nueva();
+
+        if (randomJugador > randombanca) {
+            mensaje = "¡Punto para el Jugador!<br>";
+        } else if (randomJugador < randombanca) {
+            mensaje = "¡Punto para la banca!<br>";
+        } else {
+            mensaje = "¡Empate!<br>";
+        }
+        mensaje += "Ronda: " + jugada.anterior().ronda();
+        if (partida.acabada()) {
+            mensaje += partida.puntosJugador() > partida.puntosBanca() ? "<br>¡Felicidades! Has ganado a la banca" : "<br>Lo siento, has perdido";
+        }
+        byte[] html = PaginaDado.getPlantilla().renderizar(
+                mensaje + "<br>",
+                "Has sacado un: " + randomJugador + "<br><br>",
+                "La banca saca un: " + randombanca + "<br><br>",
+                Integer.toString(partida.puntosJugador()),
+                Integer.toString(partida.puntosBanca()),
+                partida.acabada() ? "Nueva partida" : null);
+        return new Respuesta(200, sessionID, html);
+    }
+
+    /**
+     * Estado de la partida de una sesión.
+     *
+     * @param ronda ronda que se juega en la siguiente tirada
+     * @param puntosJugador puntos del jugador
+     * @param puntosBanca puntos de la banca
+     * @param acabada si la partida terminó en la última tirada; la siguiente
+     * empieza una nueva
+     */
+    private record Partida(int ronda, int puntosJugador, int puntosBanca, boolean acabada) {
+
+        /**
+         * Aplica una tirada a la partida.
+         *
+         * @param dadoJugador dado del jugador
+         * @param dadoBanca dado de la banca
+         * @return el estado de la partida tras la tirada
+         */
+        Partida tirar(int dadoJugador, int dadoBanca) {
+            int siguiente = ronda;
+            int jugador = ronda == 1 ? 0 : puntosJugador;
+            int banca = ronda == 1 ? 0 : puntosBanca;
+            if (dadoJugador != dadoBanca) {
+                if (dadoJugador > dadoBanca) {
+                    jugador++;
+                } else {
+                    banca++;
+                }
+                if (siguiente != RONDAS) {
+                    siguiente++;
+                }
+            }
+            if (siguiente == RONDAS && jugador != banca) {
+                return new Partida(1, jugador, banca, true);
+            }
+            return new Partida(siguiente, jugador, banca, false);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package rutas;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import paginas.PaginaIndex;
+import paginas.PaginaLogin;
+import seguridad.Persistencia;
+import seguridad.Sesiones;
+import servidor_main.Peticion;
+import servidor_main.Respuesta;
+import utilidades.Comprobaciones;
+
+/**
+ * Manejador del formulario de acceso ({@code POST /}).
+ *
+ * <p>
+ * Según el campo {@code accion} del formulario inicia la sesión del usuario
+ * ({@code login}) o crea una cuenta nueva ({@code crear}). Si los datos no
+ * son válidos se vuelve a mostrar el formulario con el mensaje de error. Si el
+ * pool de BCrypt está saturado se pide que se intente de nuevo más tarde.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class ManejadorLogin implements Manejador {
+
+    @Override
+    public Respuesta atender(Peticion peticion) throws Exception {
+        String sessionID = peticion.getSessionID();
+        String cuerpo = peticion.getCuerpo();
+        byte[] html = new byte[0];
+        String[] arrayDatos;
+
+        if (!cuerpo.isEmpty()) {
+
+            if (cuerpo.contains("user=") && cuerpo.contains("pass=")) {
+
+                arrayDatos = cuerpo.split("&");
+                String user = URLDecoder.decode(arrayDatos[0].substring(5), StandardCharsets.UTF_8);
+                String pass = URLDecoder.decode(arrayDatos[1].substring(5), StandardCharsets.UTF_8);
+                String accion = arrayDatos[2].substring(7);
+
+                String texto = Comprobaciones.comprobarDatos(user, pass);
+
+                if (texto.equals("OK")) {
+                    try {
+                        if (accion.equals("login")) {
+
+                            if (Persistencia.loginUsuario(user, pass)) {
+                                // Solo acepta un par: 1 usuario -> 1 cookie, si se cambia o modifica se guarda una nueva.
+                                sessionID = Sesiones.iniciarSesion(user, sessionID);
+                                html = PaginaIndex.getBytes();
+
+                            } else {
+                                html = PaginaLogin.getPlantilla().renderizar("Error: usuario o contraseña incorrectos.");
+                            }
+                        } else if (accion.equals("crear")) {
+                            if (Persistencia.guardarUsuario(user, pass)) {
+                                html = PaginaLogin.getPlantilla().renderizar("¡Felicidades! Se ha creado la cuenta correctamente.", "style=\"color: green;");
+                            } else {
+                                html = PaginaLogin.getPlantilla().renderizar("Error: el usuario ya existe.");
+                            }
+                        }
+                    } catch (RejectedExecutionException e) {
+                        // Demasiados cálculos BCrypt en curso: se pide al usuario que lo intente de nuevo
+                        html = PaginaLogin.getPlantilla().renderizar("El servidor está ocupado, inténtalo de nuevo en unos segundos.");
+                    }
+
+                } else {
+                    html = PaginaLogin.getPlantilla().renderizar(texto);
+                }
+            }
+        }
+        return new Respuesta(200, sessionID, html);
+    }
+}
@@ -0,0 +1,25 @@
+package rutas;
+
+import paginas.PaginaLogout;
+import seguridad.Sesiones;
+import servidor_main.Peticion;
+import servidor_main.Respuesta;
+
+/**
+ * Manejador de la ruta {@code GET /logout}: cierra la sesión, descarta sus
+ * partidas, muestra la página de sesión cerrada y borra la cookie de sesión
+ * del navegador.
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class ManejadorLogout implements Manejador {
+
+    @Override
+    public Respuesta atender(Peticion peticion) {
+        String sessionID = peticion.getSessionID();
+        int tipoRespuesta = Sesiones.sesionValida(sessionID) ? 200 : 300;
+        Sesiones.cerrarSesion(sessionID);
+        // Dejamos la sesionID vacia para que la cabecera la borre
+        return new Respuesta(tipoRespuesta, "", PaginaLogout.getBytes());
+    }
+}
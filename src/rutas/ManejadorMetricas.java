@@ -0,0 +1,184 @@
+package rutas;
+
+import java.nio.charset.StandardCharsets;
+import seguridad.CacheCredenciales;
+import seguridad.Cifradora;
+import seguridad.EjecutorBCrypt;
+import seguridad.Logueadora;
+import seguridad.Persistencia;
+import seguridad.Sesiones;
+import servidor_main.EstadisticasConexiones;
+import servidor_main.Peticion;
+import servidor_main.RegistroAccesos;
+import servidor_main.Respuesta;
+import utilidades.AlmacenEstado;
+import utilidades.AlmacenEstadoMapeado;
+import utilidades.Histograma;
+
+/**
+ * Manejador de la ruta {@code GET /metrics}: expone las métricas del servidor
+ * en el formato de texto de Prometheus.
+ *
+ * <p>
+ * Incluye las conexiones aceptadas, activas y rechazadas; las peticiones,
+ * errores y el histograma de latencias de cada ruta; el tiempo de los cálculos
+ * BCrypt, de las búsquedas en {@link Persistencia} y de los cifrados AES; las
+ * sesiones abiertas; la caché de credenciales; el almacén de estado, si es
+ * un archivo mapeado, y los eventos de los dos logs.
+ * Todos los contadores se actualizan con {@link java.util.concurrent.atomic.LongAdder}
+ * en el camino de cada petición; aquí solo se suman al generar el texto.</p>
+ *
+ * <p>
+ * Los histogramas se exponen con una cubeta por potencia de dos, de unos
+ * 4 µs a unos 17 s.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class ManejadorMetricas implements Manejador {
+
+    private static final int PRIMERA_POTENCIA = 12;
+    private static final int ULTIMA_POTENCIA = 34;
+
+    /**
+     * Límites de las cubetas en segundos, ya convertidos a texto.
+     */
+    private static final String[] LIMITES = limites();
+
+    private final TablaRutas rutas;
+
+    /**
+     * Crea el manejador.
+     *
+     * @param rutas tabla de rutas cuyas métricas se exponen
+     */
+    public ManejadorMetricas(TablaRutas rutas) {
+        this.rutas = rutas;
+    }
+
+    @Override
+    public Respuesta atender(Peticion peticion) {
+        StringBuilder texto = new StringBuilder(16 * 1024);
+
+        cabecera(texto, "servidor_conexiones_aceptadas_total", "counter", "Conexiones aceptadas desde el arranque.");
+        valor(texto, "servidor_conexiones_aceptadas_total", "", EstadisticasConexiones.getAceptadas());
+        cabecera(texto, "servidor_conexiones_activas", "gauge", "Conexiones abiertas en este momento.");
+        valor(texto, "servidor_conexiones_activas", "", EstadisticasConexiones.getActivas());
+        cabecera(texto, "servidor_conexiones_rechazadas_total", "counter", "Conexiones o peticiones rechazadas con un 503.");
+        valor(texto, "servidor_conexiones_rechazadas_total", "", EstadisticasConexiones.getRechazadas());
+
+        cabecera(texto, "servidor_peticiones_total", "counter", "Peticiones atendidas por ruta.");
+        for (Ruta ruta : rutas.getRutas()) {
+            valor(texto, "servidor_peticiones_total", etiquetas(ruta), ruta.getPeticiones());
+        }
+        valor(texto, "servidor_peticiones_total", etiquetas(rutas.getPorDefecto()), rutas.getPorDefecto().getPeticiones());
+        cabecera(texto, "servidor_peticiones_error_total", "counter", "Peticiones cuyo manejador terminó con una excepción.");
+        for (Ruta ruta : rutas.getRutas()) {
+            valor(texto, "servidor_peticiones_error_total", etiquetas(ruta), ruta.getErrores());
+        }
+        valor(texto, "servidor_peticiones_error_total", etiquetas(rutas.getPorDefecto()), rutas.getPorDefecto().getErrores());
+        cabecera(texto, "servidor_peticion_segundos", "histogram", "Duración del manejador de cada ruta.");
+        for (Ruta ruta : rutas.getRutas()) {
+            histograma(texto, "servidor_peticion_segundos", etiquetas(ruta), ruta.getLatencias());
+        }
+        histograma(texto, "servidor_peticion_segundos", etiquetas(rutas.getPorDefecto()), rutas.getPorDefecto().getLatencias());
+
+        cabecera(texto, "bcrypt_calculo_segundos", "histogram", "Duración de cada cálculo BCrypt.");
+        histograma(texto, "bcrypt_calculo_segundos", "", EjecutorBCrypt.getTiempoCalculo());
+        cabecera(texto, "bcrypt_rechazados_total", "counter", "Cálculos BCrypt rechazados por saturación o espera excesiva.");
+        valor(texto, "bcrypt_rechazados_total", "", EjecutorBCrypt.getRechazadas());
+        cabecera(texto, "bcrypt_en_cola", "gauge", "Cálculos BCrypt esperando en la cola.");
+        valor(texto, "bcrypt_en_cola", "", EjecutorBCrypt.getEnCola());
+        cabecera(texto, "bcrypt_espera_cola_segundos_total", "counter", "Tiempo total de espera en la cola de BCrypt.");
+        segundos(texto, "bcrypt_espera_cola_segundos_total", "", EjecutorBCrypt.getNanosEnCola());
+
+        cabecera(texto, "persistencia_busqueda_segundos", "histogram", "Duración de las búsquedas de usuarios en el índice.");
+        histograma(texto, "persistencia_busqueda_segundos", "", Persistencia.getTiempoBusqueda());
+        cabecera(texto, "cifrado_aes_segundos", "histogram", "Duración de los cifrados y descifrados AES en memoria.");
+        histograma(texto, "cifrado_aes_segundos", "", Cifradora.getTiempoCifrado());
+
+        cabecera(texto, "sesiones_activas", "gauge", "Sesiones abiertas.");
+        valor(texto, "sesiones_activas", "", Sesiones.getNumeroSesiones());
+        cabecera(texto, "sesiones_creadas_total", "counter", "Sesiones abiertas desde el arranque.");
+        valor(texto, "sesiones_creadas_total", "", Sesiones.getCreadas());
+        cabecera(texto, "sesiones_caducadas_total", "counter", "Sesiones eliminadas por inactividad o por superar su duración máxima.");
+        valor(texto, "sesiones_caducadas_total", "", Sesiones.getCaducadas());
+        cabecera(texto, "sesiones_expulsadas_total", "counter", "Sesiones expulsadas por superar el máximo de sesiones.");
+        valor(texto, "sesiones_expulsadas_total", "", Sesiones.getExpulsadas());
+
+        cabecera(texto, "cache_credenciales_aciertos_total", "counter", "Inicios de sesión resueltos por la caché de credenciales.");
+        valor(texto, "cache_credenciales_aciertos_total", "", CacheCredenciales.getAciertos());
+        cabecera(texto, "cache_credenciales_fallos_total", "counter", "Inicios de sesión que han pasado por BCrypt.");
+        valor(texto, "cache_credenciales_fallos_total", "", CacheCredenciales.getFallos());
+        cabecera(texto, "cache_credenciales_expulsiones_total", "counter", "Entradas expulsadas de la caché de credenciales.");
+        valor(texto, "cache_credenciales_expulsiones_total", "", CacheCredenciales.getExpulsiones());
+        cabecera(texto, "cache_credenciales_entradas", "gauge", "Entradas en la caché de credenciales.");
+        valor(texto, "cache_credenciales_entradas", "", CacheCredenciales.getTamano());
+
+        if (AlmacenEstado.getInstancia() instanceof AlmacenEstadoMapeado almacen) {
+            cabecera(texto, "almacen_estado_cache_aciertos_total", "counter", "Lecturas del almacén de estado servidas por la caché cercana.");
+            valor(texto, "almacen_estado_cache_aciertos_total", "", almacen.getAciertos());
+            cabecera(texto, "almacen_estado_cache_fallos_total", "counter", "Lecturas del almacén de estado que han ido al archivo.");
+            valor(texto, "almacen_estado_cache_fallos_total", "", almacen.getFallos());
+            cabecera(texto, "almacen_estado_lotes_total", "counter", "Lotes de escrituras añadidos al archivo del almacén de estado.");
+            valor(texto, "almacen_estado_lotes_total", "", almacen.getLotes());
+            cabecera(texto, "almacen_estado_registros_total", "counter", "Registros añadidos al archivo del almacén de estado.");
+            valor(texto, "almacen_estado_registros_total", "", almacen.getRegistros());
+            cabecera(texto, "almacen_estado_compactaciones_total", "counter", "Compactaciones del archivo del almacén de estado hechas por este proceso.");
+            valor(texto, "almacen_estado_compactaciones_total", "", almacen.getCompactaciones());
+            cabecera(texto, "almacen_estado_ocupado_bytes", "gauge", "Bytes ocupados del archivo del almacén de estado.");
+            valor(texto, "almacen_estado_ocupado_bytes", "", almacen.getOcupado());
+            cabecera(texto, "almacen_estado_capacidad_bytes", "gauge", "Tamaño del archivo del almacén de estado.");
+            valor(texto, "almacen_estado_capacidad_bytes", "", almacen.getCapacidad());
+        }
+
+        cabecera(texto, "log_eventos_escritos_total", "counter", "Eventos escritos por cada log.");
+        valor(texto, "log_eventos_escritos_total", "{log=\"errores\"}", Logueadora.getEscritos());
+        valor(texto, "log_eventos_escritos_total", "{log=\"accesos\"}", RegistroAccesos.getEscritos());
+        cabecera(texto, "log_eventos_descartados_total", "counter", "Eventos descartados porque el búfer del log estaba lleno.");
+        valor(texto, "log_eventos_descartados_total", "{log=\"errores\"}", Logueadora.getDescartados());
+        valor(texto, "log_eventos_descartados_total", "{log=\"accesos\"}", RegistroAccesos.getDescartados());
+
+        return new Respuesta(200, peticion.getSessionID(), texto.toString().getBytes(StandardCharsets.UTF_8), true);
+    }
+
+    private static void cabecera(StringBuilder texto, String nombre, String tipo, String ayuda) {
+        texto.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        texto.append("# TYPE ").append(nombre).append(' ').append(tipo).append('\n');
+    }
+
+    private static void valor(StringBuilder texto, String nombre, String etiquetas, long valor) {
+        texto.append(nombre).append(etiquetas).append(' ').append(valor).append('\n');
+    }
+
+    private static void segundos(StringBuilder texto, String nombre, String etiquetas, long nanos) {
+        texto.append(nombre).append(etiquetas).append(' ').append(nanos / 1e9).append('\n');
+    }
+
+    /**
+     * Escribe un histograma con sus cubetas acumuladas, la suma y el total.
+     * Las etiquetas de la serie se combinan con la etiqueta {@code le}.
+     */
+    private static void histograma(StringBuilder texto, String nombre, String etiquetas, Histograma histograma) {
+        String prefijo = etiquetas.isEmpty() ? "{" : etiquetas.substring(0, etiquetas.length() - 1) + ",";
+        for (int i = 0; i < LIMITES.length; i++) {
+            texto.append(nombre).append("_bucket").append(prefijo).append("le=\"").append(LIMITES[i]).append("\"} ")
+                    .append(histograma.contarHasta(1L << (PRIMERA_POTENCIA + i))).append('\n');
+        }
+        long total = histograma.getTotal();
+        texto.append(nombre).append("_bucket").append(prefijo).append("le=\"+Inf\"} ").append(total).append('\n');
+        segundos(texto, nombre + "_sum", etiquetas, histograma.getSuma());
+        valor(texto, nombre + "_count", etiquetas, total);
+    }
+
+    private static String etiquetas(Ruta ruta) {
+        return "{metodo=\"" + ruta.getMetodo() + "\",ruta=\"" + ruta.getRuta() + "\"}";
+    }
+
+    private static String[] limites() {
+        String[] limites = new String[ULTIMA_POTENCIA - PRIMERA_POTENCIA + 1];
+        for (int i = 0; i < limites.length; i++) {
+            limites[i] = String.valueOf((1L << (PRIMERA_POTENCIA + i)) / 1e9);
+        }
+        return limites;
+    }
+}
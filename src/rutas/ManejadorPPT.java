@@ -0,0 +1,140 @@
+package rutas;
+
+import java.util.concurrent.ThreadLocalRandom;
+import paginas.PaginaPPT;
+import seguridad.Logueadora;
+import seguridad.Origen;
+import seguridad.Sesiones;
+import servidor_main.Peticion;
+import servidor_main.Respuesta;
+
+/**
+ * Manejador del juego "Piedra, papel o tijera" ({@code POST /ppt}).
+ *
+ * <p>
+ * El jugador elige una opción, la banca otra al azar, y se lleva el punto la
+ * que gana. La partida termina a partir de la quinta ronda si el marcador no
+ * está empatado.</p>
+ *
+ * <p>
+ * Cada sesión juega su propia partida, guardada en un
+ * {@link AlmacenPartidas}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class ManejadorPPT implements Manejador {
+
+    private static final String[] PTT_OPCIONES_DISPONIBLES = {"Piedra", "Papel", "Tijera"};
+    private static final int RONDAS = 5;
+
+    private static final Origen OPCION_NO_NUMERICA = new Origen(4, "ppt", "ManejadorPPT.opcionNoNumerica");
+    private static final Origen OPCION_NO_VALIDA = new Origen(4, "ppt", "ManejadorPPT.opcionNoValida");
+
+    private final AlmacenPartidas<Partida> partidas = new AlmacenPartidas<>("ppt", new Partida(1, 0, 0, false));
+
+    @Override
+    public Respuesta atender(Peticion peticion) {
+        String sessionID = peticion.getSessionID();
+        String cuerpo = peticion.getCuerpo();
+        String mensaje = "";
+        byte[] html;
+        if (!Sesiones.sesionValida(sessionID)) {
+            return new Respuesta(300, sessionID, new byte[0]);
+        }
+
+        String[] arrayDatos;
+        String opcionElegida = "";
+        if (!cuerpo.isEmpty()) {
+
+            if (cuerpo.contains("opcion=")) {
+                arrayDatos = cuerpo.split("=");
+                if (arrayDatos.length == 2) {
+                    opcionElegida = arrayDatos[1];
+                }
+            }
+        }
+        if (opcionElegida.equals("0") || opcionElegida.equals("1") || opcionElegida.equals("2")) {
+            int pptOpcionBanca = ThreadLocalRandom.current().nextInt(3);
+            int pptOpcionElegida = 0;
+            try {
+                pptOpcionElegida = Integer.parseInt(opcionElegida);
+            } catch (NumberFormatException e) {
+                // Este error está en several porque no debería de saltar nunca, a no ser que haya un fallo en el casteo.
+                Logueadora.registrar(OPCION_NO_NUMERICA, opcionElegida);
+            }
+            int elegida = pptOpcionElegida;
+            AlmacenPartidas.Jugada<Partida> jugada = partidas.jugar(sessionID, p -> p.jugar(elegida, pptOpcionBanca));
+            Partida partida = jugada.nueva();
+
+            // Piedra (0) pierde contra Papel (1), Papel contra Tijera (2) y Tijera contra Piedra
+            if (pptOpcionElegida == pptOpcionBanca) {
+                mensaje = "¡Empate!<br>";
+            } else if (pptOpcionElegida == (pptOpcionBanca + 1) % 3) {
+                mensaje = "¡Punto para el Jugador!<br>";
+            } else {
+                mensaje = "¡Punto para la banca!<br>";
+            }
+            mensaje += "Ronda: " + jugada.anterior().ronda();
+
+            // Al terminar la partida los botones se sustituyen por el resultado y el botón de volver a jugar
+            String botones = null;
+            String botonTijera = null;
+            if (partida.acabada()) {
+                botones = partida.puntosJugador() > partida.puntosBanca() ? "<br><h3 style=\"color: green;\">¡Felicidades! Has ganado a la banca</h3>" : "<br><h3 style=\"color: red;\">Lo siento, has perdido</h3>";
+                botonTijera = "<button type=\"submit\" name=\"opcion\" value=\"4\">Volver a intentar</button>";
+            }
+
+            html = PaginaPPT.getPlantilla().renderizar(
+                    botones,
+                    botonTijera,
+                    PTT_OPCIONES_DISPONIBLES[pptOpcionElegida],
+                    PTT_OPCIONES_DISPONIBLES[pptOpcionBanca],
+                    mensaje + "<br>",
+                    Integer.toString(partida.puntosJugador()),
+                    Integer.toString(partida.puntosBanca()));
+
+        } else {
+            html = PaginaPPT.getPlantilla().renderizar();
+
+            Logueadora.registrar(OPCION_NO_VALIDA, opcionElegida);
+        }
+        return new Respuesta(200, sessionID, html);
+    }
+
+    /**
+     * Estado de la partida de una sesión.
+     *
+     * @param ronda ronda que se juega en la siguiente jugada
+     * @param puntosJugador puntos del jugador
+     * @param puntosBanca puntos de la banca
+     * @param acabada si la partida terminó en la última jugada; la siguiente
+     * empieza una nueva
+     */
+    private record Partida(int ronda, int puntosJugador, int puntosBanca, boolean acabada) {
+
+        /**
+         * Aplica una jugada a la partida.
+         *
+         * @param elegida opción del jugador
+         * @param banca opción de la banca
+         * @return el estado de la partida tras la jugada
+         */
+        Partida jugar(int elegida, int banca) {
+            int siguiente = ronda;
+            int puntosJ = ronda == 1 ? 0 : puntosJugador;
+            int puntosB = ronda == 1 ? 0 : puntosBanca;
+            if (elegida != banca) {
+                if (elegida == (banca + 1) % 3) {
+                    puntosJ++;
+                } else {
+                    puntosB++;
+                }
+                siguiente++;
+            }
+            if (siguiente >= RONDAS && puntosJ != puntosB) {
+                return new Partida(1, puntosJ, puntosB, true);
+            }
+            return new Partida(siguiente, puntosJ, puntosB, false);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package rutas;
+
+import seguridad.Sesiones;
+import servidor_main.Peticion;
+import servidor_main.Respuesta;
+
+/**
+ * Manejador que sirve una página fija, como la página de acceso, la principal
+ * o la página inicial de cada juego. La página se codifica una sola vez y se
+ * reutiliza en todas las respuestas.
+ *
+ * <p>
+ * Si la página es privada y la cookie de sesión no es válida se redirige a la
+ * página principal '/'.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class ManejadorPagina implements Manejador {
+
+    private final byte[] html;
+    private final boolean privada;
+
+    /**
+     * Crea el manejador de una página fija.
+     *
+     * @param html contenido HTML de la página ya codificado en UTF-8; se
+     * envía tal cual en cada respuesta
+     * @param privada si hace falta una sesión válida para verla
+     */
+    public ManejadorPagina(byte[] html, boolean privada) {
+        this.html = html;
+        this.privada = privada;
+    }
+
+    @Override
+    public Respuesta atender(Peticion peticion) {
+        int tipoRespuesta = !privada || Sesiones.sesionValida(peticion.getSessionID()) ? 200 : 300;
+        return new Respuesta(tipoRespuesta, peticion.getSessionID(), html);
+    }
+}
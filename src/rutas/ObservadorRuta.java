@@ -0,0 +1,25 @@
+package rutas;
+
+/**
+ * Interfaz para recibir la medición de cada petición despachada por una
+ * {@link TablaRutas}.
+ *
+ * <p>
+ * Se invoca en el hilo que ha atendido la petición justo después de generar
+ * la respuesta, así que las implementaciones deben ser rápidas y seguras para
+ * hilos.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+@FunctionalInterface
+public interface ObservadorRuta {
+
+    /**
+     * Registra una petición atendida.
+     *
+     * @param ruta ruta que ha atendido la petición
+     * @param tipoRespuesta código de respuesta generado
+     * @param nanos tiempo empleado por el manejador, en nanosegundos
+     */
+    void registrar(Ruta ruta, int tipoRespuesta, long nanos);
+}
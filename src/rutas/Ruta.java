@@ -0,0 +1,110 @@
+package rutas;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import utilidades.Histograma;
+
+/**
+ * Ruta registrada en una {@link TablaRutas}: el método y la ruta HTTP, su
+ * manejador y los contadores de tiempo de las peticiones que atiende.
+ *
+ * <p>
+ * Los contadores usan {@link LongAdder} para que medir no añada contención
+ * entre los hilos que atienden la misma ruta. Las duraciones se guardan además
+ * en un {@link Histograma} para conocer su distribución.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class Ruta {
+
+    private final String metodo;
+    private final String ruta;
+    private final Manejador manejador;
+
+    private final LongAdder peticiones = new LongAdder();
+    private final LongAdder errores = new LongAdder();
+    private final LongAdder nanosTotales = new LongAdder();
+    private final LongAccumulator nanosMaximo = new LongAccumulator(Long::max, 0);
+    private final Histograma latencias = new Histograma();
+
+    /**
+     * Crea una ruta.
+     *
+     * @param metodo método HTTP
+     * @param ruta ruta HTTP, por ejemplo {@code /dados}
+     * @param manejador manejador que atiende la ruta
+     */
+    public Ruta(String metodo, String ruta, Manejador manejador) {
+        this.metodo = metodo;
+        this.ruta = ruta;
+        this.manejador = manejador;
+    }
+
+    public String getMetodo() {
+        return metodo;
+    }
+
+    public String getRuta() {
+        return ruta;
+    }
+
+    public Manejador getManejador() {
+        return manejador;
+    }
+
+    /**
+     * Anota el tiempo de una petición atendida por esta ruta.
+     *
+     * @param nanos tiempo empleado en nanosegundos
+     * @param error si el manejador terminó con una excepción
+     */
+    void medir(long nanos, boolean error) {
+        peticiones.increment();
+        nanosTotales.add(nanos);
+        nanosMaximo.accumulate(nanos);
+        latencias.registrar(nanos);
+        if (error) {
+            errores.increment();
+        }
+    }
+
+    /**
+     * @return número de peticiones atendidas
+     */
+    public long getPeticiones() {
+        return peticiones.sum();
+    }
+
+    /**
+     * @return número de peticiones que terminaron con una excepción
+     */
+    public long getErrores() {
+        return errores.sum();
+    }
+
+    /**
+     * @return tiempo total empleado por el manejador, en nanosegundos
+     */
+    public long getNanosTotales() {
+        return nanosTotales.sum();
+    }
+
+    /**
+     * @return la petición más lenta atendida, en nanosegundos
+     */
+    public long getNanosMaximo() {
+        return nanosMaximo.get();
+    }
+
+    /**
+     * @return histograma de la duración de las peticiones
+     */
+    public Histograma getLatencias() {
+        return latencias;
+    }
+
+    @Override
+    public String toString() {
+        return metodo + " " + ruta;
+    }
+}
@@ -0,0 +1,126 @@
+package rutas;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import servidor_main.Peticion;
+import servidor_main.Respuesta;
+
+/**
+ * Tabla de rutas del servidor: asocia cada par método y ruta con su
+ * {@link Manejador} y despacha las peticiones.
+ *
+ * <p>
+ * Las rutas se registran al arrancar y se guardan en un mapa por método, de
+ * modo que resolver una petición son dos búsquedas en tablas hash sin crear
+ * ninguna cadena. Las peticiones que no coinciden con ninguna ruta se
+ * despachan a la ruta por defecto.</p>
+ *
+ * <p>
+ * El despacho mide el tiempo de cada manejador, lo acumula en su {@link Ruta}
+ * y lo comunica a los {@link ObservadorRuta} registrados.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class TablaRutas {
+
+    private final Map<String, Map<String, Ruta>> rutas = new HashMap<>();
+    private final Ruta porDefecto;
+    private final List<ObservadorRuta> observadores = new CopyOnWriteArrayList<>();
+
+    /**
+     * Crea una tabla vacía.
+     *
+     * @param porDefecto manejador para las rutas no registradas
+     */
+    public TablaRutas(Manejador porDefecto) {
+        this.porDefecto = new Ruta("*", "*", porDefecto);
+    }
+
+    /**
+     * Registra el manejador de una ruta. Debe llamarse antes de empezar a
+     * despachar peticiones.
+     *
+     * @param metodo método HTTP
+     * @param ruta ruta HTTP
+     * @param manejador manejador que atenderá la ruta
+     * @return esta tabla, para encadenar registros
+     */
+    public TablaRutas registrar(String metodo, String ruta, Manejador manejador) {
+        rutas.computeIfAbsent(metodo, m -> new HashMap<>()).put(ruta, new Ruta(metodo, ruta, manejador));
+        return this;
+    }
+
+    /**
+     * Añade un observador que recibirá el tiempo de cada petición.
+     *
+     * @param observador observador a añadir
+     */
+    public void agregarObservador(ObservadorRuta observador) {
+        observadores.add(observador);
+    }
+
+    /**
+     * Busca la ruta que corresponde a un método y una ruta HTTP.
+     *
+     * @param metodo método HTTP
+     * @param ruta ruta HTTP
+     * @return la ruta registrada, o la ruta por defecto si no hay ninguna
+     */
+    public Ruta resolver(String metodo, String ruta) {
+        Map<String, Ruta> delMetodo = rutas.get(metodo);
+        Ruta encontrada = delMetodo == null ? null : delMetodo.get(ruta);
+        return encontrada == null ? porDefecto : encontrada;
+    }
+
+    /**
+     * Devuelve todas las rutas registradas, sin incluir la ruta por defecto.
+     *
+     * @return lista de rutas
+     */
+    public List<Ruta> getRutas() {
+        List<Ruta> todas = new ArrayList<>();
+        for (Map<String, Ruta> delMetodo : rutas.values()) {
+            todas.addAll(delMetodo.values());
+        }
+        return todas;
+    }
+
+    /**
+     * Devuelve la ruta que atiende las peticiones no registradas.
+     *
+     * @return la ruta por defecto
+     */
+    public Ruta getPorDefecto() {
+        return porDefecto;
+    }
+
+    /**
+     * Resuelve la ruta de una petición, la atiende con su manejador y mide el
+     * tiempo empleado.
+     *
+     * @param peticion petición a atender
+     * @return la respuesta generada
+     * @throws Exception si el manejador falla
+     */
+    public Respuesta despachar(Peticion peticion) throws Exception {
+        Ruta ruta = resolver(peticion.getMetodo(), peticion.getUrl());
+        long inicio = System.nanoTime();
+        Respuesta respuesta = null;
+        try {
+            respuesta = ruta.getManejador().atender(peticion);
+            return respuesta;
+        } finally {
+            long nanos = System.nanoTime() - inicio;
+            ruta.medir(nanos, respuesta == null);
+            if (!observadores.isEmpty()) {
+                int tipo = respuesta == null ? 500 : respuesta.getTipoRespuesta();
+                for (ObservadorRuta observador : observadores) {
+                    observador.registrar(ruta, tipo, nanos);
+                }
+            }
+        }
+    }
+}
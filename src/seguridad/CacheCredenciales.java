@@ -0,0 +1,207 @@
+package seguridad;
+
+import config.Configuracion;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Caché de credenciales verificadas recientemente, para no repetir la
+ * comprobación BCrypt de un usuario que acaba de iniciar sesión con la misma
+ * contraseña.
+ *
+ * <p>
+ * Por cada usuario se guarda un resumen HMAC-SHA256 de la contraseña y del
+ * hash almacenado, nunca la contraseña. La clave del HMAC se genera al azar
+ * al arrancar y no sale de memoria, así que los resúmenes no sirven de nada
+ * fuera de este proceso. Calcularlo cuesta microsegundos frente a los cientos
+ * de milisegundos de BCrypt. Solo se guardan los aciertos: una contraseña
+ * incorrecta siempre pasa por BCrypt.</p>
+ *
+ * <p>
+ * Las entradas caducan a los {@link Configuracion#getTtlCacheCredenciales()}
+ * segundos y la caché no pasa de
+ * {@link Configuracion#getMaxCacheCredenciales()} usuarios; al llenarse se
+ * expulsan primero las caducadas y después las que haga falta hasta dejar
+ * libre una octava parte, de modo que la tabla solo se recorre una vez cada
+ * muchas inserciones y no en cada una. Si varios hilos la llenan a la vez,
+ * solo uno la recorre. {@link Persistencia} invalida la entrada de un usuario
+ * cuando lo modifica. Se cuentan los aciertos, fallos y expulsiones.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class CacheCredenciales {
+
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final SecretKeySpec CLAVE = crearClave();
+    private static final ThreadLocal<Mac> MAC = new ThreadLocal<>();
+
+    /**
+     * Al llenarse la caché se libera esta fracción del máximo.
+     */
+    private static final int FRACCION_RECORTE = 8;
+
+    private static final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+
+    private static final LongAdder aciertos = new LongAdder();
+    private static final LongAdder fallos = new LongAdder();
+    private static final LongAdder expulsiones = new LongAdder();
+    private static final AtomicBoolean recortando = new AtomicBoolean();
+
+    /**
+     * Resumen de una credencial verificada y el instante en que caduca.
+     */
+    private static final class Entrada {
+
+        final byte[] resumen;
+        final long caduca;
+
+        Entrada(byte[] resumen, long caduca) {
+            this.resumen = resumen;
+            this.caduca = caduca;
+        }
+    }
+
+    /**
+     * Comprueba si la credencial está en la caché y no ha caducado.
+     *
+     * @param usuario nombre del usuario
+     * @param contrasena contraseña recibida
+     * @param hash hash BCrypt almacenado del usuario
+     * @return {@code true} si la credencial se verificó hace poco
+     */
+    public static boolean comprobar(String usuario, String contrasena, String hash) {
+        Entrada entrada = entradas.get(usuario);
+        if (entrada != null && entrada.caduca - System.nanoTime() > 0) {
+            byte[] resumen = resumir(usuario, contrasena, hash);
+            if (resumen != null && MessageDigest.isEqual(resumen, entrada.resumen)) {
+                aciertos.increment();
+                return true;
+            }
+        }
+        fallos.increment();
+        return false;
+    }
+
+    /**
+     * Guarda una credencial que BCrypt acaba de dar por buena.
+     *
+     * @param usuario nombre del usuario
+     * @param contrasena contraseña verificada
+     * @param hash hash BCrypt almacenado del usuario
+     */
+    public static void guardar(String usuario, String contrasena, String hash) {
+        byte[] resumen = resumir(usuario, contrasena, hash);
+        if (resumen == null) {
+            return;
+        }
+        long caduca = System.nanoTime() + Configuracion.getTtlCacheCredenciales() * 1_000_000_000L;
+        entradas.put(usuario, new Entrada(resumen, caduca));
+        int maximo = Configuracion.getMaxCacheCredenciales();
+        if (entradas.size() > maximo && recortando.compareAndSet(false, true)) {
+            try {
+                recortar(maximo);
+            } finally {
+                recortando.set(false);
+            }
+        }
+    }
+
+    /**
+     * Elimina la entrada de un usuario, por ejemplo al cambiar su contraseña.
+     *
+     * @param usuario nombre del usuario
+     */
+    public static void invalidar(String usuario) {
+        entradas.remove(usuario);
+    }
+
+    /**
+     * @return número de comprobaciones resueltas por la caché
+     */
+    public static long getAciertos() {
+        return aciertos.sum();
+    }
+
+    /**
+     * @return número de comprobaciones que han tenido que pasar por BCrypt
+     */
+    public static long getFallos() {
+        return fallos.sum();
+    }
+
+    /**
+     * @return número de entradas expulsadas por falta de espacio o caducidad
+     */
+    public static long getExpulsiones() {
+        return expulsiones.sum();
+    }
+
+    /**
+     * @return número de entradas guardadas
+     */
+    public static int getTamano() {
+        return entradas.size();
+    }
+
+    /**
+     * Deja la caché una octava parte por debajo del máximo: primero quita las
+     * entradas caducadas y, si no basta, las primeras que encuentra.
+     */
+    private static void recortar(int maximo) {
+        long ahora = System.nanoTime();
+        int objetivo = Math.max(0, maximo - Math.max(1, maximo / FRACCION_RECORTE));
+        for (Iterator<Map.Entry<String, Entrada>> it = entradas.entrySet().iterator(); it.hasNext();) {
+            if (it.next().getValue().caduca - ahora <= 0) {
+                it.remove();
+                expulsiones.increment();
+            }
+        }
+        for (Iterator<String> it = entradas.keySet().iterator(); it.hasNext() && entradas.size() > objetivo;) {
+            it.next();
+            it.remove();
+            expulsiones.increment();
+        }
+    }
+
+    /**
+     * Calcula el HMAC de usuario, contraseña y hash almacenado. Incluir el hash
+     * hace que la entrada deje de coincidir si el hash cambia.
+     *
+     * @return el resumen, o {@code null} si el HMAC no está disponible
+     */
+    private static byte[] resumir(String usuario, String contrasena, String hash) {
+        try {
+            Mac mac = MAC.get();
+            if (mac == null) {
+                mac = Mac.getInstance(ALGORITMO);
+                mac.init(CLAVE);
+                MAC.set(mac);
+            }
+            mac.update(usuario.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(contrasena.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(hash.getBytes(StandardCharsets.US_ASCII));
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    private static SecretKeySpec crearClave() {
+        byte[] clave = new byte[32];
+        new SecureRandom().nextBytes(clave);
+        return new SecretKeySpec(clave, ALGORITMO);
+    }
+}
@@ -1,123 +1,251 @@
 package seguridad;
 
 import config.Configuracion;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import javax.crypto.BadPaddingException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
-import javax.crypto.SecretKey;
+import javax.crypto.CipherInputStream;
 import javax.crypto.spec.SecretKeySpec;
 import org.mindrot.jbcrypt.BCrypt;
+import utilidades.Histograma;
 
 /**
- * Clase encargada de cifrar y descifrar el archivo que contiene los datos de
- * usuarios utilizando el algoritmo AES. Los datos cifrados se almacenan en el
- * archivo y pueden ser descifrados posteriormente.
+ * Clase encargada de cifrar y descifrar los datos de usuarios utilizando el
+ * algoritmo AES, y de calcular y comprobar los hash BCrypt de las contraseñas.
  *
  * <p>
- * Utiliza una clave 'secreta' predefinida para cifrarArchivo y descifrarArchivo
- * los datos. El archivo con los datos se lee y escribe en el archivo definido
- * por la constante ARCHIVO_DE_DATOS_USUARIOS.</p>
+ * Utiliza una clave 'secreta' predefinida. Los datos se cifran y descifran
+ * siempre en memoria, registro a registro o como un flujo de lectura, y nunca
+ * se escriben en claro en el disco.</p>
  *
  * <p>
- * El algoritmo utilizado es AES con una clave de 16 bytes (128 bits).</p>
+ * El algoritmo utilizado es AES con una clave de 16 bytes (128 bits). La clave
+ * se prepara una vez y cada hilo reutiliza sus propios objetos
+ * {@link Cipher}.</p>
  *
  * @author Antonio Álvarez Cárdenas
  */
 public class Cifradora {
 
-    private static boolean archivoCifrado = true;
+    /**
+     * Clave AES del servidor, construida una sola vez.
+     */
+    private static final SecretKeySpec CLAVE = new SecretKeySpec(
+            Configuracion.getClaveCifrado().getBytes(StandardCharsets.UTF_8), Configuracion.getAlgoritmo());
+
+    /**
+     * Objetos {@link Cipher} de cada hilo, ya inicializados con la clave. Así
+     * no se busca el proveedor ni se prepara la clave en cada operación.
+     */
+    private static final ThreadLocal<Cipher> CIFRADOR = new ThreadLocal<>();
+    private static final ThreadLocal<Cipher> DESCIFRADOR = new ThreadLocal<>();
+
+    /**
+     * Duración de cada cifrado o descifrado AES en memoria.
+     */
+    private static final Histograma tiempoCifrado = new Histograma();
 
-    public static boolean isCifrado() {
-        return Cifradora.archivoCifrado;
+    private static final Origen ERROR_CIFRAR_PASSWORD = new Origen(5, "Servidor", "Cifradora.cifrarPassword");
+    private static final Origen ERROR_COMPROBAR_PASSWORD = new Origen(5, "Servidor", "Cifradora.comprobarPassword");
+
+    /**
+     * Cifra un bloque de datos en memoria con la clave del servidor.
+     *
+     * @param datos datos en claro
+     * @return datos cifrados
+     * @throws GeneralSecurityException si el algoritmo o la clave no son
+     * válidos
+     */
+    public static byte[] cifrar(byte[] datos) throws GeneralSecurityException {
+        return cifrar(datos, 0, datos.length);
     }
 
     /**
-     * Cifra el contenido del archivo usuarios.txt. Los datos cifrados
-     * sobrescriben el archivo original. Devuelve un booleano para controlar si
-     * está cifrado o no.
+     * Cifra una parte de un búfer en memoria con la clave del servidor.
      *
-     * @throws Exception Si ocurre un error durante el proceso de cifrado, tiene
-     * varias excepciones
+     * @param datos búfer con los datos en claro
+     * @param desde posición del primer byte
+     * @param longitud número de bytes a cifrar
+     * @return datos cifrados
+     * @throws GeneralSecurityException si el algoritmo o la clave no son
+     * válidos
      */
-    public static synchronized void cifrarArchivo() throws Exception {
-        try {
-            Cipher cipher = Cipher.getInstance(Configuracion.getAlgoritmo());
-            SecretKey clave = new SecretKeySpec(Configuracion.getClaveCifrado().getBytes(), Configuracion.getAlgoritmo());
+    public static byte[] cifrar(byte[] datos, int desde, int longitud) throws GeneralSecurityException {
+        return transformar(CIFRADOR, Cipher.ENCRYPT_MODE, datos, desde, longitud);
+    }
 
-            cipher.init(Cipher.ENCRYPT_MODE, clave);
+    /**
+     * Descifra un bloque de datos en memoria con la clave del servidor. El
+     * resultado nunca se escribe en disco.
+     *
+     * @param datos datos cifrados
+     * @return datos en claro
+     * @throws GeneralSecurityException si los datos no se pueden descifrar
+     * con la clave del servidor
+     */
+    public static byte[] descifrar(byte[] datos) throws GeneralSecurityException {
+        return descifrar(datos, 0, datos.length);
+    }
 
-            byte[] datosDescifrados = Files.readAllBytes(Paths.get(Configuracion.getRutaArchivoUsuarios()));
+    /**
+     * Descifra una parte de un búfer en memoria con la clave del servidor.
+     *
+     * @param datos búfer con los datos cifrados
+     * @param desde posición del primer byte
+     * @param longitud número de bytes a descifrar
+     * @return datos en claro
+     * @throws GeneralSecurityException si los datos no se pueden descifrar
+     * con la clave del servidor
+     */
+    public static byte[] descifrar(byte[] datos, int desde, int longitud) throws GeneralSecurityException {
+        return transformar(DESCIFRADOR, Cipher.DECRYPT_MODE, datos, desde, longitud);
+    }
 
-            byte[] datosCifrados = cipher.doFinal(datosDescifrados);
-            Files.write(Paths.get(Configuracion.getRutaArchivoUsuarios()), datosCifrados);
-            archivoCifrado = true;
+    /**
+     * Envuelve un flujo cifrado con la clave del servidor para leerlo ya
+     * descifrado, por partes y sin cargarlo entero en memoria. El flujo usa su
+     * propio {@link Cipher}, porque guarda estado entre lecturas.
+     *
+     * @param entrada flujo con los datos cifrados
+     * @return flujo con los datos en claro
+     * @throws GeneralSecurityException si el algoritmo o la clave no son
+     * válidos
+     */
+    public static InputStream descifrarFlujo(InputStream entrada) throws GeneralSecurityException {
+        return new CipherInputStream(entrada, nuevoCipher(Cipher.DECRYPT_MODE));
+    }
 
-        } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | BadPaddingException | IllegalBlockSizeException | NoSuchPaddingException e) {
-            String nombreMetodo = Thread.currentThread().getStackTrace()[1].getMethodName();
-            int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-            Logueadora.grabarError(5, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), "Servidor", lineaError, nombreMetodo);
-            archivoCifrado = false;
+    /**
+     * Aplica el {@link Cipher} del hilo a los datos. {@code doFinal} deja el
+     * objeto listo para la siguiente operación; si falla, se descarta para
+     * que la siguiente llamada use uno nuevo.
+     */
+    private static byte[] transformar(ThreadLocal<Cipher> cache, int modo, byte[] datos, int desde, int longitud) throws GeneralSecurityException {
+        Cipher cipher = cache.get();
+        if (cipher == null) {
+            cipher = nuevoCipher(modo);
+            cache.set(cipher);
+        }
+        long inicio = System.nanoTime();
+        try {
+            return cipher.doFinal(datos, desde, longitud);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            cache.remove();
+            throw e;
+        } finally {
+            tiempoCifrado.registrar(System.nanoTime() - inicio);
         }
     }
 
     /**
-     * Descifra el contenido del archivo usuarios.txt. Los datos cifrados
-     * sobrescriben el archivo original. Devuelve un booleano para controlar si
-     * está cifrado o no.
-     *
-     * @throws Exception Si ocurre un error durante el proceso de descifrado
+     * @return histograma de la duración de los cifrados y descifrados AES en
+     * memoria
      */
-    public static synchronized void descifrarArchivo() throws Exception {
-        try {
-            Cipher cipher = Cipher.getInstance(Configuracion.getAlgoritmo());
-            SecretKey clave = new SecretKeySpec(Configuracion.getClaveCifrado().getBytes(), Configuracion.getAlgoritmo());
+    public static Histograma getTiempoCifrado() {
+        return tiempoCifrado;
+    }
 
-            cipher.init(Cipher.DECRYPT_MODE, clave);
+    private static Cipher nuevoCipher(int modo) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(Configuracion.getAlgoritmo());
+        cipher.init(modo, CLAVE);
+        return cipher;
+    }
 
-            byte[] datosCifrados = Files.readAllBytes(Paths.get(Configuracion.getRutaArchivoUsuarios()));
+    /**
+     * Coste mínimo y máximo que se prueban al calibrar.
+     */
+    private static final int COSTE_MINIMO = 10;
+    private static final int COSTE_MAXIMO = 16;
 
-            byte[] datosDescifrados = cipher.doFinal(datosCifrados);
+    /**
+     * Factor de coste de BCrypt de los hash nuevos.
+     */
+    private static volatile int coste = Configuracion.getCosteBCrypt();
 
-            Files.write(Paths.get(Configuracion.getRutaArchivoUsuarios()), datosDescifrados);
-            archivoCifrado = false;
+    /**
+     * Si está activada la calibración, mide cuánto tarda BCrypt en esta
+     * máquina y elige el mayor coste que cabe en el presupuesto de
+     * {@link Configuracion#getPresupuestoBCrypt()} milisegundos, sin bajar de
+     * {@value #COSTE_MINIMO}. Cada punto de coste duplica el tiempo, así que
+     * se prueba de menor a mayor y se para en cuanto se pasa del presupuesto.
+     * Se llama una vez al arrancar, antes de aceptar conexiones.
+     */
+    public static void calibrarCoste() {
+        if (!Configuracion.isCalibrarBCrypt()) {
+            return;
+        }
+        // Calentamiento para que el JIT compile BCrypt antes de medir
+        for (int i = 0; i < 3; i++) {
+            BCrypt.hashpw("calibracion", BCrypt.gensalt(6));
+        }
+        long presupuesto = Configuracion.getPresupuestoBCrypt() * 1_000_000L;
+        int elegido = COSTE_MINIMO;
+        for (int prueba = COSTE_MINIMO; prueba <= COSTE_MAXIMO; prueba++) {
+            long inicio = System.nanoTime();
+            BCrypt.hashpw("calibracion", BCrypt.gensalt(prueba));
+            long nanos = System.nanoTime() - inicio;
+            System.out.printf("BCrypt coste %d: %d ms%n", prueba, nanos / 1_000_000);
+            if (nanos > presupuesto) {
+                break;
+            }
+            elegido = prueba;
+        }
+        coste = elegido;
+        System.out.println("Coste de BCrypt calibrado: " + elegido);
+    }
 
-        } catch (IOException | InvalidKeyException | NoSuchAlgorithmException | BadPaddingException | IllegalBlockSizeException | NoSuchPaddingException e) {
-            String nombreMetodo = Thread.currentThread().getStackTrace()[1].getMethodName();
-            int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-            Logueadora.grabarError(5, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), "Servidor", lineaError, nombreMetodo);
-            archivoCifrado = true;
+    /**
+     * @return factor de coste de BCrypt de los hash nuevos
+     */
+    public static int getCoste() {
+        return coste;
+    }
+
+    /**
+     * Indica si un hash almacenado se calculó con un coste distinto del
+     * actual y conviene recalcularlo en el siguiente inicio de sesión.
+     *
+     * @param hashed hash BCrypt almacenado, con la forma {@code $2a$12$...}
+     * @return {@code true} si su coste es distinto del actual
+     */
+    public static boolean necesitaRehash(String hashed) {
+        try {
+            return Integer.parseInt(hashed.substring(4, 6)) != coste;
+        } catch (RuntimeException e) {
+            return false;
         }
     }
 
     /**
-     * Cifra una contraseña utilizando el algoritmo BCrypt con un factor de
-     * complejidad 12.
+     * Cifra una contraseña utilizando el algoritmo BCrypt con el factor de
+     * complejidad actual ({@link #getCoste()}).
      *
      * <p>
      * Genera automáticamente una sal (salt) aleatoria y devuelve el hash de la
      * contraseña. Si ocurre un error durante el proceso de cifrado, se devuelve
-     * {@code null}.
+     * {@code null}. El cálculo se hace en el {@link EjecutorBCrypt}.
      * </p>
      *
      * @param pass Contraseña en texto plano que se desea cifrar.
      * @return Cadena hasheada de la contraseña, o {@code null} si ocurre un
      * error.
+     * @throws java.util.concurrent.RejectedExecutionException si el pool de
+     * BCrypt está saturado
      */
     public static String cifrarPassword(String pass) {
+        return EjecutorBCrypt.ejecutar(() -> cifrarPasswordEnHilo(pass));
+    }
+
+    /**
+     * Calcula el hash BCrypt en el hilo actual. Solo debe llamarse desde un
+     * hilo del {@link EjecutorBCrypt}.
+     */
+    static String cifrarPasswordEnHilo(String pass) {
         try {
-            return BCrypt.hashpw(pass, BCrypt.gensalt(12));
+            return BCrypt.hashpw(pass, BCrypt.gensalt(coste));
         } catch (Exception e) {
-            String nombreMetodo = Thread.currentThread().getStackTrace()[1].getMethodName();
-            int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-            Logueadora.grabarError(5, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), "Servidor", lineaError, nombreMetodo);
+            Logueadora.registrar(ERROR_CIFRAR_PASSWORD, e.getMessage());
             return null;
         }
     }
@@ -129,21 +257,25 @@ public class Cifradora {
      * Utiliza la función {@code BCrypt.checkpw()} para comparar una contraseña
      * en texto plano con su versión hasheada. Si el hash tiene un formato
      * inválido o ocurre algún error durante la comparación, el método devuelve
-     * {@code false}.
+     * {@code false}. La comparación se hace en el {@link EjecutorBCrypt}.
      * </p>
      *
      * @param pass Contraseña en texto plano introducida por el usuario.
      * @param hashed Contraseña hasheada previamente almacenada.
      * @return {@code true} si la contraseña coincide con el hash; {@code false}
      * en caso contrario o si ocurre un error en la verificación.
+     * @throws java.util.concurrent.RejectedExecutionException si el pool de
+     * BCrypt está saturado
      */
     public static boolean comprobarPassword(String pass, String hashed) {
+        return EjecutorBCrypt.ejecutar(() -> comprobarPasswordEnHilo(pass, hashed));
+    }
+
+    private static boolean comprobarPasswordEnHilo(String pass, String hashed) {
         try {
             return BCrypt.checkpw(pass, hashed);
         } catch (Exception e) {
-            String nombreMetodo = Thread.currentThread().getStackTrace()[1].getMethodName();
-            int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-            Logueadora.grabarError(5, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), "Servidor", lineaError, nombreMetodo);
+            Logueadora.registrar(ERROR_COMPROBAR_PASSWORD, e.getMessage());
 
             return false;
         }
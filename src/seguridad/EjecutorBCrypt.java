@@ -0,0 +1,197 @@
+package seguridad;
+
+import config.Configuracion;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import utilidades.Histograma;
+import utilidades.PoolsHilos;
+
+/**
+ * Pool de hilos dedicado a los cálculos BCrypt de las contraseñas.
+ *
+ * <p>
+ * Cada cálculo BCrypt ocupa la CPU durante cientos de milisegundos. Si se
+ * hicieran en los hilos de conexión, una ráfaga de inicios de sesión ocuparía
+ * todos los núcleos y dejaría sin servicio a las peticiones de los juegos. Aquí
+ * se ejecutan en un número fijo de hilos ({@link Configuracion#getHilosBCrypt()})
+ * con una cola acotada ({@link Configuracion#getColaBCrypt()}): el resto de
+ * núcleos queda libre para las demás peticiones.</p>
+ *
+ * <p>
+ * Control de admisión: si la cola está llena, o si un cálculo no termina
+ * antes de {@link Configuracion#getEsperaBCrypt()} milisegundos, se lanza
+ * {@link RejectedExecutionException} para que el llamador responda que el
+ * servidor está ocupado en lugar de acumular trabajo. Se cuentan las tareas
+ * atendidas y rechazadas y el tiempo que pasan en cola y calculando.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class EjecutorBCrypt {
+
+    private static final ThreadPoolExecutor POOL = crearPool();
+
+    private static final LongAdder tareas = new LongAdder();
+    private static final LongAdder rechazadas = new LongAdder();
+    private static final LongAdder nanosEnCola = new LongAdder();
+    private static final LongAccumulator nanosEnColaMaximo = new LongAccumulator(Long::max, 0);
+    private static final LongAdder nanosCalculo = new LongAdder();
+    private static final Histograma tiempoCalculo = new Histograma();
+
+    /**
+     * Ejecuta un cálculo BCrypt en el pool y espera su resultado.
+     *
+     * @param <T> tipo del resultado
+     * @param calculo cálculo a ejecutar
+     * @return el resultado del cálculo
+     * @throws RejectedExecutionException si el pool está saturado o el
+     * cálculo no termina a tiempo
+     */
+    public static <T> T ejecutar(Callable<T> calculo) {
+        long encolada = System.nanoTime();
+        Future<T> futuro;
+        try {
+            futuro = POOL.submit(() -> {
+                long inicio = System.nanoTime();
+                long enCola = inicio - encolada;
+                nanosEnCola.add(enCola);
+                nanosEnColaMaximo.accumulate(enCola);
+                try {
+                    return calculo.call();
+                } finally {
+                    anotarCalculo(System.nanoTime() - inicio);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rechazadas.increment();
+            throw e;
+        }
+
+        try {
+            return futuro.get(Configuracion.getEsperaBCrypt(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Si todavía no ha empezado se quita de la cola; si ya está calculando se deja terminar
+            futuro.cancel(false);
+            POOL.purge();
+            rechazadas.increment();
+            throw new RejectedExecutionException("El cálculo BCrypt no terminó a tiempo");
+        } catch (InterruptedException e) {
+            futuro.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrumpido esperando el cálculo BCrypt", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Programa un cálculo BCrypt en el pool sin esperar su resultado, para
+     * trabajo que puede aplazarse como recalcular un hash.
+     *
+     * @param calculo cálculo a ejecutar
+     * @return {@code false} si el pool está saturado y no se ha programado
+     */
+    public static boolean programar(Runnable calculo) {
+        try {
+            POOL.execute(() -> {
+                long inicio = System.nanoTime();
+                try {
+                    calculo.run();
+                } finally {
+                    anotarCalculo(System.nanoTime() - inicio);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rechazadas.increment();
+            return false;
+        }
+    }
+
+    /**
+     * @return número de cálculos terminados
+     */
+    public static long getTareas() {
+        return tareas.sum();
+    }
+
+    /**
+     * @return número de cálculos rechazados por saturación o por espera
+     * excesiva
+     */
+    public static long getRechazadas() {
+        return rechazadas.sum();
+    }
+
+    /**
+     * @return cálculos esperando en la cola en este momento
+     */
+    public static int getEnCola() {
+        return POOL.getQueue().size();
+    }
+
+    /**
+     * @return tiempo total que han esperado en cola los cálculos, en
+     * nanosegundos
+     */
+    public static long getNanosEnCola() {
+        return nanosEnCola.sum();
+    }
+
+    /**
+     * @return mayor tiempo de espera en cola de un cálculo, en nanosegundos
+     */
+    public static long getNanosEnColaMaximo() {
+        return nanosEnColaMaximo.get();
+    }
+
+    /**
+     * @return tiempo total de CPU dedicado a calcular, en nanosegundos
+     */
+    public static long getNanosCalculo() {
+        return nanosCalculo.sum();
+    }
+
+    /**
+     * @return histograma de la duración de cada cálculo BCrypt
+     */
+    public static Histograma getTiempoCalculo() {
+        return tiempoCalculo;
+    }
+
+    private static void anotarCalculo(long nanos) {
+        tareas.increment();
+        nanosCalculo.add(nanos);
+        tiempoCalculo.registrar(nanos);
+    }
+
+    private static ThreadPoolExecutor crearPool() {
+        int hilos = Math.max(1, Configuracion.getHilosBCrypt());
+        AtomicInteger contador = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, Configuracion.getColaBCrypt())),
+                tarea -> {
+                    Thread hilo = new Thread(tarea, "bcrypt-" + contador.incrementAndGet());
+                    hilo.setDaemon(true);
+                    return hilo;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        Configuracion.agregarOyente(() -> PoolsHilos.redimensionar(pool, Configuracion.getHilosBCrypt()));
+        return pool;
+    }
+}
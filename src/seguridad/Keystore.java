@@ -2,11 +2,18 @@ package seguridad;
 
 import config.Configuracion;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
 import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLServerSocket;
-import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
 
 /**
  * Clase encargada de gestionar el almacenamiento y configuración del
@@ -15,35 +22,58 @@ import javax.net.ssl.SSLServerSocketFactory;
  * <p>
  * Esta clase se encarga de cargar un almacén de claves (Keystore) y configurar
  * el contexto SSL para crear un {@link SSLServerSocket} que utilizará el
- * servidor para establecer conexiones seguras con los clientes.
+ * servidor para establecer conexiones seguras con los clientes, o un
+ * {@link SSLEngine} por conexión para el motor de red no bloqueante.
  * </p>
  *
+ * <p>
+ * El {@link SSLContext} se crea una sola vez y se reutiliza: cargar el
+ * almacén e inicializar el gestor de claves cuesta milisegundos, y sobre todo
+ * la caché de sesiones TLS pertenece al contexto, así que solo un contexto
+ * compartido permite reanudar sesiones. La caché guarda hasta
+ * {@link Configuracion#getCacheSesionesTLS()} sesiones durante
+ * {@link Configuracion#getTtlSesionesTLS()} segundos y, si
+ * {@link Configuracion#isTicketsTLS()}, el servidor emite además tickets de
+ * sesión. Un cliente que vuelve se ahorra así el intercambio de claves y la
+ * firma con la clave privada del certificado.</p>
+ *
+ * <p>
+ * Los protocolos y las suites de cifrado se toman de
+ * {@link Configuracion#getProtocolosTLS()} y
+ * {@link Configuracion#getCifradosTLS()}, descartando los que la JVM no
+ * admita, y el servidor impone su orden de preferencia de suites.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
  * @author Antonio Álvarez Cárdenas
  */
 public class Keystore {
 
+    private static SSLContext contexto;
+
     /**
-     * Obtiene y configura un {@link SSLServerSocket} utilizando un almacén de
-     * claves (Keystore) previamente cargado y configurado.
+     * Devuelve el contexto SSL del servidor, creándolo la primera vez.
      *
      * <p>
-     * Este método carga el archivo del almacén de claves en formato JKS,
-     * utiliza la contraseña proporcionada para acceder al mismo y configurar el
-     * {@link SSLContext} para permitir conexiones seguras mediante SSL. El
-     * socket resultante estará configurado para escuchar en el puerto definido
-     * por {@link config.Configuracion#getPuerto()}.
-     * </p>
+     * Este método carga el archivo del almacén de claves, utiliza la
+     * contraseña proporcionada para acceder al mismo y configura el
+     * {@link SSLContext} y su caché de sesiones.</p>
      *
-     * @return Un {@link SSLServerSocket} configurado para aceptar conexiones
-     * seguras.
-     * @throws Exception Si ocurre algún error durante la carga del almacén de
-     * claves o la inicialización del contexto SSL.
+     * @return el contexto SSL compartido
+     * @throws GeneralSecurityException si el almacén o el contexto no se
+     * pueden inicializar
+     * @throws IOException si no se puede leer el archivo del almacén
      */
-    public static SSLServerSocket getServerSocketSSL() throws Exception {
-        // Crear un KeyStore de tipo JKS
-        KeyStore keyStore = KeyStore.getInstance(Configuracion.getTipoAlmacen());
+    public static synchronized SSLContext getContextoSSL() throws GeneralSecurityException, IOException {
+        if (contexto != null) {
+            return contexto;
+        }
+        // Debe fijarse antes de crear el contexto, que la lee al inicializarse
+        System.setProperty("jdk.tls.server.enableSessionTicketExtension", String.valueOf(Configuracion.isTicketsTLS()));
 
         // Cargar el archivo del almacén de claves (Keystore)
+        KeyStore keyStore = KeyStore.getInstance(Configuracion.getTipoAlmacen());
         try (FileInputStream keyFile = new FileInputStream(Configuracion.getRutaAlmacenSSL())) {
             keyStore.load(keyFile, Configuracion.getPasswordAlmacenSSL().toCharArray());
         }
@@ -52,15 +82,83 @@ public class Keystore {
         KeyManagerFactory keyManagerFact = KeyManagerFactory.getInstance(Configuracion.getAlgoritmoAlmacenSSL());
         keyManagerFact.init(keyStore, Configuracion.getPasswordAlmacenSSL().toCharArray());
 
-        // Inicializar el contexto SSL
+        // Inicializar el contexto SSL y su caché de sesiones
         SSLContext sslContext = SSLContext.getInstance(Configuracion.getProtocoloAlmacenSSL());
         sslContext.init(keyManagerFact.getKeyManagers(), null, null);
+        SSLSessionContext sesiones = sslContext.getServerSessionContext();
+        sesiones.setSessionCacheSize(Configuracion.getCacheSesionesTLS());
+        sesiones.setSessionTimeout(Configuracion.getTtlSesionesTLS());
 
-        // Crear un SSLServerSocketFactory con el contexto SSL configurado
-        SSLServerSocketFactory factory = sslContext.getServerSocketFactory();
+        contexto = sslContext;
+        return contexto;
+    }
 
-        // Crear un SSLServerSocket en el puerto configurado
-        SSLServerSocket sslServerSocket = (SSLServerSocket) factory.createServerSocket(Configuracion.getPuerto());
+    /**
+     * Obtiene y configura un {@link SSLServerSocket} con el contexto SSL
+     * compartido, escuchando en el puerto definido por
+     * {@link config.Configuracion#getPuerto()}.
+     *
+     * @return Un {@link SSLServerSocket} configurado para aceptar conexiones
+     * seguras.
+     * @throws Exception Si ocurre algún error durante la carga del almacén de
+     * claves o la inicialización del contexto SSL.
+     */
+    public static SSLServerSocket getServerSocketSSL() throws Exception {
+        SSLContext sslContext = getContextoSSL();
+        SSLServerSocket sslServerSocket = (SSLServerSocket) sslContext.getServerSocketFactory()
+                .createServerSocket(Configuracion.getPuerto(), 1024);
+        sslServerSocket.setSSLParameters(parametros(sslContext));
         return sslServerSocket;
     }
+
+    /**
+     * Crea el {@link SSLEngine} en modo servidor de una conexión nueva del
+     * motor no bloqueante.
+     *
+     * @return el motor TLS de la conexión
+     * @throws GeneralSecurityException si el contexto no se puede inicializar
+     * @throws IOException si no se puede leer el archivo del almacén
+     */
+    public static SSLEngine crearMotorSSL() throws GeneralSecurityException, IOException {
+        SSLContext sslContext = getContextoSSL();
+        SSLEngine motor = sslContext.createSSLEngine();
+        motor.setUseClientMode(false);
+        motor.setSSLParameters(parametros(sslContext));
+        return motor;
+    }
+
+    /**
+     * Parámetros comunes de las conexiones: protocolos y suites configurados
+     * que la JVM admite, con el orden de suites del servidor.
+     */
+    private static SSLParameters parametros(SSLContext sslContext) {
+        SSLParameters admitidos = sslContext.getSupportedSSLParameters();
+        SSLParameters parametros = sslContext.getDefaultSSLParameters();
+        parametros.setProtocols(filtrar(Configuracion.getProtocolosTLS(), admitidos.getProtocols()));
+        if (!Configuracion.getCifradosTLS().isBlank()) {
+            parametros.setCipherSuites(filtrar(Configuracion.getCifradosTLS(), admitidos.getCipherSuites()));
+        }
+        parametros.setUseCipherSuitesOrder(true);
+        return parametros;
+    }
+
+    /**
+     * Devuelve los elementos de una lista separada por comas que aparecen
+     * entre los admitidos, en el orden de la lista.
+     *
+     * @throws IllegalArgumentException si no queda ninguno
+     */
+    private static String[] filtrar(String lista, String[] admitidos) {
+        List<String> conocidos = Arrays.asList(admitidos);
+        List<String> elegidos = new ArrayList<>();
+        for (String elemento : lista.split(",")) {
+            if (conocidos.contains(elemento.trim())) {
+                elegidos.add(elemento.trim());
+            }
+        }
+        if (elegidos.isEmpty()) {
+            throw new IllegalArgumentException("Ninguno de los valores admitidos por la JVM: " + lista);
+        }
+        return elegidos.toArray(new String[0]);
+    }
 }
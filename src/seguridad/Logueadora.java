@@ -1,29 +1,43 @@
 package seguridad;
 
 import config.Configuracion;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.logging.FileHandler;
-import java.util.logging.Formatter;
-import java.util.logging.Level;
-import java.util.logging.LogRecord;
-import java.util.logging.Logger;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Clase utilitaria encargada de configurar y gestionar el sistema de logging de
  * la aplicación.
  *
  * <p>
- * Este configurador se encarga de establecer el manejo de logs para la
- * aplicación, incluyendo la configuración de la ruta del archivo de logs, el
- * formato de los mensajes, y el filtro de los mensajes de log a un nivel de
- * severidad {@code WARNING} o superior. Además, desactiva la salida de los logs
- * por consola.
+ * Los hilos que atienden peticiones no escriben en el archivo: solo dejan el
+ * evento en un búfer circular acotado ({@link ArrayBlockingQueue}). Un hilo
+ * escritor en segundo plano lo vacía por lotes, da formato a los mensajes y
+ * los escribe de una vez en el archivo de log, con un único volcado por lote.
  * </p>
  *
  * <p>
- * El logger se obtiene a través del método
- * {@link config.Configuracion#getLog()} y la ruta del archivo de log se puede
- * configurar a través del método {@link config.Configuracion#getRutaLog()}.
+ * Si el búfer se llena, según {@link Configuracion#getPoliticaLog()} el evento
+ * se descarta y se cuenta ({@code descartar}) o el hilo espera a que haya
+ * sitio ({@code bloquear}). Al apagar la JVM se escriben los eventos
+ * pendientes. Solo se registran los mensajes de nivel {@code WARNING} o más
+ * graves, como hasta ahora.
+ * </p>
+ *
+ * <p>
+ * La ruta del archivo de log se puede configurar a través del método
+ * {@link config.Configuracion#getRutaLog()}.
  * </p>
  *
  * @author Antonio Álvarez Cárdenas
@@ -31,44 +45,79 @@ import java.util.logging.Logger;
 public class Logueadora {
 
     /**
-     * Configura el logger global de la aplicación para:
+     * Número máximo de eventos que el escritor saca del búfer en cada lote.
+     */
+    private static final int TAMANO_LOTE = 1024;
+
+    private static final ArrayBlockingQueue<Evento> cola = new ArrayBlockingQueue<>(Math.max(1, Configuracion.getCapacidadLog()));
+    private static final LongAdder descartados = new LongAdder();
+    private static final LongAdder escritos = new LongAdder();
+
+    private static volatile Thread escritor;
+    private static volatile boolean apagando = false;
+
+    /**
+     * Formato de la fecha y hora de cada mensaje, que se aplica en el hilo
+     * escritor.
+     */
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog());
+
+    /**
+     * Evento pendiente de escribir: su origen, el instante en que se produjo
+     * y el valor recibido. El mensaje se formatea en el hilo escritor.
+     */
+    private static final class Evento {
+
+        final Origen origen;
+        final long milis;
+        final String valorRecibido;
+
+        Evento(Origen origen, long milis, String valorRecibido) {
+            this.origen = origen;
+            this.milis = milis;
+            this.valorRecibido = valorRecibido;
+        }
+    }
+
+    /**
+     * Arranca el hilo escritor del log:
      * <ul>
-     * <li>Guardar los mensajes de log en el archivo especificado en
-     * {@code Configuracion.getRutaLog()}.</li>
-     * <li>Aplicar un formato simple para los mensajes del log.</li>
-     * <li>Desactivar la salida de log por consola.</li>
-     * <li>Registrar únicamente mensajes de nivel {@code WARNING} o más
-     * graves.</li>
+     * <li>Guarda los mensajes en el archivo especificado en
+     * {@code Configuracion.getRutaLog()}, añadiéndolos al final.</li>
+     * <li>Aplica un formato simple para los mensajes del log.</li>
+     * <li>Registra una tarea de apagado que escribe los eventos
+     * pendientes.</li>
      * </ul>
      *
      * @throws IOException Si ocurre un error al crear o acceder al archivo de
      * log.
      */
-    public static void configurarLogger() throws IOException {
-        // Obtener el logger a partir del nombre almacenado en Configuracion
-        Logger logger = Configuracion.getLog();
-
-        // Crear un handler para guardar los logs en un archivo
-        FileHandler fh = new FileHandler(Configuracion.getRutaLog(), true);
-
-        // Establecer un formato simple para los mensajes del log
-        fh.setFormatter(new Formatter() {
-            @Override
-            public String format(LogRecord record) {
-                return String.format("%s%n", record.getMessage());
-            }
-        });
+    public static synchronized void configurarLogger() throws IOException {
+        if (escritor != null) {
+            return;
+        }
+        Writer salida = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(Configuracion.getRutaLog(), true), StandardCharsets.UTF_8), 64 * 1024);
+
+        Thread hilo = new Thread(() -> escribir(salida), "log-escritor");
+        hilo.setDaemon(true);
+        hilo.start();
+        escritor = hilo;
 
-        // Configurar el logger: agregar handler, desactivar salida por consola, y establecer nivel
-        logger.addHandler(fh);
-        logger.setUseParentHandlers(false);
-        logger.setLevel(Level.WARNING);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apagando = true;
+            hilo.interrupt();
+            try {
+                hilo.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "log-apagado"));
     }
 
     /**
-     * Registra un error en el archivo de log con un nivel de severidad
-     * determinado. El tipo de error se determina por el parámetro
-     * {@code nivel}.
+     * Registra un evento en el archivo de log. El nivel, el juego y el sitio
+     * salen del {@link Origen}, que cada llamador declara como constante.
      *
      * <p>
      * Dependiendo del nivel, el mensaje de log variará. Los niveles disponibles
@@ -80,36 +129,94 @@ public class Logueadora {
      * <li>5: Error crítico en el juego (grave).</li>
      * </ul>
      *
+     * <p>
+     * Los niveles 0 y 1 quedan por debajo de {@code WARNING} y no se
+     * registran. El método no recorre la pila ni da formato al mensaje, y no
+     * espera a que se escriba.</p>
      *
-     * @param nivel El nivel de gravedad del mensaje de log. Los valores válidos
-     * son 0, 1, 4, y 5.
-     * @param ahora La fecha y hora actual en la que se genera el log.
-     * @param juego El nombre del juego en caso de que haya un error relacionado
-     * con el juego.
-     * @param linea El número de línea donde ocurrió el error, si aplica.
+     * @param origen Sitio del código que registra el evento.
      * @param valorRecibido El valor recibido o el dato relacionado con el
      * evento o error.
      */
-    public static void grabarError(int nivel, String ahora, String juego, int linea, String valorRecibido) {
-        String mensaje;
-
-        switch (nivel) {
-            case (0):
-                mensaje = String.format("%s - El usuario %s ha logueado.\n", ahora, valorRecibido);
-                Configuracion.getLog().log(Level.CONFIG, mensaje);
-                break;
-            case (1):
-                mensaje = String.format("%s - El usuario %s se ha registrado en el Servidor.\n", ahora, valorRecibido);
-                Configuracion.getLog().log(Level.INFO, mensaje);
-                break;
+    public static void registrar(Origen origen, String valorRecibido) {
+        if (origen.getNivel() < 4 || escritor == null) {
+            return;
+        }
+        Evento evento = new Evento(origen, System.currentTimeMillis(), valorRecibido);
+        if (Configuracion.getPoliticaLog().equalsIgnoreCase("bloquear")) {
+            try {
+                cola.put(evento);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                descartados.increment();
+            }
+        } else if (!cola.offer(evento)) {
+            descartados.increment();
+        }
+    }
+
+    /**
+     * @return número de eventos descartados porque el búfer estaba lleno
+     */
+    public static long getDescartados() {
+        return descartados.sum();
+    }
+
+    /**
+     * @return número de eventos escritos en el archivo
+     */
+    public static long getEscritos() {
+        return escritos.sum();
+    }
+
+    /**
+     * Bucle del hilo escritor: espera a que haya eventos, saca un lote del
+     * búfer, lo escribe y vuelca el archivo una vez por lote. Al apagar
+     * escribe lo que quede y cierra el archivo.
+     */
+    private static void escribir(Writer salida) {
+        List<Evento> lote = new ArrayList<>(TAMANO_LOTE);
+        try (salida) {
+            while (!apagando) {
+                try {
+                    Evento primero = cola.poll(1, TimeUnit.SECONDS);
+                    if (primero == null) {
+                        continue;
+                    }
+                    lote.add(primero);
+                } catch (InterruptedException e) {
+                    // Se está apagando el servidor: se sale y se escribe lo pendiente
+                    break;
+                }
+                cola.drainTo(lote, TAMANO_LOTE - 1);
+                escribirLote(salida, lote);
+            }
+            while (cola.drainTo(lote, TAMANO_LOTE) > 0) {
+                escribirLote(salida, lote);
+            }
+        } catch (IOException e) {
+            System.out.println("Error escribiendo el log: " + e.getMessage());
+        }
+    }
+
+    private static void escribirLote(Writer salida, List<Evento> lote) throws IOException {
+        for (Evento evento : lote) {
+            salida.write(formatear(evento));
+            salida.write(System.lineSeparator());
+        }
+        salida.flush();
+        escritos.add(lote.size());
+        lote.clear();
+    }
+
+    private static String formatear(Evento evento) {
+        Origen origen = evento.origen;
+        String ahora = FORMATO_FECHA.format(Instant.ofEpochMilli(evento.milis).atZone(ZoneId.systemDefault()));
+        switch (origen.getNivel()) {
             case (4):
-                mensaje = String.format("%s - Error en el juego %s en la línea %d: El valor introducido de \"%s\" no es correcto.\n", ahora, juego, linea, valorRecibido);
-                Configuracion.getLog().log(Level.WARNING, mensaje);
-                break;
-            case (5):
-                mensaje = String.format("%s - ¡Error crítico en el %s!. Ha fallado el %s en la linea %d\n", ahora, juego, valorRecibido, linea);
-                Configuracion.getLog().log(Level.SEVERE, mensaje);
-                break;
+                return String.format("%s - Error en el juego %s en %s: El valor introducido de \"%s\" no es correcto.\n", ahora, origen.getJuego(), origen.getSitio(), evento.valorRecibido);
+            default:
+                return String.format("%s - ¡Error crítico en el %s!. Ha fallado %s: %s\n", ahora, origen.getJuego(), origen.getSitio(), evento.valorRecibido);
         }
     }
 }
@@ -0,0 +1,47 @@
+package seguridad;
+
+/**
+ * Identificador de un punto del código que registra eventos en el log.
+ *
+ * <p>
+ * Cada sitio que registra errores declara su origen como una constante
+ * estática, con el nivel, el juego o subsistema y un nombre fijo del sitio.
+ * Así registrar un error no necesita recorrer la pila para averiguar el método
+ * y la línea, que era lo más caro de cada registro.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public final class Origen {
+
+    private final int nivel;
+    private final String juego;
+    private final String sitio;
+
+    /**
+     * Crea un origen de eventos.
+     *
+     * @param nivel nivel de gravedad de los eventos, con los valores de
+     * {@link Logueadora#registrar(Origen, String)}
+     * @param juego juego o subsistema, por ejemplo {@code "adivina"} o
+     * {@code "Servidor"}
+     * @param sitio nombre del sitio, por ejemplo
+     * {@code "ManejadorAdivina.numero"}
+     */
+    public Origen(int nivel, String juego, String sitio) {
+        this.nivel = nivel;
+        this.juego = juego;
+        this.sitio = sitio;
+    }
+
+    public int getNivel() {
+        return nivel;
+    }
+
+    public String getJuego() {
+        return juego;
+    }
+
+    public String getSitio() {
+        return sitio;
+    }
+}
@@ -1,165 +1,420 @@
 package seguridad;
 
 import config.Configuracion;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import utilidades.Histograma;
 
 /**
- * Clase que maneja la persistencia de los usuarios y sus contraseñas, 
- * incluyendo la verificación, almacenamiento y login de usuarios, 
+ * Clase que maneja la persistencia de los usuarios y sus contraseñas,
+ * incluyendo la verificación, almacenamiento y login de usuarios,
  * además de la gestión de archivos cifrados.
  * <p>
- * La clase se asegura de que el archivo de usuarios esté correctamente cifrado
- * y descifrado según sea necesario, y realiza las operaciones de búsqueda, 
- * escritura y autenticación de manera segura en entornos multihilo.
+ * Los usuarios se cargan una sola vez al arrancar en un índice en memoria
+ * (usuario → hash de la contraseña), de modo que buscar un usuario o comprobar
+ * su acceso no lee el archivo. Cada usuario nuevo se añade al final del
+ * archivo como un registro independiente y se fuerza a disco antes de darlo
+ * por guardado.
  * </p>
- * 
+ * <p>
+ * Cada registro es una línea con el par {@code usuario:hash} cifrado con AES y
+ * codificado en Base64, así que el archivo nunca contiene datos en claro. Si
+ * el servidor se cae a mitad de una escritura, la línea incompleta se descarta
+ * en la siguiente carga. Los archivos con el formato anterior, cifrados de una
+ * pieza, se convierten al cargarlos sin pasar por disco en claro.
+ * </p>
+ *
  * @author Antonio Álvarez Cárdenas
  */
 public class Persistencia {
 
     /**
-     * Flag que indica si hay un proceso de escritura en curso.
-     * Se utiliza para evitar que otros hilos escriban en el archivo de usuarios simultáneamente.
+     * Cerrojo de lectura y escritura del índice y del archivo de usuarios.
+     * Los inicios de sesión consultan el índice a la vez con el cerrojo de
+     * lectura; el registro de un usuario nuevo toma el de escritura solo
+     * mientras añade el registro al archivo y al índice. Si un inicio de
+     * sesión llega durante una escritura, espera a que termine y se despierta
+     * en cuanto se libera el cerrojo.
      */
-    private static boolean escribiendo = false;
+    private static final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     /**
-     * Objeto de bloqueo utilizado para sincronizar el acceso a los métodos que operan sobre el archivo de usuarios.
+     * Índice en memoria de los usuarios registrados: usuario → hash BCrypt.
+     * Protegido por {@link #lock}.
      */
-    private static final Object lock = new Object();
+    private static final Map<String, String> usuarios = new HashMap<>();
+
+    private static volatile boolean cargado = false;
 
     /**
-     * Busca un usuario en el archivo de usuarios.
-     * <p>
-     * Si el archivo está cifrado, lo descifra antes de realizar la búsqueda.
-     * </p>
-     * 
-     * @param usuario El nombre de usuario a buscar.
-     * @return true si el usuario se encuentra en el archivo, false en caso contrario.
-     * @throws Exception Si ocurre un error de entrada/salida o un error al descifrar el archivo.
+     * Duración de cada búsqueda en el índice, incluida la espera del cerrojo
+     * de lectura.
      */
-    private static boolean buscarUsuario(String usuario) throws Exception {
+    private static final Histograma tiempoBusqueda = new Histograma();
 
-        boolean encontrado = false;
-        String salida = "";
-        String[] datos;
+    private static final Origen ERROR_GUARDAR_USUARIO = new Origen(5, "Servidor", "Persistencia.guardarUsuario");
+    private static final Origen ERROR_RECALCULAR_HASH = new Origen(5, "Servidor", "Persistencia.recalcularHash");
 
-        if (Cifradora.isCifrado()) {
-            Cifradora.descifrarArchivo();
+    /**
+     * Carga el archivo de usuarios en el índice en memoria. Si el archivo no
+     * existe se crea vacío. Solo lee el archivo la primera vez que se llama.
+     *
+     * @throws IOException Si ocurre un error al leer o convertir el archivo.
+     */
+    public static void cargar() throws IOException {
+        if (cargado) {
+            return;
         }
+        lock.writeLock().lock();
+        try {
+            if (cargado) {
+                return;
+            }
+            Path ruta = Paths.get(Configuracion.getRutaArchivoUsuarios());
+            if (!Files.exists(ruta)) {
+                System.out.println("Creando el archivo de datos..." + ruta);
+                Files.createFile(ruta);
+            }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(Configuracion.getRutaArchivoUsuarios()))) {
-
-            while ((salida = reader.readLine()) != null && !encontrado) {
-                datos = salida.split(":");
-                if (datos[0].equals(usuario)) {
-                    encontrado = true;
+            boolean convertir;
+            try (InputStream entrada = new BufferedInputStream(Files.newInputStream(ruta), 64 * 1024)) {
+                Formato formato = detectarFormato(entrada);
+                convertir = formato != Formato.REGISTROS;
+                if (formato == Formato.REGISTROS) {
+                    // Si más de la mitad de los registros están sustituidos por otros posteriores se compacta el archivo
+                    convertir = cargarRegistros(ruta, entrada) > 2 * usuarios.size();
+                } else if (formato == Formato.ANTIGUO_EN_CLARO) {
+                    cargarLineas(entrada);
+                } else {
+                    cargarLineas(Cifradora.descifrarFlujo(entrada));
                 }
+            } catch (GeneralSecurityException e) {
+                throw new IOException("No se pudo descifrar el archivo de usuarios", e);
             }
-        } catch (IOException e) {
-            String nombreMetodo = Thread.currentThread().getStackTrace()[1].getMethodName();
-            int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-            Logueadora.grabarError(5, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), "Servidor", lineaError, nombreMetodo);
-        } finally {
-            if (!Cifradora.isCifrado()) {
-                Cifradora.cifrarArchivo();
+            if (convertir) {
+                System.out.println("Reescribiendo el archivo de datos con un registro por usuario..." + ruta);
+                reescribir(ruta);
             }
+            cargado = true;
+            System.out.println("Usuarios cargados: " + usuarios.size());
+        } finally {
+            lock.writeLock().unlock();
         }
-        return encontrado;
+    }
+
+    /**
+     * Busca un usuario en el índice de usuarios.
+     *
+     * @param usuario El nombre de usuario a buscar.
+     * @return el hash de la contraseña del usuario, o {@code null} si no está
+     * registrado.
+     * @throws IOException Si ocurre un error al cargar el archivo de usuarios.
+     */
+    private static String buscarUsuario(String usuario) throws IOException {
+        cargar();
+        long inicio = System.nanoTime();
+        lock.readLock().lock();
+        try {
+            return usuarios.get(usuario);
+        } finally {
+            lock.readLock().unlock();
+            tiempoBusqueda.registrar(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * @return histograma de la duración de las búsquedas de usuarios en el
+     * índice
+     */
+    public static Histograma getTiempoBusqueda() {
+        return tiempoBusqueda;
     }
 
     /**
      * Guarda un nuevo usuario y su contraseña en el archivo de usuarios.
      * <p>
-     * Si el archivo está cifrado, se descifra antes de escribir y se vuelve a cifrar una vez completada la escritura.
+     * El hash BCrypt se calcula antes de tomar el cerrojo de escritura, así
+     * que los inicios de sesión solo esperan lo que tarda en añadirse el
+     * registro. El registro se añade al final del archivo y se fuerza a disco
+     * antes de incluirlo en el índice, así un usuario que ya puede iniciar
+     * sesión no se pierde aunque el servidor se caiga.
      * </p>
-     * 
+     *
      * @param usuario El nombre de usuario a guardar.
      * @param contrasena La contraseña asociada al usuario.
      * @return true si el usuario fue guardado exitosamente, false en caso contrario.
      * @throws Exception Si ocurre un error de entrada/salida o al manejar el cifrado del archivo.
      */
     public static boolean guardarUsuario(String usuario, String contrasena) throws Exception {
-        synchronized (lock) {
-
-            boolean guardado = false;
+        if (buscarUsuario(usuario) != null) {
+            return false;
+        }
+        String hash = Cifradora.cifrarPassword(contrasena);
+        if (hash == null) {
+            return false;
+        }
 
-            if (!buscarUsuario(usuario)) {
-                escribiendo = true;
-                if (Cifradora.isCifrado()) {
-                    Cifradora.descifrarArchivo();
-                }
-                try (PrintWriter writer = new PrintWriter(new FileWriter(Configuracion.getRutaArchivoUsuarios(), true))) {
-
-                    writer.println(String.format("%s:%s", usuario, Cifradora.cifrarPassword(contrasena)));
-                    guardado = true;
-
-                } catch (IOException e) {
-                    String nombreMetodo = Thread.currentThread().getStackTrace()[1].getMethodName();
-                    int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-                    Logueadora.grabarError(5, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), "Servidor", lineaError, nombreMetodo);
-                } finally {
-                    if (!Cifradora.isCifrado()) {
-                        Cifradora.cifrarArchivo();
-                    }
-                    escribiendo = false;
-                    lock.notifyAll();
-                }
+        boolean guardado = false;
+        lock.writeLock().lock();
+        try {
+            // Otro hilo puede haber registrado el mismo usuario mientras se calculaba el hash
+            if (!usuarios.containsKey(usuario)) {
+                anadirRegistro(Paths.get(Configuracion.getRutaArchivoUsuarios()), usuario, hash);
+                usuarios.put(usuario, hash);
+                CacheCredenciales.invalidar(usuario);
+                guardado = true;
             }
-            return guardado;
+
+        } catch (IOException | GeneralSecurityException e) {
+            Logueadora.registrar(ERROR_GUARDAR_USUARIO, e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
         }
+        return guardado;
     }
 
     /**
      * Verifica el login de un usuario comprobando si su nombre de usuario y contraseña coinciden
-     * con los almacenados en el archivo de usuarios.
+     * con los almacenados en el índice de usuarios.
      * <p>
-     * Si el archivo está cifrado, se descifra antes de realizar la comprobación.
+     * El cerrojo de lectura solo se mantiene mientras se consulta el índice;
+     * la comprobación BCrypt se hace fuera de él. Si el usuario acaba de
+     * iniciar sesión con la misma contraseña, la {@link CacheCredenciales}
+     * evita repetirla.
      * </p>
-     * 
+     *
      * @param usuario El nombre de usuario a verificar.
      * @param contrasena La contraseña asociada al usuario.
      * @return true si las credenciales coinciden, false en caso contrario.
-     * @throws Exception Si ocurre un error de entrada/salida o al manejar el cifrado del archivo.
+     * @throws Exception Si ocurre un error al cargar el archivo de usuarios.
      */
     public static boolean loginUsuario(String usuario, String contrasena) throws Exception {
-
-            while (escribiendo) {
-                Thread.sleep(1000); // espera hasta que escribiendo sea false
+        String hash = buscarUsuario(usuario);
+        if (hash == null) {
+            return false;
+        }
+        if (CacheCredenciales.comprobar(usuario, contrasena, hash)) {
+            return true;
+        }
+        boolean correcta = Cifradora.comprobarPassword(contrasena, hash);
+        if (correcta) {
+            CacheCredenciales.guardar(usuario, contrasena, hash);
+            if (Cifradora.necesitaRehash(hash)) {
+                recalcularHash(usuario, contrasena, hash);
             }
-            boolean encontrado = false;
-            String salida = "";
-            String[] datos;
+        }
+        return correcta;
+    }
 
-            if (Cifradora.isCifrado()) {
-                Cifradora.descifrarArchivo();
+    /**
+     * Recalcula en segundo plano el hash de un usuario cuyo hash almacenado
+     * tiene un coste distinto del actual. El hash nuevo se añade como un
+     * registro más al final del archivo; al cargar, el último registro de cada
+     * usuario sustituye a los anteriores. Si el pool de BCrypt está saturado
+     * se deja para el siguiente inicio de sesión.
+     *
+     * @param usuario El nombre del usuario.
+     * @param contrasena La contraseña que se acaba de verificar.
+     * @param hashAnterior El hash almacenado que se va a sustituir.
+     */
+    private static void recalcularHash(String usuario, String contrasena, String hashAnterior) {
+        EjecutorBCrypt.programar(() -> {
+            String hash = Cifradora.cifrarPasswordEnHilo(contrasena);
+            if (hash == null) {
+                return;
             }
-            try (BufferedReader reader = new BufferedReader(new FileReader(Configuracion.getRutaArchivoUsuarios()))) {
-
-                while ((salida = reader.readLine()) != null && !encontrado) {
-                    datos = salida.split(":");
-                    if (datos[0].equals(usuario)) {
-                        if (Cifradora.comprobarPassword(contrasena, datos[1])) {
-                            encontrado = true;
-                        }
-                    }
+            lock.writeLock().lock();
+            try {
+                // Si otro inicio de sesión ya lo ha recalculado no se repite
+                if (hashAnterior.equals(usuarios.get(usuario))) {
+                    anadirRegistro(Paths.get(Configuracion.getRutaArchivoUsuarios()), usuario, hash);
+                    usuarios.put(usuario, hash);
+                    CacheCredenciales.guardar(usuario, contrasena, hash);
                 }
-            } catch (IOException e) {
-                String nombreMetodo = Thread.currentThread().getStackTrace()[1].getMethodName();
-                int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-                Logueadora.grabarError(5, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), "Servidor", lineaError, nombreMetodo);
+            } catch (IOException | GeneralSecurityException e) {
+                Logueadora.registrar(ERROR_RECALCULAR_HASH, e.getMessage());
             } finally {
-                if (!Cifradora.isCifrado()) {
-                    Cifradora.cifrarArchivo();
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Formatos posibles del archivo de usuarios.
+     */
+    private enum Formato {
+        /**
+         * Una línea en Base64 por usuario, cada una cifrada por separado.
+         */
+        REGISTROS,
+        /**
+         * Formato anterior: todo el texto {@code usuario:hash} cifrado de una
+         * pieza.
+         */
+        ANTIGUO_CIFRADO,
+        /**
+         * Formato anterior que quedó en claro por una caída a mitad de un
+         * ciclo de descifrado y cifrado.
+         */
+        ANTIGUO_EN_CLARO
+    }
+
+    /**
+     * Detecta el formato del archivo mirando sus primeros bytes, sin
+     * consumirlos. El formato por registros solo contiene caracteres de
+     * Base64 y saltos de línea; el antiguo en claro contiene además los
+     * {@code :} y {@code $} de los pares {@code usuario:hash}; el antiguo
+     * cifrado es binario.
+     */
+    private static Formato detectarFormato(InputStream entrada) throws IOException {
+        byte[] inicio = new byte[512];
+        entrada.mark(inicio.length);
+        int leidos = entrada.readNBytes(inicio, 0, inicio.length);
+        entrada.reset();
+
+        boolean base64 = true;
+        boolean texto = true;
+        for (int i = 0; i < leidos; i++) {
+            byte b = inicio[i];
+            boolean salto = b == '\n' || b == '\r';
+            base64 &= salto || (b >= 'A' && b <= 'Z') || (b >= 'a' && b <= 'z') || (b >= '0' && b <= '9')
+                    || b == '+' || b == '/' || b == '=';
+            texto &= salto || (b >= 0x20 && b < 0x7f) || b < 0;
+        }
+        if (base64) {
+            return Formato.REGISTROS;
+        }
+        return texto ? Formato.ANTIGUO_EN_CLARO : Formato.ANTIGUO_CIFRADO;
+    }
+
+    /**
+     * Carga los registros del archivo en el índice, leyéndolos uno a uno. Si
+     * la última línea no termina en salto de línea es una escritura que no
+     * llegó a completarse: se descarta y se recorta el archivo para que los
+     * registros siguientes empiecen en una línea nueva.
+     *
+     * @return número de registros leídos, incluidos los de usuarios
+     * repetidos
+     */
+    private static int cargarRegistros(Path ruta, InputStream entrada) throws IOException {
+        int registros = 0;
+        ByteArrayOutputStream linea = new ByteArrayOutputStream(128);
+        Base64.Decoder base64 = Base64.getDecoder();
+        long leidos = 0;
+        long completos = 0;
+        int b;
+        while ((b = entrada.read()) != -1) {
+            leidos++;
+            if (b != '\n') {
+                linea.write(b);
+                continue;
+            }
+            String registro = linea.toString(StandardCharsets.US_ASCII).trim();
+            linea.reset();
+            completos = leidos;
+            if (!registro.isEmpty()) {
+                try {
+                    anadirAlIndice(new String(Cifradora.descifrar(base64.decode(registro)), StandardCharsets.UTF_8));
+                    registros++;
+                } catch (IllegalArgumentException | GeneralSecurityException e) {
+                    System.out.println("Registro de usuario dañado, se ignora: " + e.getMessage());
                 }
             }
-            return encontrado;
-        
+        }
+        if (completos < leidos) {
+            System.out.println("Descartando un registro de usuario incompleto");
+            try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.WRITE)) {
+                canal.truncate(completos);
+                canal.force(true);
+            }
+        }
+        return registros;
+    }
+
+    /**
+     * Carga en el índice las líneas {@code usuario:hash} de un archivo con el
+     * formato anterior, leyéndolas como un flujo.
+     */
+    private static void cargarLineas(InputStream entrada) throws IOException {
+        BufferedReader lector = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+        String linea;
+        while ((linea = lector.readLine()) != null) {
+            if (!linea.isBlank()) {
+                anadirAlIndice(linea);
+            }
+        }
+    }
+
+    /**
+     * Añade al índice una línea {@code usuario:hash}. Las líneas que no
+     * contienen un hash BCrypt se descartan.
+     */
+    private static void anadirAlIndice(String linea) {
+        int separador = linea.indexOf(':');
+        if (separador > 0 && linea.startsWith("$2", separador + 1)) {
+            usuarios.put(linea.substring(0, separador), linea.substring(separador + 1));
+        } else {
+            System.out.println("Línea de usuario no válida, se ignora");
+        }
+    }
+
+    /**
+     * Reescribe el archivo completo en el formato por registros. Se escribe
+     * primero en un archivo temporal y se sustituye el original de forma
+     * atómica, así una caída nunca deja el archivo a medias.
+     */
+    private static void reescribir(Path ruta) throws IOException {
+        Path temporal = ruta.resolveSibling(ruta.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Map.Entry<String, String> usuario : usuarios.entrySet()) {
+                escribirCompleto(canal, codificarRegistro(usuario.getKey(), usuario.getValue()));
+            }
+            canal.force(true);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se pudo cifrar el archivo de usuarios", e);
+        }
+        Files.move(temporal, ruta, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Añade un registro al final del archivo y lo fuerza a disco.
+     */
+    private static void anadirRegistro(Path ruta, String usuario, String hash) throws IOException, GeneralSecurityException {
+        ByteBuffer registro = codificarRegistro(usuario, hash);
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            escribirCompleto(canal, registro);
+            canal.force(false);
+        }
+    }
+
+    /**
+     * Cifra el par {@code usuario:hash} y lo codifica como una línea en Base64.
+     */
+    private static ByteBuffer codificarRegistro(String usuario, String hash) throws GeneralSecurityException {
+        byte[] cifrado = Cifradora.cifrar((usuario + ":" + hash).getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap((Base64.getEncoder().encodeToString(cifrado) + "\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void escribirCompleto(FileChannel canal, ByteBuffer datos) throws IOException {
+        while (datos.hasRemaining()) {
+            canal.write(datos);
+        }
     }
 }
@@ -0,0 +1,594 @@
+package seguridad;
+
+import config.Configuracion;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import utilidades.AlmacenEstado;
+
+/**
+ * Clase que guarda las sesiones abiertas de los usuarios.
+ *
+ * <p>
+ * Las sesiones se indexan por su identificador, el valor de la cookie, en un
+ * {@link ConcurrentHashMap}, que ya reparte sus entradas en segmentos con
+ * bloqueo independiente: validar la cookie de una petición es una única
+ * búsqueda en la tabla y, como mucho, la escritura de la hora del último
+ * acceso. Cada usuario tiene como mucho una sesión; al abrir una nueva se
+ * cierra la anterior.</p>
+ *
+ * <p>
+ * Una sesión caduca tras {@link Configuracion#getTtlInactividadSesion()}
+ * segundos sin uso o {@link Configuracion#getTtlAbsolutoSesion()} segundos
+ * después de abrirse, lo que ocurra antes. Las sesiones caducadas se rechazan
+ * al consultarlas y un barrido periódico las elimina con una rueda de
+ * temporizadores: cada sesión está en la casilla del primer segundo posterior
+ * a su vencimiento, y cada segundo se revisa solo la casilla que toca. Los
+ * accesos no mueven la sesión de casilla; cuando el barrido encuentra una
+ * sesión que se ha usado después, la pasa a la casilla de su nuevo
+ * vencimiento.</p>
+ *
+ * <p>
+ * Si se supera {@link Configuracion#getMaxSesiones()} se expulsan las
+ * sesiones que vencen antes, que son las usadas hace más tiempo: la rueda da
+ * ese orden sin mantener una lista de accesos. Recorrer la rueda obliga a
+ * recolocar las sesiones de vueltas posteriores, así que no se hace en cada
+ * inicio de sesión: cada vez se expulsa de una vez una dieciseisava parte del
+ * máximo, y solo un hilo a la vez. Al cerrarse o caducar una sesión se avisa a
+ * los oyentes registrados, por ejemplo para borrar sus partidas. Se cuentan
+ * las sesiones creadas, caducadas y expulsadas.</p>
+ *
+ * <p>
+ * Si el {@link AlmacenEstado} configurado es compartido, cada sesión se copia
+ * también en él, con su vencimiento como caducidad, y la hora del último
+ * acceso se vuelve a copiar cada décima parte del tiempo de inactividad. Una
+ * cookie que este nodo no conoce se busca en el almacén, así que la sesión
+ * sobrevive a un reinicio y vale en los demás nodos que comparten el archivo.
+ * Las sesiones en memoria se comparan con el almacén como mucho una vez por
+ * segundo para enterarse de los cierres hechos en otro nodo. Con un almacén
+ * compartido, superar el máximo de sesiones solo las expulsa de la memoria
+ * de este nodo.</p>
+ *
+ * <p>
+ * Si {@link Configuracion#getModoSesiones()} es {@code firmada} no se guarda
+ * nada: la cookie es un {@link TokenSesion} con el usuario y la caducidad,
+ * firmado con una clave que comparten todos los nodos. Validarla es verificar
+ * la firma, sin búsqueda en ninguna tabla. El token caduca a los
+ * {@link Configuracion#getTtlAbsolutoSesion()} segundos; la inactividad no se
+ * puede medir sin estado, y cerrar la sesión solo borra la cookie del
+ * navegador y avisa a los oyentes de este nodo.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class Sesiones {
+
+    /**
+     * Duración de cada casilla de la rueda, en milisegundos.
+     */
+    private static final long MILIS_CASILLA = 1000;
+
+    /**
+     * Número de casillas de la rueda. Las sesiones que vencen más allá de una
+     * vuelta se revisan en cada vuelta hasta que llega su turno.
+     */
+    private static final int CASILLAS = 1024;
+
+    /**
+     * Frecuencia con la que se actualiza la hora del último acceso, para no
+     * escribir en la sesión en cada petición.
+     */
+    private static final long MILIS_ACCESO = 1000;
+
+    /**
+     * Al superar el máximo de sesiones se expulsa esta fracción del máximo.
+     */
+    private static final int FRACCION_EXPULSION = 16;
+
+    private static final long TTL_INACTIVIDAD = Configuracion.getTtlInactividadSesion() * 1000L;
+    private static final long TTL_ABSOLUTO = Configuracion.getTtlAbsolutoSesion() * 1000L;
+    private static final boolean FIRMADAS = Configuracion.getModoSesiones().equalsIgnoreCase("firmada");
+
+    /**
+     * Almacén compartido en el que se copian las sesiones, o {@code null} si
+     * el configurado es la memoria del proceso y no aportaría nada.
+     */
+    private static final AlmacenEstado ALMACEN = FIRMADAS || !AlmacenEstado.getInstancia().isCompartido()
+            ? null : AlmacenEstado.getInstancia();
+    private static final String PREFIJO = "sesion:";
+
+    /**
+     * Frecuencia con la que se copia la hora del último acceso en el almacén
+     * compartido. Una décima parte del tiempo de inactividad basta para que
+     * otro nodo no dé por caducada una sesión que se sigue usando.
+     */
+    private static final long MILIS_PERSISTIR = Math.max(MILIS_ACCESO, TTL_INACTIVIDAD / 10);
+
+    private static final ConcurrentHashMap<String, Sesion> porIdentificador = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Sesion> porUsuario = new ConcurrentHashMap<>();
+    private static final List<Consumer<String>> oyentes = new CopyOnWriteArrayList<>();
+
+    /**
+     * Rueda de temporizadores. Protegida por su propio monitor; solo se toca
+     * al abrir sesiones y en el barrido, nunca al validar una petición.
+     */
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<Sesion>[] rueda = (ArrayDeque<Sesion>[]) new ArrayDeque<?>[CASILLAS];
+    private static long siguienteCasilla = System.currentTimeMillis() / MILIS_CASILLA;
+
+    private static final LongAdder creadas = new LongAdder();
+    private static final LongAdder caducadas = new LongAdder();
+    private static final LongAdder expulsadas = new LongAdder();
+    private static final AtomicBoolean expulsando = new AtomicBoolean();
+
+    private static ScheduledExecutorService barrido;
+
+    static {
+        for (int i = 0; i < CASILLAS; i++) {
+            rueda[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Sesión abierta: su identificador, su usuario y los instantes de
+     * creación y último acceso.
+     */
+    private static final class Sesion {
+
+        final String id;
+        final String usuario;
+        final long creada;
+        volatile long ultimoAcceso;
+        volatile boolean cerrada;
+
+        // Última copia en el almacén compartido y última comprobación contra él
+        volatile long persistido;
+        volatile long comprobada;
+
+        Sesion(String id, String usuario, long creada, long ultimoAcceso) {
+            this.id = id;
+            this.usuario = usuario;
+            this.creada = creada;
+            this.ultimoAcceso = ultimoAcceso;
+        }
+
+        /**
+         * @return instante en que vence la sesión si no se vuelve a usar
+         */
+        long vencimiento() {
+            return Math.min(ultimoAcceso + TTL_INACTIVIDAD, creada + TTL_ABSOLUTO);
+        }
+    }
+
+    /**
+     * Prepara las sesiones al arrancar el servidor: carga la clave de firma si
+     * las sesiones son firmadas o, si no, arranca el barrido periódico de las
+     * sesiones caducadas en un hilo en segundo plano.
+     *
+     * @throws IllegalArgumentException si la clave de firma configurada no es
+     * válida
+     */
+    public static synchronized void arrancar() {
+        if (FIRMADAS) {
+            TokenSesion.cargarClave();
+            return;
+        }
+        if (barrido != null) {
+            return;
+        }
+        barrido = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "sesiones-barrido");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        barrido.scheduleWithFixedDelay(Sesiones::barrer, MILIS_CASILLA, MILIS_CASILLA, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registra un oyente que recibirá el identificador de cada sesión que se
+     * cierre, caduque o sea expulsada.
+     *
+     * @param oyente oyente a registrar
+     */
+    public static void agregarOyente(Consumer<String> oyente) {
+        oyentes.add(oyente);
+    }
+
+    /**
+     * Comprueba si el identificador de sesión recibido pertenece a alguna
+     * sesión abierta y no caducada, y anota el acceso.
+     *
+     * @param sessionID identificador de sesión enviado en la cookie
+     * @return {@code true} si la sesión es válida
+     */
+    public static boolean sesionValida(String sessionID) {
+        if (FIRMADAS) {
+            return TokenSesion.verificar(sessionID, System.currentTimeMillis()) != null;
+        }
+        return buscar(sessionID) != null;
+    }
+
+    /**
+     * Devuelve el usuario dueño de una sesión.
+     *
+     * @param sessionID identificador de sesión enviado en la cookie
+     * @return el nombre del usuario, o {@code null} si la sesión no existe o
+     * ha caducado
+     */
+    public static String getUsuario(String sessionID) {
+        if (FIRMADAS) {
+            return TokenSesion.verificar(sessionID, System.currentTimeMillis());
+        }
+        Sesion sesion = buscar(sessionID);
+        return sesion == null ? null : sesion.usuario;
+    }
+
+    /**
+     * Abre la sesión de un usuario que acaba de autenticarse.
+     *
+     * <p>
+     * Si la cookie corresponde a una sesión válida del mismo usuario se
+     * conserva. En caso contrario se genera un identificador nuevo y se cierra
+     * la sesión anterior del usuario, si la había.</p>
+     *
+     * @param usuario nombre del usuario autenticado
+     * @param sessionID identificador de sesión recibido en la cookie
+     * @return el identificador de sesión que debe enviarse al cliente
+     */
+    public static String iniciarSesion(String usuario, String sessionID) {
+        if (FIRMADAS) {
+            long ahora = System.currentTimeMillis();
+            if (usuario.equals(TokenSesion.verificar(sessionID, ahora))) {
+                return sessionID;
+            }
+            creadas.increment();
+            return TokenSesion.emitir(usuario, ahora, ahora + TTL_ABSOLUTO);
+        }
+        Sesion actual = buscar(sessionID);
+        if (actual != null && actual.usuario.equals(usuario)) {
+            return actual.id;
+        }
+
+        long ahora = System.currentTimeMillis();
+        Sesion nueva = new Sesion(UUID.randomUUID().toString(), usuario, ahora, ahora);
+        porIdentificador.put(nueva.id, nueva);
+        Sesion anterior = porUsuario.put(usuario, nueva);
+        if (anterior != null) {
+            eliminar(anterior);
+        }
+        creadas.increment();
+        if (ALMACEN != null) {
+            guardar(nueva);
+        }
+        registrar(nueva);
+        return nueva.id;
+    }
+
+    /**
+     * Cierra una sesión abierta.
+     *
+     * @param sessionID identificador de la sesión
+     */
+    public static void cerrarSesion(String sessionID) {
+        if (FIRMADAS) {
+            if (TokenSesion.verificar(sessionID, System.currentTimeMillis()) != null) {
+                avisar(sessionID);
+            }
+            return;
+        }
+        Sesion sesion = sessionID == null ? null : porIdentificador.get(sessionID);
+        if (sesion != null) {
+            eliminar(sesion);
+        }
+    }
+
+    /**
+     * @return número de sesiones abiertas, siempre 0 con sesiones firmadas
+     */
+    public static int getNumeroSesiones() {
+        return porIdentificador.size();
+    }
+
+    /**
+     * @return número de sesiones abiertas desde el arranque
+     */
+    public static long getCreadas() {
+        return creadas.sum();
+    }
+
+    /**
+     * @return número de sesiones eliminadas por inactividad o por superar su
+     * duración máxima
+     */
+    public static long getCaducadas() {
+        return caducadas.sum();
+    }
+
+    /**
+     * @return número de sesiones expulsadas por superar el máximo de sesiones
+     */
+    public static long getExpulsadas() {
+        return expulsadas.sum();
+    }
+
+    /**
+     * Busca una sesión válida y anota el acceso. Una sesión caducada se
+     * elimina en el momento, sin esperar al barrido.
+     */
+    private static Sesion buscar(String sessionID) {
+        if (sessionID == null || sessionID.isEmpty()) {
+            return null;
+        }
+        Sesion sesion = porIdentificador.get(sessionID);
+        if (sesion == null) {
+            sesion = adoptar(sessionID);
+            if (sesion == null) {
+                return null;
+            }
+        }
+        long ahora = System.currentTimeMillis();
+        if (ALMACEN != null && ahora - sesion.comprobada >= MILIS_ACCESO && !refrescar(sesion, ahora)) {
+            return null;
+        }
+        if (sesion.vencimiento() <= ahora) {
+            if (eliminar(sesion)) {
+                caducadas.increment();
+            }
+            return null;
+        }
+        if (ahora - sesion.ultimoAcceso >= MILIS_ACCESO) {
+            sesion.ultimoAcceso = ahora;
+            if (ALMACEN != null && ahora - sesion.persistido >= MILIS_PERSISTIR) {
+                guardar(sesion);
+            }
+        }
+        return sesion;
+    }
+
+    /**
+     * Coloca una sesión recién añadida a los índices en la rueda y, si se ha
+     * superado el máximo, expulsa las que vencen antes hasta dejar libre una
+     * dieciseisava parte. Solo la elección se hace con la rueda bloqueada; las
+     * expulsadas se eliminan y se avisa a los oyentes fuera de ella. Con un
+     * almacén compartido las expulsadas solo salen de la memoria de este nodo.
+     */
+    private static void registrar(Sesion sesion) {
+        synchronized (rueda) {
+            encolar(sesion, casillaDe(sesion.vencimiento()));
+        }
+        int maximo = Configuracion.getMaxSesiones();
+        if (porIdentificador.size() <= maximo || !expulsando.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int objetivo = maximo - Math.max(1, maximo / FRACCION_EXPULSION);
+            List<Sesion> sobrantes;
+            synchronized (rueda) {
+                sobrantes = expulsarMasAntiguas(porIdentificador.size() - objetivo);
+            }
+            for (Sesion sobrante : sobrantes) {
+                if (ALMACEN != null ? descartar(sobrante) : eliminar(sobrante)) {
+                    expulsadas.increment();
+                }
+            }
+        } finally {
+            expulsando.set(false);
+        }
+    }
+
+    /**
+     * Busca en el almacén compartido una sesión que este nodo no conoce,
+     * porque la abrió otro nodo o se abrió antes de reiniciar, y la añade a
+     * los índices.
+     *
+     * @return la sesión, o {@code null} si no existe o ha caducado
+     */
+    private static Sesion adoptar(String sessionID) {
+        if (ALMACEN == null) {
+            return null;
+        }
+        byte[] datos = ALMACEN.leer(PREFIJO + sessionID);
+        if (datos == null) {
+            return null;
+        }
+        ByteBuffer lector = ByteBuffer.wrap(datos);
+        long creada = lector.getLong();
+        long ultimoAcceso = lector.getLong();
+        String usuario = new String(datos, 16, datos.length - 16, StandardCharsets.UTF_8);
+        Sesion sesion = new Sesion(sessionID, usuario, creada, ultimoAcceso);
+        long ahora = System.currentTimeMillis();
+        if (sesion.vencimiento() <= ahora) {
+            return null;
+        }
+        sesion.persistido = ultimoAcceso;
+        sesion.comprobada = ahora;
+        Sesion previa = porIdentificador.putIfAbsent(sessionID, sesion);
+        if (previa != null) {
+            return previa;
+        }
+        porUsuario.putIfAbsent(usuario, sesion);
+        registrar(sesion);
+        return sesion;
+    }
+
+    /**
+     * Compara una sesión con su copia del almacén compartido: si otro nodo la
+     * ha cerrado se descarta, y si otro nodo la ha usado después se adelanta
+     * su último acceso.
+     *
+     * @return {@code false} si la sesión ya no existe en el almacén
+     */
+    private static boolean refrescar(Sesion sesion, long ahora) {
+        sesion.comprobada = ahora;
+        byte[] datos = ALMACEN.leer(PREFIJO + sesion.id);
+        if (datos == null) {
+            descartar(sesion);
+            return false;
+        }
+        long ultimoAcceso = ByteBuffer.wrap(datos).getLong(8);
+        if (ultimoAcceso > sesion.ultimoAcceso) {
+            sesion.ultimoAcceso = ultimoAcceso;
+            sesion.persistido = ultimoAcceso;
+        }
+        return true;
+    }
+
+    /**
+     * Copia una sesión en el almacén compartido, con su vencimiento como
+     * caducidad de la entrada.
+     */
+    private static void guardar(Sesion sesion) {
+        byte[] usuario = sesion.usuario.getBytes(StandardCharsets.UTF_8);
+        long ultimoAcceso = sesion.ultimoAcceso;
+        ByteBuffer datos = ByteBuffer.allocate(16 + usuario.length);
+        datos.putLong(sesion.creada).putLong(ultimoAcceso).put(usuario);
+        sesion.persistido = ultimoAcceso;
+        ALMACEN.escribir(PREFIJO + sesion.id, datos.array(), sesion.vencimiento());
+    }
+
+    /**
+     * Cierra una sesión: la quita de los índices y del almacén compartido y
+     * avisa a los oyentes.
+     *
+     * @return {@code false} si otro hilo ya la había eliminado
+     */
+    private static boolean eliminar(Sesion sesion) {
+        if (!descartar(sesion)) {
+            return false;
+        }
+        if (ALMACEN != null) {
+            ALMACEN.borrar(PREFIJO + sesion.id);
+        }
+        avisar(sesion.id);
+        return true;
+    }
+
+    /**
+     * Quita una sesión de los índices de este nodo. La sesión se queda en la
+     * rueda hasta que el barrido la encuentra marcada como cerrada.
+     *
+     * @return {@code false} si otro hilo ya la había quitado
+     */
+    private static boolean descartar(Sesion sesion) {
+        if (!porIdentificador.remove(sesion.id, sesion)) {
+            return false;
+        }
+        sesion.cerrada = true;
+        porUsuario.remove(sesion.usuario, sesion);
+        return true;
+    }
+
+    private static void avisar(String sessionID) {
+        for (Consumer<String> oyente : oyentes) {
+            oyente.accept(sessionID);
+        }
+    }
+
+    /**
+     * Revisa las casillas de la rueda hasta el segundo actual: elimina las
+     * sesiones vencidas y pasa las que se han usado a la casilla de su nuevo
+     * vencimiento.
+     */
+    private static void barrer() {
+        long ahora = System.currentTimeMillis();
+        List<Sesion> vencidas = new ArrayList<>();
+        synchronized (rueda) {
+            long actual = ahora / MILIS_CASILLA;
+            // Si el barrido se ha retrasado más de una vuelta basta con revisar cada casilla una vez
+            long desde = Math.max(siguienteCasilla, actual - CASILLAS + 1);
+            for (long casilla = desde; casilla <= actual; casilla++) {
+                revisar(casilla, ahora, vencidas);
+            }
+            siguienteCasilla = actual + 1;
+        }
+        for (Sesion sesion : vencidas) {
+            // Otro nodo puede haberla usado después de la última comprobación
+            if (ALMACEN != null && refrescar(sesion, ahora) && sesion.vencimiento() > ahora) {
+                synchronized (rueda) {
+                    encolar(sesion, casillaDe(sesion.vencimiento()));
+                }
+            } else if (eliminar(sesion)) {
+                caducadas.increment();
+            }
+        }
+    }
+
+    /**
+     * Vacía una casilla: las sesiones cerradas se descartan, las vencidas se
+     * añaden a la lista y el resto se vuelve a colocar según su vencimiento.
+     */
+    private static void revisar(long casilla, long ahora, List<Sesion> vencidas) {
+        ArrayDeque<Sesion> cola = rueda[indice(casilla)];
+        int pendientes = cola.size();
+        for (int i = 0; i < pendientes; i++) {
+            Sesion sesion = cola.poll();
+            if (sesion.cerrada) {
+                continue;
+            }
+            long vencimiento = sesion.vencimiento();
+            if (vencimiento <= ahora) {
+                vencidas.add(sesion);
+            } else {
+                encolar(sesion, Math.max(casillaDe(vencimiento), casilla + 1));
+            }
+        }
+    }
+
+    /**
+     * Elige las sesiones que vencen antes recorriendo la rueda desde la
+     * casilla actual. Una casilla mezcla sesiones de varias vueltas, así que
+     * solo se eligen las que vencen en la vuelta que se está recorriendo; el
+     * resto, y las que se han usado después de colocarse, se recolocan por el
+     * camino. Como ninguna sesión vence después de {@code TTL_ABSOLUTO}, el
+     * recorrido no pasa de ahí.
+     */
+    private static List<Sesion> expulsarMasAntiguas(int cuantas) {
+        List<Sesion> elegidas = new ArrayList<>(cuantas);
+        long ultima = casillaDe(System.currentTimeMillis() + TTL_ABSOLUTO);
+        for (long casilla = siguienteCasilla; casilla <= ultima && elegidas.size() < cuantas; casilla++) {
+            ArrayDeque<Sesion> cola = rueda[indice(casilla)];
+            int pendientes = cola.size();
+            for (int i = 0; i < pendientes && elegidas.size() < cuantas; i++) {
+                Sesion sesion = cola.poll();
+                if (sesion.cerrada) {
+                    continue;
+                }
+                long destino = casillaDe(sesion.vencimiento());
+                if (destino <= casilla) {
+                    elegidas.add(sesion);
+                } else {
+                    encolar(sesion, destino);
+                }
+            }
+        }
+        return elegidas;
+    }
+
+    /**
+     * Devuelve la primera casilla que se revisa después de un vencimiento.
+     */
+    private static long casillaDe(long vencimiento) {
+        return (vencimiento + MILIS_CASILLA - 1) / MILIS_CASILLA;
+    }
+
+    private static void encolar(Sesion sesion, long casilla) {
+        rueda[indice(Math.max(casilla, siguienteCasilla))].add(sesion);
+    }
+
+    private static int indice(long casilla) {
+        return (int) (casilla & (CASILLAS - 1));
+    }
+}
@@ -0,0 +1,179 @@
+package seguridad;
+
+import config.Configuracion;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Tokens de sesión firmados, que llevan en la propia cookie todo lo necesario
+ * para validar la sesión sin consultar ningún almacén compartido.
+ *
+ * <p>
+ * El token es un bloque binario codificado en Base64 para URL, sin relleno:
+ * un byte de versión, el instante de emisión y el de caducidad en segundos
+ * como enteros de 4 bytes sin signo, el nombre del usuario en UTF-8 y los 16
+ * primeros bytes de un HMAC-SHA256 de todo lo anterior: 25 bytes más el
+ * nombre. Cualquier nodo que tenga la misma
+ * {@link Configuracion#getClaveSesiones()} puede verificarlo, así que varias
+ * instancias del servidor pueden repartirse las peticiones sin afinidad de
+ * sesión.</p>
+ *
+ * <p>
+ * La clave se carga al arrancar con {@link #cargarClave()}. Si no se ha
+ * configurado se genera una al azar y los tokens solo valen en este proceso.
+ * El {@link Mac} se guarda por hilo, como en {@link CacheCredenciales}, para
+ * no crearlo e inicializarlo en cada petición. La comparación de la firma es
+ * de tiempo constante.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class TokenSesion {
+
+    private static final String ALGORITMO = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int CABECERA = 9;
+    private static final int FIRMA = 16;
+    private static final int MAX_USUARIO = 255;
+
+    private static final Base64.Encoder CODIFICADOR = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODIFICADOR = Base64.getUrlDecoder();
+
+    private static final ThreadLocal<Mac> MAC = new ThreadLocal<>();
+    private static volatile SecretKeySpec clave;
+
+    /**
+     * Carga la clave de firma desde la configuración, o genera una aleatoria
+     * si no hay ninguna.
+     *
+     * @throws IllegalArgumentException si la clave configurada no es Base64
+     * válido o tiene menos de 32 bytes
+     */
+    public static synchronized void cargarClave() {
+        if (clave != null) {
+            return;
+        }
+        String configurada = Configuracion.getClaveSesiones();
+        byte[] bytes;
+        if (configurada.isEmpty()) {
+            bytes = new byte[32];
+            new SecureRandom().nextBytes(bytes);
+            System.out.println("Sesiones firmadas con una clave aleatoria: solo las aceptará este nodo");
+        } else {
+            try {
+                bytes = Base64.getDecoder().decode(configurada);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("CLAVE_SESIONES no es Base64 válido");
+            }
+            if (bytes.length < 32) {
+                throw new IllegalArgumentException("CLAVE_SESIONES debe tener al menos 32 bytes");
+            }
+        }
+        clave = new SecretKeySpec(bytes, ALGORITMO);
+    }
+
+    /**
+     * Emite un token para un usuario.
+     *
+     * @param usuario nombre del usuario autenticado
+     * @param emitido instante de emisión en milisegundos
+     * @param caduca instante de caducidad en milisegundos
+     * @return el token codificado, listo para la cookie
+     * @throws IllegalArgumentException si el nombre del usuario ocupa más de
+     * 255 bytes
+     */
+    public static String emitir(String usuario, long emitido, long caduca) {
+        byte[] nombre = usuario.getBytes(StandardCharsets.UTF_8);
+        if (nombre.length > MAX_USUARIO) {
+            throw new IllegalArgumentException("Nombre de usuario demasiado largo para un token");
+        }
+        ByteBuffer token = ByteBuffer.allocate(CABECERA + nombre.length + FIRMA);
+        token.put(VERSION);
+        token.putInt((int) (emitido / 1000));
+        token.putInt((int) (caduca / 1000));
+        token.put(nombre);
+        byte[] datos = token.array();
+        System.arraycopy(firmar(datos, token.position()), 0, datos, token.position(), FIRMA);
+        return CODIFICADOR.encodeToString(datos);
+    }
+
+    /**
+     * Verifica un token y devuelve su usuario.
+     *
+     * @param token token recibido en la cookie
+     * @param ahora instante actual en milisegundos
+     * @return el nombre del usuario, o {@code null} si el token está mal
+     * formado, su firma no es válida o ha caducado
+     */
+    public static String verificar(String token, long ahora) {
+        if (!bienFormado(token)) {
+            return null;
+        }
+        byte[] datos = DECODIFICADOR.decode(token);
+        int longitud = datos.length - FIRMA;
+        if (longitud <= CABECERA || datos[0] != VERSION) {
+            return null;
+        }
+        byte[] firma = firmar(datos, longitud);
+        int diferencia = 0;
+        for (int i = 0; i < FIRMA; i++) {
+            diferencia |= firma[i] ^ datos[longitud + i];
+        }
+        if (diferencia != 0) {
+            return null;
+        }
+        long caduca = Integer.toUnsignedLong(ByteBuffer.wrap(datos, 5, 4).getInt()) * 1000;
+        if (caduca <= ahora) {
+            return null;
+        }
+        return new String(datos, CABECERA, longitud - CABECERA, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Comprueba la longitud y el alfabeto del token antes de decodificarlo,
+     * para que una cookie cualquiera no cueste una excepción del decodificador.
+     */
+    private static boolean bienFormado(String token) {
+        int longitud = token == null ? 0 : token.length();
+        if (longitud == 0 || longitud % 4 == 1 || longitud > (CABECERA + MAX_USUARIO + FIRMA) * 4 / 3 + 1) {
+            return false;
+        }
+        for (int i = 0; i < longitud; i++) {
+            char c = token.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calcula el HMAC de los primeros bytes de un token. Solo se usan sus
+     * {@value #FIRMA} primeros bytes.
+     */
+    private static byte[] firmar(byte[] datos, int longitud) {
+        Mac mac = MAC.get();
+        if (mac == null) {
+            if (clave == null) {
+                cargarClave();
+            }
+            try {
+                mac = Mac.getInstance(ALGORITMO);
+                mac.init(clave);
+            } catch (GeneralSecurityException e) {
+                // HmacSHA256 está garantizado en toda plataforma Java
+                throw new IllegalStateException(e);
+            }
+            MAC.set(mac);
+        }
+        mac.update(datos, 0, longitud);
+        return mac.doFinal();
+    }
+}
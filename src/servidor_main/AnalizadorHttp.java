@@ -0,0 +1,488 @@
+package servidor_main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Analizador incremental de peticiones HTTP/1.x que trabaja directamente sobre
+ * bytes.
+ *
+ * <p>
+ * Se le van entregando los bytes según llegan de la conexión con
+ * {@link #analizar(byte[], int, int)}, en trozos de cualquier tamaño, y avisa
+ * con {@link #isCompleta()} cuando tiene una petición entera. Lo usan tanto el
+ * motor bloqueante como {@link MotorNIO}. Una misma instancia se reutiliza para
+ * todas las peticiones de una conexión llamando a {@link #reiniciar()}.</p>
+ *
+ * <p>
+ * Soporta:</p>
+ * <ul>
+ * <li>Línea de petición y cabeceras terminadas en {@code \r\n} o
+ * {@code \n}.</li>
+ * <li>Cuerpos con {@code Content-Length} y con
+ * {@code Transfer-Encoding: chunked}.</li>
+ * <li>La cookie {@code sessionID}, la cabecera {@code Connection} y la versión
+ * del protocolo para decidir si la conexión se mantiene abierta.</li>
+ * <li>Límites de tamaño para las cabeceras y el cuerpo. Las cabeceras finales
+ * de un cuerpo {@code chunked} cuentan en el límite de las cabeceras.</li>
+ * </ul>
+ *
+ * <p>
+ * Las cabeceras que el servidor no utiliza se descartan sin crear ninguna
+ * cadena, salvo con el registro de accesos en modo depuración, que se
+ * comprueba al empezar cada petición. Los búferes de línea y cuerpo se
+ * reutilizan entre peticiones. El cuerpo se decodifica como UTF-8 una vez
+ * recibido entero, por lo que los caracteres multibyte no se cortan.</p>
+ *
+ * <p>
+ * Esta clase no es segura para hilos: cada conexión usa su propia
+ * instancia.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class AnalizadorHttp {
+
+    /**
+     * Tamaño máximo por defecto de la línea de petición más las cabeceras.
+     */
+    public static final int LIMITE_CABECERAS = 16 * 1024;
+
+    /**
+     * Tamaño máximo por defecto del cuerpo de una petición.
+     */
+    public static final int LIMITE_CUERPO = 64 * 1024;
+
+    private static final int LINEA_PETICION = 0;
+    private static final int CABECERAS = 1;
+    private static final int CUERPO = 2;
+    private static final int TAMANO_TROZO = 3;
+    private static final int DATOS_TROZO = 4;
+    private static final int FIN_TROZO = 5;
+    private static final int CABECERAS_FINALES = 6;
+    private static final int COMPLETA = 7;
+
+    private static final byte[] CONTENT_LENGTH = bytes("content-length");
+    private static final byte[] TRANSFER_ENCODING = bytes("transfer-encoding");
+    private static final byte[] CONNECTION = bytes("connection");
+    private static final byte[] COOKIE = bytes("cookie");
+    private static final byte[] CHUNKED = bytes("chunked");
+    private static final byte[] CLOSE = bytes("close");
+    private static final byte[] KEEP_ALIVE = bytes("keep-alive");
+    private static final byte[] SESSION_ID = bytes("sessionID");
+    private static final byte[] HTTP_11 = bytes("HTTP/1.1");
+
+    private final int limiteCabeceras;
+    private final int limiteCuerpo;
+
+    private byte[] linea = new byte[256];
+    private int longitudLinea;
+    private byte[] cuerpo = new byte[0];
+    private int longitudCuerpo;
+
+    private int estado;
+    private int bytesCabeceras;
+    private long pendientesCuerpo;
+    private boolean chunked;
+
+    private String metodo;
+    private String url;
+    private boolean http11;
+    private int conexion; // 0 sin cabecera, 1 close, 2 keep-alive
+    private String sessionID;
+    // Si se conservan las líneas de cabecera para el registro de accesos, solo en modo depuración
+    private boolean guardarCabeceras;
+    private List<String> cabeceras = List.of();
+
+    /**
+     * Crea un analizador con los límites por defecto.
+     */
+    public AnalizadorHttp() {
+        this(LIMITE_CABECERAS, LIMITE_CUERPO);
+    }
+
+    /**
+     * Crea un analizador con límites de tamaño propios.
+     *
+     * @param limiteCabeceras bytes máximos de la línea de petición y las
+     * cabeceras, incluidas las finales
+     * @param limiteCuerpo bytes máximos del cuerpo
+     */
+    public AnalizadorHttp(int limiteCabeceras, int limiteCuerpo) {
+        this.limiteCabeceras = limiteCabeceras;
+        this.limiteCuerpo = limiteCuerpo;
+        reiniciar();
+    }
+
+    /**
+     * Prepara el analizador para la siguiente petición de la conexión.
+     */
+    public final void reiniciar() {
+        estado = LINEA_PETICION;
+        longitudLinea = 0;
+        longitudCuerpo = 0;
+        bytesCabeceras = 0;
+        pendientesCuerpo = 0;
+        chunked = false;
+        metodo = "";
+        url = "";
+        http11 = false;
+        conexion = 0;
+        sessionID = "";
+        // El nivel del registro se puede cambiar sin reiniciar
+        guardarCabeceras = RegistroAccesos.isDepuracion();
+        cabeceras = guardarCabeceras ? new ArrayList<>() : List.of();
+    }
+
+    /**
+     * Indica si ya se ha recibido una petición completa.
+     *
+     * @return {@code true} si la petición está completa
+     */
+    public boolean isCompleta() {
+        return estado == COMPLETA;
+    }
+
+    /**
+     * Consume bytes de la conexión. Se detiene al completar una petición, de
+     * modo que los bytes de la siguiente (pipelining) quedan sin consumir.
+     *
+     * @param datos búfer con los bytes recibidos
+     * @param desde posición del primer byte a consumir
+     * @param hasta posición siguiente al último byte disponible
+     * @return número de bytes consumidos
+     * @throws IllegalArgumentException si la petición está mal formada o
+     * supera los límites
+     */
+    public int analizar(byte[] datos, int desde, int hasta) {
+        int i = desde;
+        while (i < hasta && estado != COMPLETA) {
+            switch (estado) {
+                case CUERPO:
+                case DATOS_TROZO: {
+                    int n = (int) Math.min(pendientesCuerpo, hasta - i);
+                    System.arraycopy(datos, i, cuerpo, longitudCuerpo, n);
+                    longitudCuerpo += n;
+                    pendientesCuerpo -= n;
+                    i += n;
+                    if (pendientesCuerpo == 0) {
+                        estado = estado == CUERPO ? COMPLETA : FIN_TROZO;
+                    }
+                    break;
+                }
+                default: {
+                    byte b = datos[i++];
+                    if (b == '\n') {
+                        if (longitudLinea > 0 && linea[longitudLinea - 1] == '\r') {
+                            longitudLinea--;
+                        }
+                        procesarLinea();
+                        longitudLinea = 0;
+                    } else {
+                        if (cuentaComoCabecera() && ++bytesCabeceras > limiteCabeceras) {
+                            throw new IllegalArgumentException("Cabeceras demasiado grandes");
+                        }
+                        if (longitudLinea == linea.length) {
+                            if (linea.length >= limiteCabeceras) {
+                                throw new IllegalArgumentException("Línea demasiado larga");
+                            }
+                            linea = Arrays.copyOf(linea, Math.min(linea.length * 2, limiteCabeceras));
+                        }
+                        linea[longitudLinea++] = b;
+                    }
+                    break;
+                }
+            }
+        }
+        return i - desde;
+    }
+
+    /**
+     * Devuelve la petición completa.
+     *
+     * @return la petición analizada
+     * @throws IllegalStateException si la petición aún no está completa
+     */
+    public Peticion getPeticion() {
+        if (estado != COMPLETA) {
+            throw new IllegalStateException("La petición no está completa");
+        }
+        String texto = longitudCuerpo == 0 ? "" : new String(cuerpo, 0, longitudCuerpo, StandardCharsets.UTF_8);
+        // HTTP/1.1 mantiene la conexión salvo que se pida cerrarla; HTTP/1.0 solo si se pide
+        boolean keepAlive = http11 ? conexion != 1 : conexion == 2;
+        return new Peticion(metodo, url, sessionID, texto, keepAlive, cabeceras);
+    }
+
+    /**
+     * Indica si los bytes de la línea actual cuentan en el límite de las
+     * cabeceras: la línea de petición, las cabeceras y las cabeceras finales
+     * que siguen al último trozo.
+     */
+    private boolean cuentaComoCabecera() {
+        return estado <= CABECERAS || estado == CABECERAS_FINALES;
+    }
+
+    /**
+     * Interpreta una línea completa según el estado actual.
+     */
+    private void procesarLinea() {
+        switch (estado) {
+            case LINEA_PETICION:
+                if (longitudLinea > 0) { // Se ignoran las líneas vacías sobrantes entre peticiones
+                    procesarLineaPeticion();
+                    estado = CABECERAS;
+                }
+                break;
+            case CABECERAS:
+                if (longitudLinea == 0) {
+                    finCabeceras();
+                } else {
+                    procesarCabecera();
+                }
+                break;
+            case TAMANO_TROZO:
+                procesarTamanoTrozo();
+                break;
+            case FIN_TROZO:
+                if (longitudLinea != 0) {
+                    throw new IllegalArgumentException("Trozo mal terminado");
+                }
+                estado = TAMANO_TROZO;
+                break;
+            case CABECERAS_FINALES:
+                if (longitudLinea == 0) {
+                    estado = COMPLETA;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Extrae el método, la ruta y la versión de la línea de petición.
+     */
+    private void procesarLineaPeticion() {
+        int primerEspacio = indice(linea, 0, longitudLinea, (byte) ' ');
+        if (primerEspacio <= 0) {
+            throw new IllegalArgumentException("Línea de petición mal formada");
+        }
+        int segundoEspacio = indice(linea, primerEspacio + 1, longitudLinea, (byte) ' ');
+        int finUrl = segundoEspacio < 0 ? longitudLinea : segundoEspacio;
+
+        metodo = nombreMetodo(primerEspacio);
+        url = new String(linea, primerEspacio + 1, finUrl - primerEspacio - 1, StandardCharsets.ISO_8859_1);
+        http11 = segundoEspacio >= 0
+                && igualesIgnorandoMayusculas(linea, segundoEspacio + 1, longitudLinea, HTTP_11);
+    }
+
+    /**
+     * Devuelve el método como constante para los habituales, sin crear una
+     * cadena nueva en cada petición.
+     */
+    private String nombreMetodo(int longitud) {
+        if (longitud == 3 && linea[0] == 'G' && linea[1] == 'E' && linea[2] == 'T') {
+            return "GET";
+        }
+        if (longitud == 4 && linea[0] == 'P' && linea[1] == 'O' && linea[2] == 'S' && linea[3] == 'T') {
+            return "POST";
+        }
+        if (longitud == 4 && linea[0] == 'H' && linea[1] == 'E' && linea[2] == 'A' && linea[3] == 'D') {
+            return "HEAD";
+        }
+        return new String(linea, 0, longitud, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Interpreta una cabecera. Solo se procesan las que usa el servidor.
+     */
+    private void procesarCabecera() {
+        int dosPuntos = indice(linea, 0, longitudLinea, (byte) ':');
+        if (dosPuntos <= 0) {
+            throw new IllegalArgumentException("Cabecera mal formada");
+        }
+        int inicioValor = dosPuntos + 1;
+        while (inicioValor < longitudLinea && (linea[inicioValor] == ' ' || linea[inicioValor] == '\t')) {
+            inicioValor++;
+        }
+        int finValor = longitudLinea;
+        while (finValor > inicioValor && (linea[finValor - 1] == ' ' || linea[finValor - 1] == '\t')) {
+            finValor--;
+        }
+
+        if (guardarCabeceras) {
+            // La cookie de sesión no se copia al registro
+            cabeceras.add(igualesIgnorandoMayusculas(linea, 0, dosPuntos, COOKIE)
+                    ? "Cookie: ***"
+                    : new String(linea, 0, longitudLinea, StandardCharsets.ISO_8859_1));
+        }
+
+        if (igualesIgnorandoMayusculas(linea, 0, dosPuntos, CONTENT_LENGTH)) {
+            pendientesCuerpo = numero(inicioValor, finValor);
+        } else if (igualesIgnorandoMayusculas(linea, 0, dosPuntos, TRANSFER_ENCODING)) {
+            chunked = terminaEnIgnorandoMayusculas(linea, inicioValor, finValor, CHUNKED);
+        } else if (igualesIgnorandoMayusculas(linea, 0, dosPuntos, CONNECTION)) {
+            if (igualesIgnorandoMayusculas(linea, inicioValor, finValor, CLOSE)) {
+                conexion = 1;
+            } else if (igualesIgnorandoMayusculas(linea, inicioValor, finValor, KEEP_ALIVE)) {
+                conexion = 2;
+            }
+        } else if (igualesIgnorandoMayusculas(linea, 0, dosPuntos, COOKIE)) {
+            procesarCookies(inicioValor, finValor);
+        }
+    }
+
+    /**
+     * Busca la cookie {@code sessionID} entre las cookies de la cabecera.
+     */
+    private void procesarCookies(int desde, int hasta) {
+        int i = desde;
+        while (i < hasta) {
+            while (i < hasta && linea[i] == ' ') {
+                i++;
+            }
+            int fin = indice(linea, i, hasta, (byte) ';');
+            if (fin < 0) {
+                fin = hasta;
+            }
+            int igual = indice(linea, i, fin, (byte) '=');
+            if (igual > 0 && iguales(linea, i, igual, SESSION_ID)) {
+                sessionID = new String(linea, igual + 1, fin - igual - 1, StandardCharsets.ISO_8859_1);
+            }
+            i = fin + 1;
+        }
+    }
+
+    /**
+     * Decide cómo continuar tras la línea vacía que cierra las cabeceras.
+     */
+    private void finCabeceras() {
+        if (chunked) {
+            pendientesCuerpo = 0;
+            estado = TAMANO_TROZO;
+        } else if (pendientesCuerpo > 0) {
+            reservarCuerpo(pendientesCuerpo);
+            estado = CUERPO;
+        } else {
+            estado = COMPLETA;
+        }
+    }
+
+    /**
+     * Lee el tamaño hexadecimal de un trozo, ignorando las extensiones.
+     */
+    private void procesarTamanoTrozo() {
+        int fin = indice(linea, 0, longitudLinea, (byte) ';');
+        if (fin < 0) {
+            fin = longitudLinea;
+        }
+        while (fin > 0 && linea[fin - 1] == ' ') {
+            fin--;
+        }
+        if (fin == 0) {
+            throw new IllegalArgumentException("Tamaño de trozo vacío");
+        }
+        long tamano = 0;
+        for (int i = 0; i < fin; i++) {
+            int digito = Character.digit(linea[i], 16);
+            if (digito < 0) {
+                throw new IllegalArgumentException("Tamaño de trozo no válido");
+            }
+            tamano = tamano * 16 + digito;
+            if (tamano > limiteCuerpo) {
+                throw new IllegalArgumentException("Cuerpo demasiado grande");
+            }
+        }
+        if (tamano == 0) {
+            estado = CABECERAS_FINALES;
+        } else {
+            reservarCuerpo(longitudCuerpo + tamano);
+            pendientesCuerpo = tamano;
+            estado = DATOS_TROZO;
+        }
+    }
+
+    /**
+     * Asegura que el búfer del cuerpo tiene sitio para el total indicado.
+     */
+    private void reservarCuerpo(long total) {
+        if (total > limiteCuerpo) {
+            throw new IllegalArgumentException("Cuerpo demasiado grande");
+        }
+        if (cuerpo.length < total) {
+            cuerpo = Arrays.copyOf(cuerpo, (int) Math.min(limiteCuerpo, Math.max(total, cuerpo.length * 2L)));
+        }
+    }
+
+    /**
+     * Interpreta un número decimal sin signo de la línea actual.
+     */
+    private long numero(int desde, int hasta) {
+        if (desde == hasta) {
+            throw new IllegalArgumentException("Número vacío");
+        }
+        long valor = 0;
+        for (int i = desde; i < hasta; i++) {
+            byte b = linea[i];
+            if (b < '0' || b > '9') {
+                throw new IllegalArgumentException("Número no válido");
+            }
+            valor = valor * 10 + (b - '0');
+            if (valor > limiteCuerpo) {
+                throw new IllegalArgumentException("Cuerpo demasiado grande");
+            }
+        }
+        return valor;
+    }
+
+    private static int indice(byte[] datos, int desde, int hasta, byte buscado) {
+        for (int i = desde; i < hasta; i++) {
+            if (datos[i] == buscado) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean iguales(byte[] datos, int desde, int hasta, byte[] esperado) {
+        if (hasta - desde != esperado.length) {
+            return false;
+        }
+        for (int i = 0; i < esperado.length; i++) {
+            if (datos[desde + i] != esperado[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compara ignorando mayúsculas; {@code esperado} debe estar en minúsculas
+     * salvo que contenga caracteres no alfabéticos.
+     */
+    private static boolean igualesIgnorandoMayusculas(byte[] datos, int desde, int hasta, byte[] esperado) {
+        if (hasta - desde != esperado.length) {
+            return false;
+        }
+        for (int i = 0; i < esperado.length; i++) {
+            if (minuscula(datos[desde + i]) != minuscula(esperado[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean terminaEnIgnorandoMayusculas(byte[] datos, int desde, int hasta, byte[] esperado) {
+        return hasta - desde >= esperado.length
+                && igualesIgnorandoMayusculas(datos, hasta - esperado.length, hasta, esperado);
+    }
+
+    private static int minuscula(byte b) {
+        return (b >= 'A' && b <= 'Z') ? b + 32 : b;
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.US_ASCII);
+    }
+}
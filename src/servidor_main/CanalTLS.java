@@ -0,0 +1,238 @@
+package servidor_main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+
+/**
+ * Capa TLS de una conexión del {@link MotorNIO}, sobre un {@link SSLEngine}.
+ *
+ * <p>
+ * Guarda los bytes cifrados en dos búferes del tamaño de un registro TLS: los
+ * recibidos que aún no se han descifrado y los cifrados que aún no se han
+ * podido enviar. La negociación avanza a medida que se descifra y, como el
+ * resto de la conexión, solo se usa desde el hilo de su bucle de eventos. Las
+ * tareas delegadas del motor TLS se ejecutan en ese mismo hilo: son pocas por
+ * conexión, y más aún cuando la sesión se reanuda.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+final class CanalTLS {
+
+    private static final ByteBuffer[] SIN_DATOS = new ByteBuffer[0];
+
+    private final SocketChannel canal;
+    private final SSLEngine motor;
+    // En modo escritura: bytes recibidos pendientes de descifrar
+    private ByteBuffer redEntrada;
+    // En modo lectura: bytes cifrados pendientes de enviar
+    private ByteBuffer redSalida;
+
+    CanalTLS(SocketChannel canal, SSLEngine motor) {
+        this.canal = canal;
+        this.motor = motor;
+        int paquete = motor.getSession().getPacketBufferSize();
+        this.redEntrada = ByteBuffer.allocate(paquete);
+        this.redSalida = ByteBuffer.allocate(paquete);
+        this.redSalida.flip();
+    }
+
+    /**
+     * Tamaño mínimo del búfer en el que se descifra, para que quepa un
+     * registro completo.
+     */
+    int tamanoAplicacion() {
+        return motor.getSession().getApplicationBufferSize();
+    }
+
+    /**
+     * Lee del socket los bytes cifrados disponibles, sin descifrarlos.
+     *
+     * @return los bytes leídos, o -1 si el cliente ha cerrado la conexión
+     */
+    int leer() throws IOException {
+        if (!redEntrada.hasRemaining()) {
+            return 0;
+        }
+        return canal.read(redEntrada);
+    }
+
+    /**
+     * Descifra en {@code destino} todo lo recibido que quepa, avanzando la
+     * negociación si está en curso. Se detiene cuando faltan datos, cuando
+     * {@code destino} está lleno o cuando hay que esperar a poder escribir.
+     *
+     * @param destino búfer en modo escritura con los datos descifrados
+     * @throws IOException si el cliente envía datos que no son TLS válido
+     */
+    void descifrar(ByteBuffer destino) throws IOException {
+        redEntrada.flip();
+        try {
+            while (true) {
+                HandshakeStatus estado = motor.getHandshakeStatus();
+                if (estado == HandshakeStatus.NEED_TASK) {
+                    ejecutarTareas();
+                    continue;
+                }
+                if (estado == HandshakeStatus.NEED_WRAP) {
+                    if (!vaciar()) {
+                        return;
+                    }
+                    cifrar(SIN_DATOS);
+                    continue;
+                }
+                SSLEngineResult resultado = motor.unwrap(redEntrada, destino);
+                switch (resultado.getStatus()) {
+                    case BUFFER_UNDERFLOW:
+                        ampliarEntrada();
+                        return;
+                    case BUFFER_OVERFLOW:
+                    case CLOSED:
+                        return;
+                    default:
+                        HandshakeStatus siguiente = resultado.getHandshakeStatus();
+                        if (resultado.bytesConsumed() == 0
+                                && siguiente != HandshakeStatus.NEED_TASK
+                                && siguiente != HandshakeStatus.NEED_WRAP) {
+                            return;
+                        }
+                }
+            }
+        } finally {
+            redEntrada.compact();
+        }
+    }
+
+    /**
+     * Cifra y envía {@code origen}, vaciando antes lo que quedara pendiente.
+     *
+     * @param origen datos a enviar
+     * @return {@code true} si se ha enviado todo, {@code false} si hay que
+     * esperar a que el socket admita más datos
+     * @throws IOException si la conexión está cerrada o el motor TLS no puede
+     * cifrar
+     */
+    boolean escribir(ByteBuffer[] origen) throws IOException {
+        while (true) {
+            if (!vaciar()) {
+                return false;
+            }
+            if (!quedanDatos(origen)) {
+                return true;
+            }
+            SSLEngineResult resultado = cifrar(origen);
+            SSLEngineResult.Status estado = resultado.getStatus();
+            if (estado == SSLEngineResult.Status.CLOSED || estado == SSLEngineResult.Status.OK
+                    && resultado.bytesConsumed() == 0 && resultado.bytesProduced() == 0) {
+                throw new IOException("No se puede cifrar la respuesta: " + resultado);
+            }
+        }
+    }
+
+    /**
+     * Indica si quedan bytes cifrados por enviar.
+     */
+    boolean hayPendiente() {
+        return redSalida.hasRemaining();
+    }
+
+    /**
+     * Indica si quedan bytes recibidos sin descifrar.
+     */
+    boolean hayEntradaPendiente() {
+        return redEntrada.position() > 0;
+    }
+
+    /**
+     * Indica si el cliente ha cerrado su lado de la sesión TLS.
+     */
+    boolean isEntradaCerrada() {
+        return motor.isInboundDone();
+    }
+
+    /**
+     * Intenta enviar el aviso de cierre de la sesión TLS, sin esperar a que
+     * el socket lo admita.
+     */
+    void cerrar() {
+        motor.closeOutbound();
+        try {
+            if (vaciar()) {
+                cifrar(SIN_DATOS);
+                vaciar();
+            }
+        } catch (IOException e) {
+            // La conexión ya no está disponible
+        }
+    }
+
+    /**
+     * Escribe en el socket los bytes cifrados pendientes.
+     *
+     * @return {@code true} si no queda ninguno
+     */
+    private boolean vaciar() throws IOException {
+        while (redSalida.hasRemaining()) {
+            if (canal.write(redSalida) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Cifra en el búfer de salida, que debe estar vacío, un registro con los
+     * datos de {@code origen} o con los mensajes de negociación pendientes.
+     */
+    private SSLEngineResult cifrar(ByteBuffer[] origen) throws IOException {
+        redSalida.clear();
+        SSLEngineResult resultado = motor.wrap(origen, redSalida);
+        redSalida.flip();
+        if (resultado.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+            // La sesión negociada usa registros más grandes que los iniciales
+            int paquete = motor.getSession().getPacketBufferSize();
+            if (redSalida.capacity() >= paquete) {
+                throw new IOException("Búfer de salida TLS insuficiente");
+            }
+            redSalida = ByteBuffer.allocate(paquete);
+            redSalida.flip();
+        }
+        if (resultado.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+            ejecutarTareas();
+        }
+        return resultado;
+    }
+
+    /**
+     * Amplía el búfer de entrada, en modo lectura, si la sesión negociada usa
+     * registros más grandes que los iniciales.
+     */
+    private void ampliarEntrada() {
+        int paquete = motor.getSession().getPacketBufferSize();
+        if (redEntrada.capacity() < paquete) {
+            ByteBuffer mayor = ByteBuffer.allocate(paquete);
+            mayor.put(redEntrada);
+            mayor.flip();
+            redEntrada = mayor;
+        }
+    }
+
+    private void ejecutarTareas() {
+        Runnable tarea;
+        while ((tarea = motor.getDelegatedTask()) != null) {
+            tarea.run();
+        }
+    }
+
+    private static boolean quedanDatos(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
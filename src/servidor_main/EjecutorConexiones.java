@@ -0,0 +1,111 @@
+package servidor_main;
+
+import config.Configuracion;
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import utilidades.PoolsHilos;
+
+/**
+ * Clase encargada de crear el ejecutor que atiende las conexiones aceptadas
+ * por el servidor.
+ *
+ * <p>
+ * Sustituye al antiguo esquema de un hilo nuevo por conexión, que bajo picos de
+ * tráfico creaba hilos sin límite. Se puede elegir entre dos modos mediante
+ * {@link Configuracion#getModoHilos()}:</p>
+ * <ul>
+ * <li>{@code plataforma}: pool acotado de hilos de plataforma con una cola de
+ * espera de tamaño fijo. Cuando el pool y la cola están llenos la conexión se
+ * rechaza con {@link java.util.concurrent.RejectedExecutionException}.</li>
+ * <li>{@code virtual}: un hilo virtual por conexión (Java 21 o superior). Si la
+ * JVM no los soporta se usa el pool de plataforma.</li>
+ * </ul>
+ *
+ * <p>
+ * El número de hilos del pool de plataforma se puede cambiar sin reiniciar
+ * con {@link Configuracion#getHilosMaximos()}; el tamaño de la cola no.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class EjecutorConexiones {
+
+    /**
+     * Crea el ejecutor de conexiones según el modo configurado.
+     *
+     * @return el ejecutor que atenderá las conexiones
+     */
+    public static ExecutorService crear() {
+        if (Configuracion.getModoHilos().equalsIgnoreCase("virtual")) {
+            ExecutorService virtual = crearVirtual();
+            if (virtual != null) {
+                System.out.println("Atendiendo conexiones con hilos virtuales");
+                return virtual;
+            }
+            System.out.println("Hilos virtuales no disponibles en esta JVM, se usa el pool de plataforma");
+        }
+        System.out.println("Atendiendo conexiones con un pool de " + Configuracion.getHilosMaximos()
+                + " hilos y una cola de " + Configuracion.getColaConexiones());
+        return crearPoolAcotado(Configuracion.getHilosMaximos(), Configuracion.getColaConexiones());
+    }
+
+    /**
+     * Crea un pool de hilos de plataforma con un número máximo de hilos y una
+     * cola acotada. Los hilos sobrantes mueren tras un minuto de inactividad.
+     *
+     * @param hilos número máximo de hilos
+     * @param cola número máximo de tareas en espera
+     * @return el pool de hilos
+     */
+    private static ExecutorService crearPoolAcotado(int hilos, int cola) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, cola)), new FabricaHilos("conexion"),
+                new ThreadPoolExecutor.AbortPolicy());
+        pool.allowCoreThreadTimeOut(true);
+        Configuracion.agregarOyente(() -> PoolsHilos.redimensionar(pool, Configuracion.getHilosMaximos()));
+        return pool;
+    }
+
+    /**
+     * Crea un ejecutor de un hilo virtual por tarea. Se obtiene por reflexión
+     * para poder compilar con Java 17 y aprovecharlo al ejecutar con Java 21.
+     *
+     * @return el ejecutor virtual, o {@code null} si la JVM no lo soporta
+     */
+    private static ExecutorService crearVirtual() {
+        try {
+            Method metodo = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) metodo.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Fábrica de hilos con nombre numerado para identificarlos en volcados de
+     * hilos y perfiles.
+     */
+    private static class FabricaHilos implements ThreadFactory {
+
+        private final String prefijo;
+        private final AtomicInteger contador = new AtomicInteger();
+
+        FabricaHilos(String prefijo) {
+            this.prefijo = prefijo;
+        }
+
+        @Override
+        public Thread newThread(Runnable tarea) {
+            Thread hilo = new Thread(tarea, prefijo + "-" + contador.incrementAndGet());
+            hilo.setDaemon(false);
+            return hilo;
+        }
+    }
+}
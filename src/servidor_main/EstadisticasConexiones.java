@@ -0,0 +1,61 @@
+package servidor_main;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores de las conexiones atendidas por los dos motores de red.
+ *
+ * <p>
+ * Usan {@link LongAdder}, así que anotar una conexión no añade contención
+ * entre el hilo que acepta y los que atienden. Las conexiones activas son la
+ * diferencia entre las abiertas y las cerradas.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class EstadisticasConexiones {
+
+    private static final LongAdder aceptadas = new LongAdder();
+    private static final LongAdder rechazadas = new LongAdder();
+    private static final LongAdder activas = new LongAdder();
+
+    static void anotarAceptada() {
+        aceptadas.increment();
+    }
+
+    static void anotarRechazada() {
+        rechazadas.increment();
+    }
+
+    static void anotarAbierta() {
+        activas.increment();
+    }
+
+    static void anotarCerrada() {
+        activas.decrement();
+    }
+
+    /**
+     * @return número de conexiones aceptadas desde el arranque
+     */
+    public static long getAceptadas() {
+        return aceptadas.sum();
+    }
+
+    /**
+     * @return número de conexiones o peticiones rechazadas con un 503 por
+     * saturación del ejecutor
+     */
+    public static long getRechazadas() {
+        return rechazadas.sum();
+    }
+
+    /**
+     * @return número de conexiones abiertas en este momento
+     */
+    public static long getActivas() {
+        return activas.sum();
+    }
+}
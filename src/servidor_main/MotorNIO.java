@@ -0,0 +1,457 @@
+package servidor_main;
+
+import config.Configuracion;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import paginas.Cabecera;
+import seguridad.Keystore;
+import seguridad.Logueadora;
+import seguridad.Origen;
+
+/**
+ * Motor de red no bloqueante basado en {@link Selector}, alternativo al
+ * {@link java.net.ServerSocket} bloqueante del servidor.
+ *
+ * <p>
+ * Un hilo acepta las conexiones y las reparte entre un número pequeño de
+ * bucles de eventos ({@link Configuracion#getHilosNIO()}). Cada bucle lee las
+ * peticiones por partes en un {@link ByteBuffer} por conexión, que va
+ * entregando a su {@link AnalizadorHttp}, y cuando una petición está completa
+ * la pasa al ejecutor de conexiones para que
+ * {@link Servidor#procesar(Peticion)} la atienda con la misma lógica que el
+ * motor bloqueante. La respuesta vuelve al bucle, que la escribe sin bloquear.
+ * </p>
+ *
+ * <p>
+ * Las conexiones inactivas no ocupan ningún hilo, por lo que un único nodo
+ * puede mantener abiertas decenas de miles de conexiones persistentes. Las
+ * peticiones encadenadas en una misma conexión se atienden de una en una y en
+ * orden.
+ * </p>
+ *
+ * <p>
+ * Si {@link Configuracion#isTLS()}, cada conexión se cifra con un
+ * {@link CanalTLS} creado a partir del contexto compartido de
+ * {@link Keystore}. La negociación se hace en el propio bucle de eventos, sin
+ * ocupar un hilo del ejecutor mientras el cliente responde.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class MotorNIO {
+
+    private static final Origen ERROR_ATENDER = new Origen(5, "Servidor", "MotorNIO.atender");
+    private static final Origen ERROR_BUCLE = new Origen(5, "Servidor", "MotorNIO.bucle");
+    private static final Origen ERROR_CONEXION = new Origen(5, "Servidor", "MotorNIO.conexion");
+
+    private final ServerSocketChannel canalServidor;
+    private final BucleEventos[] bucles;
+    private final ExecutorService ejecutor;
+
+    /**
+     * Crea el motor escuchando en el puerto configurado.
+     *
+     * @param ejecutor ejecutor en el que se atienden las peticiones completas
+     * @throws IOException si no se puede abrir el puerto o leer el almacén de
+     * claves
+     * @throws GeneralSecurityException si el contexto TLS no se puede
+     * inicializar
+     */
+    public MotorNIO(ExecutorService ejecutor) throws IOException, GeneralSecurityException {
+        this.ejecutor = ejecutor;
+        if (Configuracion.isTLS()) {
+            // Se crea ya para que un error en el almacén de claves se vea al arrancar
+            Keystore.getContextoSSL();
+        }
+        this.canalServidor = ServerSocketChannel.open();
+        this.canalServidor.bind(new InetSocketAddress(Configuracion.getPuerto()), 1024);
+        this.bucles = new BucleEventos[Math.max(1, Configuracion.getHilosNIO())];
+        for (int i = 0; i < bucles.length; i++) {
+            bucles[i] = new BucleEventos();
+        }
+    }
+
+    /**
+     * Arranca los bucles de eventos y acepta conexiones en el hilo actual,
+     * repartiéndolas entre los bucles por turnos. Este método no termina
+     * mientras el servidor esté activo.
+     *
+     * @throws IOException si el canal del servidor falla
+     * @throws GeneralSecurityException si no se puede crear el motor TLS de
+     * una conexión
+     */
+    public void iniciar() throws IOException, GeneralSecurityException {
+        for (int i = 0; i < bucles.length; i++) {
+            Thread hilo = new Thread(bucles[i], "nio-" + (i + 1));
+            hilo.start();
+        }
+        System.out.println("Motor NIO activo con " + bucles.length + " bucles de eventos");
+
+        int siguiente = 0;
+        while (true) {
+            SocketChannel canal = canalServidor.accept();
+            EstadisticasConexiones.anotarAceptada();
+            if (RegistroAccesos.isDepuracion()) {
+                RegistroAccesos.depurar("Cliente conectado desde: " + canal.socket().getInetAddress());
+            }
+            canal.configureBlocking(false);
+            canal.socket().setTcpNoDelay(true);
+            CanalTLS tls = Configuracion.isTLS() ? new CanalTLS(canal, Keystore.crearMotorSSL()) : null;
+            bucles[siguiente].registrar(canal, tls);
+            siguiente = (siguiente + 1) % bucles.length;
+        }
+    }
+
+    /**
+     * Bucle de eventos: un hilo con su propio {@link Selector} que atiende la
+     * lectura y escritura de las conexiones que tiene asignadas.
+     */
+    private class BucleEventos implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tareas = new ConcurrentLinkedQueue<>();
+
+        BucleEventos() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        /**
+         * Asigna una conexión nueva a este bucle. Puede llamarse desde
+         * cualquier hilo.
+         */
+        void registrar(SocketChannel canal, CanalTLS tls) {
+            encolar(() -> {
+                try {
+                    SelectionKey clave = canal.register(selector, SelectionKey.OP_READ);
+                    clave.attach(new Conexion(this, canal, clave, tls));
+                } catch (ClosedChannelException e) {
+                    cerrarSilencioso(canal);
+                } catch (RuntimeException e) {
+                    Logueadora.registrar(ERROR_CONEXION, e.toString());
+                    cerrarSilencioso(canal);
+                }
+            });
+        }
+
+        /**
+         * Ejecuta una tarea dentro del hilo del bucle y lo despierta.
+         */
+        void encolar(Runnable tarea) {
+            tareas.add(tarea);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long ultimaRevision = System.currentTimeMillis();
+            while (true) {
+                try {
+                    selector.select(1000);
+
+                    Runnable tarea;
+                    while ((tarea = tareas.poll()) != null) {
+                        try {
+                            tarea.run();
+                        } catch (RuntimeException e) {
+                            // Las tareas de una conexión ya la cierran si fallan
+                            Logueadora.registrar(ERROR_BUCLE, e.toString());
+                        }
+                    }
+
+                    Iterator<SelectionKey> claves = selector.selectedKeys().iterator();
+                    while (claves.hasNext()) {
+                        SelectionKey clave = claves.next();
+                        claves.remove();
+                        Conexion conexion = (Conexion) clave.attachment();
+                        if (!clave.isValid() || conexion == null) {
+                            continue;
+                        }
+                        try {
+                            if (clave.isReadable()) {
+                                conexion.leer();
+                            } else if (clave.isWritable()) {
+                                conexion.escribir();
+                            }
+                        } catch (IOException e) {
+                            conexion.cerrar();
+                        } catch (RuntimeException e) {
+                            // Un fallo en una conexión no debe parar el bucle del resto
+                            Logueadora.registrar(ERROR_CONEXION, e.toString());
+                            conexion.cerrar();
+                        }
+                    }
+
+                    long ahora = System.currentTimeMillis();
+                    if (ahora - ultimaRevision >= 1000) {
+                        cerrarInactivas(ahora);
+                        ultimaRevision = ahora;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Logueadora.registrar(ERROR_BUCLE, e.toString());
+                }
+            }
+        }
+
+        /**
+         * Cierra las conexiones que llevan más tiempo del permitido sin
+         * actividad. No se cuentan las que esperan a que el ejecutor atienda
+         * su petición, pero sí las que tienen una respuesta sin terminar de
+         * escribir: un cliente que deja de leer no retiene la conexión.
+         */
+        private void cerrarInactivas(long ahora) {
+            long limite = Configuracion.getTiempoKeepAlive() * 1000L;
+            for (SelectionKey clave : selector.keys()) {
+                Conexion conexion = (Conexion) clave.attachment();
+                if (conexion != null && (!conexion.procesando || conexion.pendientes != null)
+                        && ahora - conexion.ultimaActividad > limite) {
+                    conexion.cerrar();
+                }
+            }
+        }
+    }
+
+    /**
+     * Estado de una conexión: los bytes recibidos pendientes de analizar y la
+     * respuesta pendiente de escribir. Solo se modifica desde el hilo de su
+     * bucle de eventos. En una conexión TLS, {@code entrada} guarda los bytes
+     * ya descifrados.
+     */
+    private class Conexion {
+
+        private final BucleEventos bucle;
+        private final SocketChannel canal;
+        private final SelectionKey clave;
+        private final CanalTLS tls;
+        private final ByteBuffer entrada;
+        private final AnalizadorHttp analizador = new AnalizadorHttp();
+        private ByteBuffer[] pendientes;
+        private boolean procesando;
+        private boolean cerrarTrasEscribir;
+        private int atendidas;
+        private long ultimaActividad = System.currentTimeMillis();
+        private boolean cerrada;
+
+        Conexion(BucleEventos bucle, SocketChannel canal, SelectionKey clave, CanalTLS tls) {
+            this.bucle = bucle;
+            this.canal = canal;
+            this.clave = clave;
+            this.tls = tls;
+            this.entrada = ByteBuffer.allocate(tls == null
+                    ? Configuracion.getTamanoBufer()
+                    : Math.max(Configuracion.getTamanoBufer(), tls.tamanoAplicacion()));
+            EstadisticasConexiones.anotarAbierta();
+        }
+
+        /**
+         * Lee los bytes disponibles e intenta atender la siguiente petición.
+         */
+        void leer() throws IOException {
+            int leidos = tls == null ? canal.read(entrada) : tls.leer();
+            if (leidos < 0) {
+                cerrar();
+                return;
+            }
+            ultimaActividad = System.currentTimeMillis();
+            siguientePeticion();
+        }
+
+        /**
+         * Si no hay ninguna petición en curso y ya se ha recibido una completa,
+         * la entrega al ejecutor. Mientras se atiende se deja de leer, así las
+         * peticiones encadenadas se responden en orden.
+         */
+        void siguientePeticion() {
+            if (procesando || !clave.isValid()) {
+                return;
+            }
+            Peticion peticion;
+            try {
+                peticion = analizar();
+            } catch (IllegalArgumentException e) {
+                // Petición mal formada o demasiado grande: se responde y se cierra
+                procesando = true;
+                clave.interestOps(0);
+                enviar(Servidor.codificarRespuesta(Servidor.respuestaError(""), false), true);
+                return;
+            } catch (IOException e) {
+                cerrar();
+                return;
+            }
+            if (peticion == null) {
+                if (tls == null) {
+                    clave.interestOps(SelectionKey.OP_READ);
+                } else if (tls.isEntradaCerrada()) {
+                    cerrar();
+                } else {
+                    // La negociación puede haber dejado mensajes sin enviar
+                    clave.interestOps(tls.hayPendiente() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+                }
+                return;
+            }
+
+            long recibida = System.nanoTime();
+            atendidas++;
+            boolean keepAlive = peticion.isKeepAlive() && atendidas < Configuracion.getMaxPeticionesConexion();
+            procesando = true;
+            clave.interestOps(0);
+            try {
+                ejecutor.execute(() -> {
+                    Respuesta respuesta;
+                    try {
+                        respuesta = Servidor.procesar(peticion);
+                    } catch (Exception e) {
+                        Logueadora.registrar(ERROR_ATENDER, e.toString());
+                        respuesta = Servidor.respuestaError(peticion.getSessionID());
+                    }
+                    ByteBuffer[] salida = Servidor.codificarRespuesta(respuesta, keepAlive);
+                    RegistroAccesos.registrar(peticion, respuesta.getTipoRespuesta(), bytes(salida), System.nanoTime() - recibida);
+                    bucle.encolar(() -> enviar(salida, !keepAlive));
+                });
+            } catch (RejectedExecutionException e) {
+                ByteBuffer[] salida = {ByteBuffer.wrap(Cabecera.generarCabeceraNoDisponible().getBytes(StandardCharsets.US_ASCII))};
+                EstadisticasConexiones.anotarRechazada();
+                RegistroAccesos.registrar(peticion, 503, bytes(salida), System.nanoTime() - recibida);
+                enviar(salida, true);
+            }
+        }
+
+        /**
+         * Prepara la respuesta para escribirla e intenta enviarla ya.
+         */
+        void enviar(ByteBuffer[] salida, boolean cerrar) {
+            pendientes = salida;
+            cerrarTrasEscribir = cerrar;
+            try {
+                escribir();
+            } catch (IOException e) {
+                cerrar();
+            } catch (RuntimeException e) {
+                Logueadora.registrar(ERROR_CONEXION, e.toString());
+                cerrar();
+            }
+        }
+
+        /**
+         * Escribe lo que quede de la respuesta pendiente con una única
+         * escritura agrupada. Si el socket no admite más datos se espera a que
+         * vuelva a estar disponible para escritura.
+         *
+         * <p>
+         * En una conexión TLS sin respuesta pendiente se envían los mensajes de
+         * la negociación que no cupieron en el socket y se sigue leyendo.</p>
+         */
+        void escribir() throws IOException {
+            if (!clave.isValid()) {
+                return;
+            }
+            // Solo se llega aquí con una respuesta nueva o cuando el socket
+            // vuelve a admitir datos, así que el plazo de inactividad se cuenta
+            // desde el último avance de la escritura
+            ultimaActividad = System.currentTimeMillis();
+            if (tls != null) {
+                if (!tls.escribir(pendientes == null ? new ByteBuffer[0] : pendientes)) {
+                    clave.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                if (pendientes == null) {
+                    siguientePeticion();
+                    return;
+                }
+            } else {
+                canal.write(pendientes);
+                for (ByteBuffer buffer : pendientes) {
+                    if (buffer.hasRemaining()) {
+                        clave.interestOps(SelectionKey.OP_WRITE);
+                        return;
+                    }
+                }
+            }
+            pendientes = null;
+            procesando = false;
+            ultimaActividad = System.currentTimeMillis();
+            if (cerrarTrasEscribir) {
+                cerrar();
+            } else {
+                siguientePeticion();
+            }
+        }
+
+        /**
+         * Entrega al analizador los bytes recibidos y extrae una petición
+         * completa si la hay. Los bytes sobrantes se conservan en el búfer para
+         * la siguiente petición.
+         *
+         * <p>
+         * En una conexión TLS se descifra antes lo recibido, y se repite
+         * mientras el analizador haga sitio en el búfer y queden bytes
+         * cifrados por descifrar.</p>
+         *
+         * @return la petición completa, o {@code null} si faltan datos
+         * @throws IllegalArgumentException si la petición está mal formada o
+         * supera los límites
+         * @throws IOException si el cliente envía datos que no son TLS válido
+         */
+        private Peticion analizar() throws IOException {
+            while (true) {
+                if (tls != null) {
+                    tls.descifrar(entrada);
+                }
+                entrada.flip();
+                int consumidos = analizador.analizar(entrada.array(), entrada.position(), entrada.limit());
+                entrada.position(entrada.position() + consumidos);
+                entrada.compact();
+                if (analizador.isCompleta()) {
+                    Peticion peticion = analizador.getPeticion();
+                    analizador.reiniciar();
+                    return peticion;
+                }
+                if (tls == null || consumidos == 0 || !tls.hayEntradaPendiente()) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Cierra la conexión y la elimina del selector.
+         */
+        void cerrar() {
+            clave.cancel();
+            if (tls != null && !cerrada) {
+                tls.cerrar();
+            }
+            cerrarSilencioso(canal);
+            if (!cerrada) {
+                cerrada = true;
+                EstadisticasConexiones.anotarCerrada();
+            }
+        }
+    }
+
+    private static long bytes(ByteBuffer[] buffers) {
+        long total = 0;
+        for (ByteBuffer buffer : buffers) {
+            total += buffer.remaining();
+        }
+        return total;
+    }
+
+    private static void cerrarSilencioso(SocketChannel canal) {
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // La conexión ya estaba cerrada
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package servidor_main;
+
+import java.util.List;
+
+/**
+ * Representa una petición HTTP ya leída de la conexión.
+ *
+ * <p>
+ * Contiene únicamente los datos que necesita el servidor para atenderla: el
+ * método, la ruta, la cookie de sesión, el cuerpo del formulario y si el
+ * cliente quiere mantener la conexión abierta. Las cabeceras completas solo se
+ * conservan para el registro de accesos en modo depuración.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class Peticion {
+
+    private final String metodo;
+    private final String url;
+    private final String sessionID;
+    private final String cuerpo;
+    private final boolean keepAlive;
+    private final List<String> cabeceras;
+
+    /**
+     * Crea una petición con los datos leídos de la conexión.
+     *
+     * @param metodo método HTTP ("GET" o "POST")
+     * @param url ruta solicitada
+     * @param sessionID valor de la cookie de sesión, o cadena vacía
+     * @param cuerpo cuerpo de la petición, o cadena vacía
+     * @param keepAlive si la conexión debe mantenerse abierta tras responder
+     */
+    public Peticion(String metodo, String url, String sessionID, String cuerpo, boolean keepAlive) {
+        this(metodo, url, sessionID, cuerpo, keepAlive, List.of());
+    }
+
+    /**
+     * Crea una petición conservando sus cabeceras para depuración.
+     *
+     * @param metodo método HTTP ("GET" o "POST")
+     * @param url ruta solicitada
+     * @param sessionID valor de la cookie de sesión, o cadena vacía
+     * @param cuerpo cuerpo de la petición, o cadena vacía
+     * @param keepAlive si la conexión debe mantenerse abierta tras responder
+     * @param cabeceras líneas de cabecera recibidas
+     */
+    public Peticion(String metodo, String url, String sessionID, String cuerpo, boolean keepAlive, List<String> cabeceras) {
+        this.metodo = metodo;
+        this.url = url;
+        this.sessionID = sessionID;
+        this.cuerpo = cuerpo;
+        this.keepAlive = keepAlive;
+        this.cabeceras = cabeceras;
+    }
+
+    public String getMetodo() {
+        return metodo;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public String getSessionID() {
+        return sessionID;
+    }
+
+    public String getCuerpo() {
+        return cuerpo;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * @return las cabeceras recibidas, vacía salvo en modo depuración
+     */
+    public List<String> getCabeceras() {
+        return cabeceras;
+    }
+}
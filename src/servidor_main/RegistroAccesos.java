@@ -0,0 +1,261 @@
+package servidor_main;
+
+import config.Configuracion;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import paginas.Cabecera;
+
+/**
+ * Registro de accesos del servidor: una línea por petición con el método, la
+ * ruta, el código de respuesta, los bytes enviados, la latencia y la sesión.
+ *
+ * <p>
+ * Igual que {@link seguridad.Logueadora}, los hilos que atienden peticiones no
+ * escriben: dejan el evento en un búfer acotado y un hilo en segundo plano le
+ * da formato y lo escribe en la salida estándar por lotes, con una sola
+ * escritura por lote. Si el búfer está lleno el evento se descarta y se
+ * cuenta; una petición nunca espera al registro.</p>
+ *
+ * <p>
+ * El nivel se elige con {@link Configuracion#getNivelLogAccesos()}:
+ * {@code ninguno}, {@code acceso} o {@code depuracion}, que añade las
+ * cabeceras de cada petición y las conexiones nuevas. Con
+ * {@link Configuracion#getMuestreoLogAccesos()} se registra solo una de cada
+ * N peticiones correctas; los errores se registran siempre. Los dos se
+ * pueden cambiar sin reiniciar desde el archivo de configuración. Los cuerpos
+ * de las peticiones no se registran nunca, ya que contienen contraseñas.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class RegistroAccesos {
+
+    private static final int TAMANO_LOTE = 1024;
+
+    // Nivel y muestreo, que se pueden cambiar sin reiniciar
+    private static volatile boolean activo;
+    private static volatile boolean depuracion;
+    private static volatile int muestreo;
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog());
+
+    private static final ArrayBlockingQueue<Evento> cola = new ArrayBlockingQueue<>(Math.max(1, Configuracion.getCapacidadLog()));
+    private static final LongAdder descartados = new LongAdder();
+    private static final LongAdder escritos = new LongAdder();
+
+    private static volatile Thread escritor;
+    private static volatile boolean apagando = false;
+
+    static {
+        leerNivel();
+        Configuracion.agregarOyente(() -> {
+            leerNivel();
+            arrancar();
+        });
+    }
+
+    /**
+     * Petición atendida o, si {@code texto} no es nulo, mensaje de
+     * depuración. El formato se aplica en el hilo escritor.
+     */
+    private static final class Evento {
+
+        final long milis;
+        final String metodo;
+        final String url;
+        final int estado;
+        final long bytes;
+        final long nanos;
+        final String sesion;
+        final List<String> cabeceras;
+        final String texto;
+
+        Evento(long milis, String metodo, String url, int estado, long bytes, long nanos,
+                String sesion, List<String> cabeceras, String texto) {
+            this.milis = milis;
+            this.metodo = metodo;
+            this.url = url;
+            this.estado = estado;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.sesion = sesion;
+            this.cabeceras = cabeceras;
+            this.texto = texto;
+        }
+    }
+
+    /**
+     * Arranca el hilo escritor y registra una tarea de apagado que escribe
+     * los eventos pendientes. No hace nada si el nivel es {@code ninguno}.
+     */
+    public static synchronized void arrancar() {
+        if (!activo || escritor != null) {
+            return;
+        }
+        Thread hilo = new Thread(RegistroAccesos::escribir, "accesos-escritor");
+        hilo.setDaemon(true);
+        hilo.start();
+        escritor = hilo;
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apagando = true;
+            hilo.interrupt();
+            try {
+                hilo.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "accesos-apagado"));
+    }
+
+    /**
+     * @return {@code true} si el nivel es {@code depuracion}
+     */
+    public static boolean isDepuracion() {
+        return depuracion;
+    }
+
+    /**
+     * Registra una petición atendida, si el nivel y el muestreo lo permiten.
+     *
+     * @param peticion petición atendida
+     * @param estado tipo de respuesta, como
+     * {@link Respuesta#getTipoRespuesta()}; se registra el código HTTP que
+     * se envía según {@link Cabecera#codigoHttp(int)}
+     * @param bytes bytes de la respuesta, cabecera incluida
+     * @param nanos tiempo desde que se recibió la petición completa hasta
+     * tener la respuesta, en nanosegundos
+     */
+    public static void registrar(Peticion peticion, int estado, long bytes, long nanos) {
+        if (!activo || escritor == null) {
+            return;
+        }
+        int codigo = Cabecera.codigoHttp(estado);
+        int n = muestreo;
+        if (codigo < 400 && n > 1 && ThreadLocalRandom.current().nextInt(n) != 0) {
+            return;
+        }
+        encolar(new Evento(System.currentTimeMillis(), peticion.getMetodo(), peticion.getUrl(), codigo, bytes, nanos,
+                peticion.getSessionID(), peticion.getCabeceras(), null));
+    }
+
+    /**
+     * Registra un mensaje de depuración. Solo se escribe con el nivel
+     * {@code depuracion}; el llamador debe comprobar {@link #isDepuracion()}
+     * antes de componer el mensaje.
+     *
+     * @param texto mensaje a registrar
+     */
+    public static void depurar(String texto) {
+        if (depuracion && escritor != null) {
+            encolar(new Evento(System.currentTimeMillis(), null, null, 0, 0, 0, null, null, texto));
+        }
+    }
+
+    /**
+     * Lee el nivel y el muestreo configurados. Si el nivel pasa a
+     * {@code ninguno} el hilo escritor sigue vivo pero deja de recibir
+     * eventos.
+     */
+    private static void leerNivel() {
+        String nivel = Configuracion.getNivelLogAccesos();
+        activo = !nivel.equalsIgnoreCase("ninguno");
+        depuracion = nivel.equalsIgnoreCase("depuracion");
+        muestreo = Math.max(1, Configuracion.getMuestreoLogAccesos());
+    }
+
+    /**
+     * @return número de eventos descartados porque el búfer estaba lleno
+     */
+    public static long getDescartados() {
+        return descartados.sum();
+    }
+
+    /**
+     * @return número de eventos escritos
+     */
+    public static long getEscritos() {
+        return escritos.sum();
+    }
+
+    private static void encolar(Evento evento) {
+        if (!cola.offer(evento)) {
+            descartados.increment();
+        }
+    }
+
+    /**
+     * Bucle del hilo escritor: saca lotes del búfer y los escribe con una
+     * única escritura. Al apagar escribe lo que quede.
+     */
+    private static void escribir() {
+        List<Evento> lote = new ArrayList<>(TAMANO_LOTE);
+        StringBuilder texto = new StringBuilder(64 * 1024);
+        while (!apagando) {
+            try {
+                Evento primero = cola.poll(1, TimeUnit.SECONDS);
+                if (primero == null) {
+                    continue;
+                }
+                lote.add(primero);
+            } catch (InterruptedException e) {
+                // Se está apagando el servidor: se sale y se escribe lo pendiente
+                break;
+            }
+            cola.drainTo(lote, TAMANO_LOTE - 1);
+            escribirLote(lote, texto);
+        }
+        while (cola.drainTo(lote, TAMANO_LOTE) > 0) {
+            escribirLote(lote, texto);
+        }
+    }
+
+    private static void escribirLote(List<Evento> lote, StringBuilder texto) {
+        for (Evento evento : lote) {
+            formatear(evento, texto);
+        }
+        System.out.print(texto);
+        System.out.flush();
+        escritos.add(lote.size());
+        lote.clear();
+        texto.setLength(0);
+    }
+
+    private static void formatear(Evento evento, StringBuilder texto) {
+        FORMATO_FECHA.formatTo(Instant.ofEpochMilli(evento.milis).atZone(ZoneId.systemDefault()), texto);
+        if (evento.texto != null) {
+            texto.append(' ').append(evento.texto).append(System.lineSeparator());
+            return;
+        }
+        texto.append(" metodo=").append(evento.metodo)
+                .append(" ruta=").append(evento.url)
+                .append(" estado=").append(evento.estado)
+                .append(" bytes=").append(evento.bytes)
+                .append(" us=").append(evento.nanos / 1000)
+                .append(" sesion=").append(abreviarSesion(evento.sesion))
+                .append(System.lineSeparator());
+        for (String cabecera : evento.cabeceras) {
+            texto.append("    ").append(cabecera).append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Deja solo el principio del identificador de sesión: basta para seguir
+     * una sesión en el registro sin dejar en él la cookie completa.
+     */
+    private static String abreviarSesion(String sesion) {
+        if (sesion == null || sesion.isEmpty()) {
+            return "-";
+        }
+        return sesion.length() <= 8 ? sesion : sesion.substring(0, 8);
+    }
+}
@@ -0,0 +1,79 @@
+package servidor_main;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Representa la respuesta generada para una petición, antes de escribirse en
+ * la conexión.
+ *
+ * <p>
+ * El código de respuesta sigue la convención de
+ * {@link paginas.Cabecera#generarCabecera(int, int, String)}: 200 para éxito,
+ * 300 para redirección y 400 para recurso no encontrado. El cuerpo se guarda
+ * ya codificado en UTF-8, tal como lo generan las plantillas de
+ * {@link paginas.Plantilla}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class Respuesta {
+
+    private final int tipoRespuesta;
+    private final String sessionID;
+    private final byte[] cuerpo;
+    private final boolean textoPlano;
+
+    /**
+     * Crea una respuesta a partir de un HTML.
+     *
+     * @param tipoRespuesta código de respuesta (200, 300 o 400)
+     * @param sessionID identificador de sesión que se enviará en la cookie
+     * @param html contenido HTML de la respuesta
+     */
+    public Respuesta(int tipoRespuesta, String sessionID, String html) {
+        this(tipoRespuesta, sessionID, html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Crea una respuesta con el cuerpo ya codificado.
+     *
+     * @param tipoRespuesta código de respuesta (200, 300 o 400)
+     * @param sessionID identificador de sesión que se enviará en la cookie
+     * @param cuerpo contenido HTML de la respuesta en UTF-8; no se copia, por
+     * lo que no debe modificarse después
+     */
+    public Respuesta(int tipoRespuesta, String sessionID, byte[] cuerpo) {
+        this(tipoRespuesta, sessionID, cuerpo, false);
+    }
+
+    /**
+     * Crea una respuesta con el cuerpo ya codificado, indicando si es texto
+     * plano en lugar de HTML.
+     *
+     * @param tipoRespuesta código de respuesta (200, 300 o 400)
+     * @param sessionID identificador de sesión que se enviará en la cookie
+     * @param cuerpo contenido de la respuesta en UTF-8; no se copia
+     * @param textoPlano si el cuerpo es texto plano, como las métricas
+     */
+    public Respuesta(int tipoRespuesta, String sessionID, byte[] cuerpo, boolean textoPlano) {
+        this.tipoRespuesta = tipoRespuesta;
+        this.sessionID = sessionID;
+        this.cuerpo = cuerpo;
+        this.textoPlano = textoPlano;
+    }
+
+    public int getTipoRespuesta() {
+        return tipoRespuesta;
+    }
+
+    public String getSessionID() {
+        return sessionID;
+    }
+
+    public byte[] getCuerpo() {
+        return cuerpo;
+    }
+
+    public boolean isTextoPlano() {
+        return textoPlano;
+    }
+}
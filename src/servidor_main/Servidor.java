@@ -1,22 +1,24 @@
 package servidor_main;
 
 import config.Configuracion;
+import config.FuentesConfiguracion;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import paginas.*;
+import rutas.*;
 import seguridad.Cifradora;
 import seguridad.Logueadora;
-import utilidades.Comprobaciones;
-import java.io.File;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import seguridad.Origen;
+import seguridad.Persistencia;
+import seguridad.Sesiones;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLSocket;
+import utilidades.AlmacenEstado;
 import seguridad.Keystore;
-import seguridad.Persistencia;
 
 /**
  * Clase principal del servidor de juegos.
@@ -30,25 +32,22 @@ public class Servidor extends Thread {
     // private SSLSocket serverSocketSSL;
     private Socket s;
 
-    private static int adivinaNumeroSecreto = 0;
-    private static int adivinaIntentos = 0;
+    /**
+     * Contenedor de la tabla con las rutas del servidor y sus manejadores.
+     * Los manejadores leen la configuración al crearse, así que la tabla no
+     * se crea hasta que {@code main} ha cargado los argumentos.
+     */
+    private static final class Rutas {
 
-    private static int dadosIntentos = 1;
-    private static int dadosPuntosJugador = 0;
-    private static int dadosPuntosBanca = 0;
-    private static boolean dadosAcabada = false;
+        private static final TablaRutas TABLA = crearRutas();
 
-    private static int pptOpcionElegida;
-    private static int pptOpcionBanca;
-    private static final String[] PTT_OPCIONES_DISPONIBLES = {"Piedra", "Papel", "Tijera"};
-    private static int pptPuntosJugador = 0;
-    private static int pptPuntosBanca = 0;
-    private static int pptIntentos = 1;
+        private Rutas() {
+        }
+    }
 
-    private static final ConcurrentHashMap<String, String> sesiones = new ConcurrentHashMap<>();
-    private static String accion = "";
-    private static String user = "";
-    private static String pass = "";
+    private static final Origen ERROR_ARRANQUE = new Origen(5, "Servidor", "Servidor.main");
+    private static final Origen ERROR_ATENDER = new Origen(5, "Servidor", "Servidor.atender");
+    private static final Origen ERROR_CONEXION = new Origen(4, "Servidor", "Servidor.conexion");
 
     public Servidor(Socket socket) {
         this.s = socket;
@@ -63,6 +62,9 @@ public class Servidor extends Thread {
      *
      * Este método realiza las siguientes operaciones:
      * <ul>
+     * <li>Carga la configuración con los argumentos de la línea de comandos,
+     * con la forma {@code --NOMBRE=valor}, y la valida antes de arrancar nada.
+     * Si hay errores los muestra todos y termina.</li>
      * <li>Inicia un servidor SSL utilizando un {@link SSLServerSocket} y
      * configura la conexión segura.</li>
      * <li>Configura el archivo de logs utilizando
@@ -71,53 +73,115 @@ public class Servidor extends Thread {
      * lo crea si no existe, cifrando la información si es necesario.</li>
      * <li>Imprime información sobre el estado del servidor y el puerto donde
      * está escuchando.</li>
-     * <li>Acepta conexiones de clientes mediante {@link SSLSocket} y crea un
-     * hilo para cada conexión utilizando {@link Servidor}.</li>
+     * <li>Acepta conexiones de clientes mediante {@link SSLSocket} y las
+     * entrega a {@link Servidor} a través del ejecutor creado por
+     * {@link EjecutorConexiones}. Si el ejecutor está saturado se responde con
+     * un 503 y se cierra la conexión.</li>
+     * <li>Si {@link Configuracion#isTLS()}, las conexiones se cifran con el
+     * contexto compartido de {@link Keystore}, que permite reanudar sesiones
+     * TLS. El protocolo se negocia en el hilo que atiende la conexión, no en el
+     * bucle de aceptación.</li>
+     * <li>Si {@link Configuracion#getMotor()} es {@code nio}, delega la red en
+     * el motor no bloqueante {@link MotorNIO} en lugar de usar un
+     * {@link ServerSocket} bloqueante.</li>
      * </ul>
      *
      * En caso de que ocurra una excepción, el método captura el error y lo
      * registra en el archivo de logs.
      *
-     * @param args Argumentos de línea de comandos (no utilizados en este
-     * método).
+     * @param args Argumentos de línea de comandos, que tienen precedencia
+     * sobre el resto de fuentes de la configuración.
      * @throws Exception Si ocurre un error durante la configuración o ejecución
      * del servidor.
      */
     public static void main(String[] args) throws Exception {
+        // La configuración se valida antes que nada, para que un parámetro mal escrito se vea al arrancar
+        try {
+            FuentesConfiguracion.cargarArgumentos(args);
+            Configuracion.validar();
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+
         try {
-            // Se obtiene el socket SSL para el servidor.
-            ServerSocket serverSocket = new ServerSocket(Configuracion.getPuerto());
             System.out.println("Iniciando servidor de juegos...");
 
             // Configuración del archivo log.
             System.out.println("Configurando el archivo log...");
             Logueadora.configurarLogger(); // Inicializar logger al arrancar, todos tienen la misma instancia, sobre el mismo archivo, así nada más se crea un .lck
+            RegistroAccesos.arrancar();
 
-            // Si el archivo de datos no existe, se crea y cifra. Si existe, estará ya cifrado
-            File datos = new File(Configuracion.getRutaArchivoUsuarios());
-            if (!datos.exists()) {
-                System.out.println("Creando y cifrando el archivo de datos..." +  Configuracion.getRutaArchivoUsuarios());
-                datos.createNewFile();
-                Cifradora.cifrarArchivo();
-            }
+            // Se abre el almacén de sesiones y partidas, para que un error en el archivo se vea al arrancar
+            AlmacenEstado.getInstancia();
+            Sesiones.arrancar();
+
+            // Se cargan los usuarios en memoria. Si el archivo de datos no existe se crea vacío
+            Persistencia.cargar();
+
+            // Si está configurado, se ajusta el coste de BCrypt a esta máquina
+            Cifradora.calibrarCoste();
+
+            // Se registran las rutas y se empieza a vigilar el archivo de configuración
+            getRutas();
+            Configuracion.vigilarArchivo();
 
             // Se informa sobre el estado del servidor.
             System.out.println("Servidor online: activo en el puerto " + Configuracion.getPuerto());
             //System.out.println("Visita https://localhost:" + Configuracion.getPuerto());
 
-            // Se aceptan conexiones entrantes y se gestionan en hilos.
+            // Se aceptan conexiones entrantes y se gestionan en el ejecutor configurado.
+            ExecutorService ejecutor = EjecutorConexiones.crear();
+            if (Configuracion.getMotor().equalsIgnoreCase("nio")) {
+                new MotorNIO(ejecutor).iniciar();
+                return;
+            }
+
+            // Se obtiene el socket para el servidor, cifrado si está activado TLS.
+            ServerSocket serverSocket = Configuracion.isTLS()
+                    ? Keystore.getServerSocketSSL()
+                    : new ServerSocket(Configuracion.getPuerto());
             while (true) {
                 Socket s = serverSocket.accept();
-                System.out.println("Cliente conectado desde: " + s.getInetAddress());
+                EstadisticasConexiones.anotarAceptada();
+                if (RegistroAccesos.isDepuracion()) {
+                    RegistroAccesos.depurar("Cliente conectado desde: " + s.getInetAddress());
+                }
 
-                // Aquí debes pasar el socket al hilo o clase que maneja la conexión
-                new Thread(new Servidor(s)).start();
+                try {
+                    ejecutor.execute(new Servidor(s));
+                } catch (RejectedExecutionException e) {
+                    rechazarConexion(s);
+                }
             }
         } catch (IOException e) {
             // En caso de error, se registra en el log con nivel 5.
-            String nombreMetodo = Thread.currentThread().getStackTrace()[1].getMethodName();
-            int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-            Logueadora.grabarError(5, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), "Servidor", lineaError, nombreMetodo);
+            Logueadora.registrar(ERROR_ARRANQUE, e.getMessage());
+        }
+    }
+
+    /**
+     * Responde con un 503 a una conexión que el ejecutor no ha podido aceptar
+     * y la cierra, sin bloquear el bucle de aceptación.
+     *
+     * <p>
+     * Una conexión TLS se cierra sin respuesta: escribir el 503 obligaría a
+     * negociar el protocolo en el hilo de aceptación.</p>
+     *
+     * @param s socket de la conexión rechazada
+     */
+    private static void rechazarConexion(Socket s) {
+        EstadisticasConexiones.anotarRechazada();
+        try (Socket rechazado = s) {
+            if (rechazado instanceof SSLSocket) {
+                return;
+            }
+            rechazado.setSoTimeout(1000);
+            OutputStream salida = rechazado.getOutputStream();
+            salida.write(Cabecera.generarCabeceraNoDisponible().getBytes(StandardCharsets.US_ASCII));
+            salida.flush();
+        } catch (IOException e) {
+            // El cliente ya no está disponible, no hay nada más que hacer.
         }
     }
 
@@ -126,404 +190,183 @@ public class Servidor extends Thread {
      * cliente.
      *
      * <p>
-     * Este método contiene la lógica que gestiona la interacción con el
-     * cliente.
+     * La conexión es persistente (HTTP/1.1 keep-alive): se atienden las
+     * peticiones que llegan por el mismo socket, en orden, hasta que el cliente
+     * pide cerrarla, se supera el tiempo de inactividad
+     * {@link Configuracion#getTiempoKeepAlive()} o se alcanza el máximo de
+     * peticiones por conexión {@link Configuracion#getMaxPeticionesConexion()}.
+     * Las peticiones se analizan byte a byte con {@link AnalizadorHttp}; las
+     * encadenadas (pipelining) quedan en el búfer de lectura y se responden en
+     * el mismo orden en que llegaron.
      * </p>
+     *
+     * <p>
+     * Si un manejador falla se responde con la página de error y la conexión
+     * sigue abierta. Una petición mal formada o demasiado grande también
+     * recibe la página de error, pero después se cierra la conexión.</p>
      */
     @Override
     public void run() {
 
-        try {
-            BufferedReader br = new BufferedReader(new InputStreamReader(s.getInputStream()));
-            PrintWriter pw = new PrintWriter(s.getOutputStream(), true);
-
-            String linea;
-            String metodo = "";
-            String url = "";
-            String html = "";
-            String mensaje = "";
-
-            // Leer la primera línea para obtener el método (GET o POST) y la URL
-            if ((linea = br.readLine()) != null) {
-                System.out.println(linea);
-                String[] metodoSplit = linea.split(" ");
-                if (metodoSplit.length >= 0) {
-                    metodo = metodoSplit[0]; // "GET" o "POST"
-                    url = metodoSplit[1];    // Ruta de la petición
-                }
-            }
-
-            int contentLength = 0; // Longitud del contenido en POST
-            String sessionID = "";
-            int tipoRespuesta = 400; // Por defecto es 404
-
-            // Leer cabeceras
-            while ((linea = br.readLine()) != null && !linea.isEmpty()) {
-                System.out.println(linea); // Depuración
-                if (linea.startsWith("Content-Length:")) {
-                    contentLength = Integer.parseInt(linea.split(": ")[1]);
-                } else if (linea.startsWith("Cookie: ")) {
-                    String[] cookie = linea.substring(8).split("; ");
-                    for (String estaCookie : cookie) {
-                        if (estaCookie.startsWith("sessionID=")) {
-                            sessionID = estaCookie.substring(10);
-                            //System.out.println("***Ya tiene COOKIE");
+        EstadisticasConexiones.anotarAbierta();
+        try (Socket socket = s;
+                InputStream entrada = socket.getInputStream();
+                OutputStream salida = new BufferedOutputStream(socket.getOutputStream(), 16 * 1024)) {
+
+            socket.setSoTimeout(Configuracion.getTiempoKeepAlive() * 1000);
+            AnalizadorHttp analizador = new AnalizadorHttp();
+            byte[] buffer = new byte[Configuracion.getTamanoBufer()];
+            int inicio = 0;
+            int fin = 0;
+            int atendidas = 0;
+            boolean seguir = true;
+
+            while (seguir) {
+                // Se entregan bytes al analizador hasta tener una petición completa.
+                // Lo que sobre en el búfer es el principio de la siguiente petición.
+                try {
+                    while (!analizador.isCompleta()) {
+                        if (inicio == fin) {
+                            fin = entrada.read(buffer);
+                            inicio = 0;
+                            if (fin < 0) {
+                                return; // El cliente ha cerrado la conexión
+                            }
                         }
+                        inicio += analizador.analizar(buffer, inicio, fin);
                     }
+                } catch (IllegalArgumentException e) {
+                    // Petición mal formada o demasiado grande: no se sabe dónde
+                    // empieza la siguiente, así que se responde y se cierra
+                    escribirRespuesta(salida, respuestaError(""), false);
+                    return;
                 }
-            }
-
-            // **Manejo de peticiones GET**
-            //Si esta la cookie en sesiones guardada, busco por usuario y si es igual que la que está guardada se sirve la página, sino se da una redireccion a la principal '/'
-            if (metodo.equals("GET")) {
-                switch (url) {
-                    case "/":
-                        tipoRespuesta = 200;
-                        html = PaginaLogin.getPagina();
-                        break;
-                    case "/index":
-                        tipoRespuesta = sesiones.get(user).equals(sessionID) ? 200 : 300;
-                        html = PaginaIndex.getPagina();
-                        break;
-                    case "/logout":
-                        tipoRespuesta = sesiones.get(user).equals(sessionID) ? 200 : 300;
-                        sessionID = ""; // Dejamos la sesionID vacia para que la cabecera la borre en el método
-                        html = PaginaLogout.getPagina();
-                        break;
-                    case "/adivina":
-                        tipoRespuesta = sesiones.get(user).equals(sessionID) ? 200 : 300;
-                        html = PaginaAdivina.getPagina();
-                        break;
-                    case "/dados":
-                        tipoRespuesta = sesiones.get(user).equals(sessionID) ? 200 : 300;
-                        html = PaginaDado.getPagina();
-                        break;
-                    case "/ppt":
-                        tipoRespuesta = sesiones.get(user).equals(sessionID) ? 200 : 300;
-                        html = PaginaPPT.getPagina();
-                        break;
-                    default:
-                        html = PaginaError.getPagina();
-                        break;
+                Peticion peticion = analizador.getPeticion();
+                analizador.reiniciar();
+                long recibida = System.nanoTime();
+
+                atendidas++;
+                seguir = peticion.isKeepAlive() && atendidas < Configuracion.getMaxPeticionesConexion();
+
+                Respuesta respuesta;
+                try {
+                    respuesta = procesar(peticion);
+                } catch (Exception e) {
+                    Logueadora.registrar(ERROR_ATENDER, e.toString());
+                    respuesta = respuestaError(peticion.getSessionID());
                 }
-                pw.println(Cabecera.generarCabecera(html.length(), tipoRespuesta, sessionID));
-                pw.println(html);
-            } // **Manejo de peticiones POST (Formulario)**
-            else if (metodo.equals("POST")) {
-
-                switch (url) {
-                    case "/": {
-                        String[] arrayDatos;
-
-                        // Leer exactamente `Content-Length` bytes del cuerpo
-                        if (contentLength > 0) {
-                            char[] buffer = new char[contentLength];
-                            br.read(buffer, 0, contentLength);
-                            String cuerpo = new String(buffer);
-                            System.out.println("Cuerpo recibido: " + cuerpo); // Depuración
-
-                            if (cuerpo.contains("user=") && cuerpo.contains("pass=")) {
-
-                                arrayDatos = cuerpo.split("&");
-                                user = URLDecoder.decode(arrayDatos[0].substring(5), StandardCharsets.UTF_8);
-                                pass = URLDecoder.decode(arrayDatos[1].substring(5), StandardCharsets.UTF_8);
-                                accion = arrayDatos[2].substring(7);
-
-                                String texto = Comprobaciones.comprobarDatos(user, pass);
-
-                                if (texto.equals("OK")) {
-                                  System.out.println("********comprobaciones ok");
-
-                                    if (accion.equals("login")) {
-                                           System.out.println("********hay logueo ok");
-
-                                        if (Persistencia.loginUsuario(user, pass)) {
-                                            System.out.println("********se ha logueado ok");
-                                            // Si sesionID esta vacia (osea si es "" aun), o la key no existe o no coincide el token porque se haya cambiado, pues se hace una cookie nueva y se guarda
-                                            if (sessionID.isEmpty() || !sesiones.containsKey(user) || !sesiones.get(user).equals(sessionID)) {
-                                                System.out.println("Cookie modificada en el usuario: " + user);
-                                                sessionID = UUID.randomUUID().toString();    // Actualiza la cookie por si no tiene o por si está corrupta, para no seguir metiendo más.
-                                                sesiones.put(user, sessionID);       // Solo acepta un par:  1 usuario -> 1 cookie, si se cambia o modifica se borra y se guarda una nueva.      
-                                                System.out.println("*********Creando cookie " + sessionID);
-                                            }
-                                            // Guardamos la cookie en sesiones
-                                            html = PaginaIndex.getPagina();
-
-                                        } else {
-                                            html = PaginaLogin.getPagina().replaceAll("<!--ERRORES-->", "Error: usuario o contraseña incorrectos.");
-                                        }
-                                    } else if (accion.equals("crear")) {
-                                        if (Persistencia.guardarUsuario(user, pass)) {
-                                            html = PaginaLogin.getPagina().replaceAll("<!--ERRORES-->", "¡Felicidades! Se ha creado la cuenta correctamente.");
-                                            html = html.replaceAll("style=\"color: red;", "style=\"color: green;");
-                                        } else {
-                                            html = PaginaLogin.getPagina().replaceAll("<!--ERRORES-->", "Error: el usuario ya existe.");
-                                        }
-                                    }
-
-                                } else {
-                                    html = PaginaLogin.getPagina().replaceAll("<!--ERRORES-->", texto);
-                                }
-                            }
-                        }
-                        pw.println(Cabecera.generarCabecera(html.length(), 200, sessionID));
-                        pw.println(html);
-                        break;
-                    }
-
-                    //--------------------------------- JUEGO ADIVINA -------------------------------//
-                    case "/adivina": {
-                        tipoRespuesta = sesiones.get(user).equals(sessionID) ? 200 : 300;
-
-                        if (adivinaNumeroSecreto == 0) {
-                            adivinaNumeroSecreto = (int) (Math.random() * 100) + 1;
-                            adivinaIntentos = 0;
-                        }
-                        String[] arrayDatos;
-                        String numeroAdivinado = "";
-                        // Leer exactamente `Content-Length` bytes del cuerpo
-                        if (contentLength > 0) {
-                            char[] buffer = new char[contentLength];
-                            br.read(buffer, 0, contentLength);
-                            String cuerpo = new String(buffer);
-                            System.out.println("Cuerpo recibido: " + cuerpo); // Depuración
-
-                            if (cuerpo.contains("numero=")) {
-
-                                arrayDatos = cuerpo.split("=");
-                                if (arrayDatos.length == 2) {
-                                    numeroAdivinado = cuerpo.split("=")[1];
-                                }
-
-                            }
-                        }
-                        if (!numeroAdivinado.equals("")) {
-                            int numero = 0;
-
-                            try {
-                                numero = Integer.parseInt(numeroAdivinado);
-                                adivinaIntentos++;
-
-                                if (numero == adivinaNumeroSecreto) {
-                                    mensaje = "¡Felicidades! Adivinaste el número en " + adivinaIntentos + " intentos <br>";
-                                    mensaje += "El número era : " + adivinaNumeroSecreto;
-                                    adivinaNumeroSecreto = 0; // Reiniciar el juego
-
-                                } else if (adivinaIntentos >= 10) {
-                                    mensaje = "Lo siento, agotaste tus 10 intentos. El número era " + adivinaNumeroSecreto;
-                                    adivinaNumeroSecreto = 0; // Reiniciar el juego
-
-                                } else if (numero < adivinaNumeroSecreto) {
-                                    mensaje = "El número es MAYOR <br>";
-                                    mensaje += "Intentos restantes: " + (10 - adivinaIntentos);
-                                } else {
-                                    mensaje = "El número es MENOR <br>";
-                                    mensaje += "Intentos restantes: " + (10 - adivinaIntentos);
-
-                                }
-                            } catch (NumberFormatException e) {
-                                StackTraceElement elemento = e.getStackTrace()[0];
-                                Logueadora.grabarError(4, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), url.substring(1), elemento.getLineNumber(), numeroAdivinado);
-                            }
-
-                        } else {
-                            mensaje = "No se ha enviado ningún número, no te hagas el listillo... <br>";
-                            mensaje += "Intentos restantes: " + (10 - adivinaIntentos);
-
-                            int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-                            Logueadora.grabarError(4, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), url.substring(1), lineaError, numeroAdivinado);
-                        }       // Reemplaza el marcador "<p>resultado</p>" en la página HTML con el mensaje del juego
-                        html = PaginaAdivina.getPagina().replaceAll("<!--RESULTADO-->", mensaje);
-                        if (adivinaIntentos >= 10) {
-                            html = html.replaceAll("Enviar", "Volver a intentar");
-                            html = html.replaceAll(" <input type=\"number\" name=\"numero\" min=\"1\" max=\"100\" required>\n", "");
-                        }
-                        pw.println(Cabecera.generarCabecera(html.length(), tipoRespuesta, sessionID));
-                        pw.println(html);
-                        break;
-                    }
-
-                    //--------------------------------- JUEGO DADOS -------------------------------//
-                    case "/dados":
-                        tipoRespuesta = sesiones.get(user).equals(sessionID) ? 200 : 300;
-
-                        if (dadosIntentos == 1) {
-                            dadosPuntosJugador = 0;
-                            dadosPuntosBanca = 0;
-                            dadosAcabada = false;
-                        }
-                        if (contentLength > 0) {
-                            char[] buffer = new char[contentLength];
-                            br.read(buffer, 0, contentLength);
-                            String cuerpo = new String(buffer);
-                            System.out.println("Cuerpo recibido: " + cuerpo); // Depuración
-                        }
-                        int randomJugador = (int) ((Math.random() * 6) + 1);
-                        int randombanca = (int) ((Math.random() * 6) + 1);
-                        if (randomJugador > randombanca) {
-                            dadosPuntosJugador++;
-                            mensaje = "¡Punto para el Jugador!<br>";
-                            mensaje += "Ronda: " + dadosIntentos;
-                            if (dadosIntentos != 5) {
-                                dadosIntentos++;
-                            }
-
-                        } else if (randomJugador < randombanca) {
-                            dadosPuntosBanca++;
-                            mensaje = "¡Punto para la banca!<br>";
-                            mensaje += "Ronda: " + dadosIntentos;
-                            if (dadosIntentos != 5) {
-                                dadosIntentos++;
-                            }
-
-                        } else {
-                            mensaje = "¡Empate!<br>";
-                            mensaje += "Ronda: " + dadosIntentos;
-
-                        }
-                        if (dadosIntentos == 5) {
-                            if (dadosPuntosJugador != dadosPuntosBanca) {
-                                mensaje += dadosPuntosJugador > dadosPuntosBanca ? "<br>¡Felicidades! Has ganado a la banca" : "<br>Lo siento, has perdido";
-                                dadosAcabada = true;
-                                dadosIntentos = 1;
-                            }
-                        }
-                        html = PaginaDado.getPagina().replaceAll("<!--RESULTADO-->", mensaje + "<br>");
-                        html = html.replaceAll("<!--RESULTADO_JUG-->", "Has sacado un: " + randomJugador + "<br><br>");
-                        html = html.replaceAll("<!--RESULTADO_BANCA-->", "La banca saca un: " + randombanca + "<br><br>");
-                        html = html.replaceAll("<!--puntosJug-->", "" + dadosPuntosJugador);
-                        html = html.replaceAll("<!--puntosBanca-->", "" + dadosPuntosBanca);
-                        if (dadosAcabada) {
-                            html = html.replaceAll("Lanzar", "Nueva partida");
-                        }
-                        pw.println(Cabecera.generarCabecera(html.length(), tipoRespuesta, sessionID));
-                        pw.println(html);
-                        break;
-
-                    //--------------------------------- JUEGO PPT -------------------------------//
-                    case "/ppt": {
-                        tipoRespuesta = sesiones.get(user).equals(sessionID) ? 200 : 300;
-
-                        if (pptIntentos == 1) {
-                            pptPuntosJugador = 0;
-                            pptPuntosBanca = 0;
-                        }
-                        String[] arrayDatos;
-                        String opcionElegida = "";
-                        if (contentLength > 0) {
-                            char[] buffer = new char[contentLength];
-                            br.read(buffer, 0, contentLength);
-                            String cuerpo = new String(buffer);
-                            System.out.println("Cuerpo recibido: " + cuerpo); // Depuración
-
-                            if (cuerpo.contains("opcion=")) {
-                                arrayDatos = cuerpo.split("=");
-                                if (arrayDatos.length == 2) {
-                                    opcionElegida = arrayDatos[1];
-                                }
-                            }
-                        }
-                        if (opcionElegida.equals("0") || opcionElegida.equals("1") || opcionElegida.equals("2")) {
-                            pptOpcionBanca = (int) (Math.random() * 3);
-                            try {
-
-                                pptOpcionElegida = Integer.parseInt(opcionElegida);
-                                switch (pptOpcionElegida) {
-
-                                    case (0):
-                                        if (pptOpcionBanca == 1) {
-                                            pptPuntosBanca++;
-                                            mensaje = "¡Punto para la banca!<br>";
-                                            mensaje += "Ronda: " + pptIntentos;
-                                            pptIntentos++;
-
-                                        } else if (pptOpcionBanca == 2) {
-                                            pptPuntosJugador++;
-                                            mensaje = "¡Punto para el Jugador!<br>";
-                                            mensaje += "Ronda: " + pptIntentos;
-                                            pptIntentos++;
-                                        }
-                                        break;
-                                    case (1):
-                                        if (pptOpcionBanca == 0) {
-                                            pptPuntosJugador++;
-                                            mensaje = "¡Punto para el Jugador!<br>";
-                                            mensaje += "Ronda: " + pptIntentos;
-                                            pptIntentos++;
-                                        } else if (pptOpcionBanca == 2) {
-                                            pptPuntosBanca++;
-                                            mensaje = "¡Punto para la banca!<br>";
-                                            mensaje += "Ronda: " + pptIntentos;
-                                            pptIntentos++;
-                                        }
-                                        break;
-                                    case (2):
-                                        if (pptOpcionBanca == 0) {
-                                            pptPuntosBanca++;
-                                            mensaje = "¡Punto para la banca!<br>";
-                                            mensaje += "Ronda: " + pptIntentos;
-                                            pptIntentos++;
-                                        } else if (pptOpcionBanca == 1) {
-                                            pptPuntosJugador++;
-                                            mensaje = "¡Punto para el Jugador!<br>";
-                                            mensaje += "Ronda: " + pptIntentos;
-                                            pptIntentos++;
-                                        }
-                                        break;
-                                }
-                            } catch (NumberFormatException e) {
-                                // Este error está en several porque no debería de saltar nunca, a no ser que haya un fallo en el casteo.
-                                StackTraceElement elemento = e.getStackTrace()[0];
-                                Logueadora.grabarError(4, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), url.substring(1), elemento.getLineNumber(), opcionElegida);
-                            }
-                            if (pptOpcionElegida == pptOpcionBanca) {
-                                mensaje = "¡Empate!<br>";
-                                mensaje += "Ronda: " + pptIntentos;
-                            }
-
-                            html = PaginaPPT.getPagina();
-                            if (pptIntentos >= 5) {
-                                if (pptPuntosJugador != pptPuntosBanca) {
-                                    html = html.replaceAll("<button type=\"submit\" name=\"opcion\" value=\"0\">Piedra</button><button type=\"submit\" name=\"opcion\" value=\"1\">Papel</button>", pptPuntosJugador > pptPuntosBanca ? "<br><h3 style=\"color: green;\">¡Felicidades! Has ganado a la banca</h3>" : "<br><h3 style=\"color: red;\">Lo siento, has perdido</h3>");
-                                    html = html.replaceAll("<button type=\"submit\" name=\"opcion\" value=\"2\">Tijera</button>", "<button type=\"submit\" name=\"opcion\" value=\"4\">Volver a intentar</button>");
-                                    pptIntentos = 1;
-                                }
-                            }
+                long bytes = escribirRespuesta(salida, respuesta, seguir);
+                RegistroAccesos.registrar(peticion, respuesta.getTipoRespuesta(), bytes, System.nanoTime() - recibida);
+            }
 
-                            html = html.replaceAll("<!--RESULTADO_JUG-->", PTT_OPCIONES_DISPONIBLES[pptOpcionElegida]);
-                            html = html.replaceAll("<!--RESULTADO_BANCA-->", PTT_OPCIONES_DISPONIBLES[pptOpcionBanca]);
+        } catch (SocketTimeoutException e) {
+            // Conexión inactiva más tiempo del permitido, se cierra sin más.
+        } catch (Exception e) {
+            Logueadora.registrar(ERROR_CONEXION, e.toString());
+        } finally {
+            EstadisticasConexiones.anotarCerrada();
+        }
+    }
 
-                            html = html.replaceAll("<!--RESULTADO-->", mensaje + "<br>");
-                            html = html.replaceAll("<!--puntosJug-->", "" + pptPuntosJugador);
-                            html = html.replaceAll("<!--puntosBanca-->", "" + pptPuntosBanca);
+    /**
+     * Escribe la respuesta en la conexión y vacía el búfer de salida.
+     *
+     * <p>
+     * La longitud del contenido es la de los bytes UTF-8 del HTML, ya
+     * que con conexiones persistentes el cliente la usa para saber dónde
+     * termina cada respuesta. Las redirecciones se envían sin cuerpo.
+     * </p>
+     *
+     * @param salida flujo de salida de la conexión
+     * @param respuesta respuesta a enviar
+     * @param keepAlive si la conexión seguirá abierta tras esta respuesta
+     * @return bytes escritos, cabecera incluida
+     * @throws IOException si ocurre un error de escritura
+     */
+    private static long escribirRespuesta(OutputStream salida, Respuesta respuesta, boolean keepAlive) throws IOException {
+        long bytes = 0;
+        for (ByteBuffer buffer : codificarRespuesta(respuesta, keepAlive)) {
+            salida.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            bytes += buffer.remaining();
+        }
+        salida.flush();
+        return bytes;
+    }
 
-                            pw.println(Cabecera.generarCabecera(html.length(), tipoRespuesta, sessionID));
-                            pw.println(html);
-                        } else {
-                            html = PaginaPPT.getPagina();
-                            pw.println(Cabecera.generarCabecera(html.length(), tipoRespuesta, sessionID));
-                            pw.println(html);
+    /**
+     * Codifica la respuesta en bytes listos para enviarse: la cabecera y el
+     * cuerpo en dos búferes, de forma que los motores que lo admiten puedan
+     * escribirlos con una única escritura agrupada. La cabecera se compone a
+     * partir de trozos ya codificados y el cuerpo se envía sin copiarlo, de
+     * modo que las páginas fijas no se vuelven a codificar en cada petición.
+     *
+     * @param respuesta respuesta a codificar
+     * @param keepAlive si la conexión seguirá abierta tras esta respuesta
+     * @return la cabecera y el cuerpo, en ese orden
+     */
+    static ByteBuffer[] codificarRespuesta(Respuesta respuesta, boolean keepAlive) {
+        byte[] cuerpo = respuesta.getTipoRespuesta() == 300
+                ? new byte[0]
+                : respuesta.getCuerpo();
+        BufferSalida cabecera = BufferSalida.delHilo();
+        Cabecera.escribirCabecera(cabecera, cuerpo.length, respuesta.getTipoRespuesta(), respuesta.getSessionID(), keepAlive, respuesta.isTextoPlano());
+        return new ByteBuffer[]{ByteBuffer.wrap(cabecera.toByteArray()), ByteBuffer.wrap(cuerpo)};
+    }
 
-                            int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-                            Logueadora.grabarError(4, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), url.substring(1), lineaError, opcionElegida);
+    /**
+     * Registra los manejadores de todas las rutas del servidor. Las rutas no
+     * registradas se responden con la página de error.
+     *
+     * @return la tabla de rutas
+     */
+    private static TablaRutas crearRutas() {
+        TablaRutas rutas = new TablaRutas(peticion -> respuestaError(peticion.getSessionID()));
+
+        rutas.registrar("GET", "/", new ManejadorPagina(PaginaLogin.getBytes(), false))
+                .registrar("GET", "/index", new ManejadorPagina(PaginaIndex.getBytes(), true))
+                .registrar("GET", "/logout", new ManejadorLogout())
+                .registrar("GET", "/adivina", new ManejadorPagina(PaginaAdivina.getBytes(), true))
+                .registrar("GET", "/dados", new ManejadorPagina(PaginaDado.getBytes(), true))
+                .registrar("GET", "/ppt", new ManejadorPagina(PaginaPPT.getBytes(), true))
+                .registrar("GET", "/metrics", new ManejadorMetricas(rutas));
+
+        rutas.registrar("POST", "/", new ManejadorLogin())
+                .registrar("POST", "/adivina", new ManejadorAdivina())
+                .registrar("POST", "/dados", new ManejadorDados())
+                .registrar("POST", "/ppt", new ManejadorPPT());
+        return rutas;
+    }
 
-                        }
-                        break;
-                    }
-                    default:
-                        break;
-                }
-            }
+    /**
+     * Devuelve la tabla de rutas del servidor, por ejemplo para añadir
+     * observadores que midan el tiempo de cada ruta.
+     *
+     * @return la tabla de rutas
+     */
+    public static TablaRutas getRutas() {
+        return Rutas.TABLA;
+    }
 
-            // Cierro flujos y socketSSL
-            br.close();
-            pw.close();
-            s.close();
+    /**
+     * Atiende una petición ya leída despachándola al manejador de su ruta.
+     *
+     * @param peticion petición a atender
+     * @return la respuesta a enviar al cliente
+     * @throws Exception si ocurre un error al atender la petición
+     */
+    static Respuesta procesar(Peticion peticion) throws Exception {
+        return Rutas.TABLA.despachar(peticion);
+    }
 
-        } catch (Exception e) {
-            System.out.println("Error en el sistema: " + e.getMessage());
-            // int lineaError = new Exception().getStackTrace()[0].getLineNumber();
-            // Logueadora.grabarError(5, LocalDateTime.now().format(DateTimeFormatter.ofPattern(Configuracion.getFormatoFechaHoraLog())), "Sistema", lineaError, e.getMessage());
-        }
+    /**
+     * Respuesta con la página de error, para las rutas que no existen, las
+     * peticiones mal formadas y los errores al atender una petición.
+     *
+     * @param sessionID identificador de sesión de la petición, o vacío si no
+     * se conoce
+     * @return la respuesta de error
+     */
+    static Respuesta respuestaError(String sessionID) {
+        return new Respuesta(400, sessionID, PaginaError.getBytes());
     }
 }
@@ -0,0 +1,100 @@
+package utilidades;
+
+import config.Configuracion;
+
+/**
+ * Almacén de estado clave-valor en el que se guardan las sesiones y las
+ * partidas.
+ *
+ * <p>
+ * Las claves son cadenas y los valores, bloques de bytes que el almacén no
+ * interpreta; cada llamador codifica su propio estado. Cada entrada puede
+ * tener un instante de caducidad a partir del cual se da por borrada. Los
+ * arrays que se guardan o se devuelven no se copian y no deben modificarse
+ * después.</p>
+ *
+ * <p>
+ * Hay dos implementaciones, que se eligen con
+ * {@link Configuracion#getAlmacenEstado()}:</p>
+ * <ul>
+ * <li>{@code memoria}: {@link AlmacenEstadoMemoria}, una tabla en memoria del
+ * proceso. Es la opción por defecto y se comporta como hasta ahora.</li>
+ * <li>{@code mapeado}: {@link AlmacenEstadoMapeado}, un archivo mapeado en
+ * memoria que sobrevive a los reinicios y que pueden compartir varios
+ * procesos de la misma máquina.</li>
+ * </ul>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public interface AlmacenEstado {
+
+    /**
+     * Lee el valor de una clave.
+     *
+     * @param clave clave de la entrada
+     * @return el valor guardado, o {@code null} si no existe o ha caducado
+     */
+    byte[] leer(String clave);
+
+    /**
+     * Guarda el valor de una clave, sustituyendo el que hubiera.
+     *
+     * @param clave clave de la entrada
+     * @param valor valor a guardar
+     * @param caduca instante de caducidad en milisegundos, o 0 si no caduca
+     */
+    void escribir(String clave, byte[] valor, long caduca);
+
+    /**
+     * Sustituye el valor de una clave solo si sigue siendo el que se leyó.
+     *
+     * <p>
+     * La comparación es de identidad con el array devuelto por
+     * {@link #leer(String)} y es atómica dentro del proceso.</p>
+     *
+     * @param clave clave de la entrada
+     * @param esperado valor leído antes, o {@code null} si no existía
+     * @param nuevo valor a guardar
+     * @param caduca instante de caducidad en milisegundos, o 0 si no caduca
+     * @return {@code true} si se ha guardado el valor nuevo
+     */
+    boolean reemplazar(String clave, byte[] esperado, byte[] nuevo, long caduca);
+
+    /**
+     * Borra una clave.
+     *
+     * @param clave clave de la entrada
+     */
+    void borrar(String clave);
+
+    /**
+     * Indica si otros procesos o un reinicio pueden ver lo que se guarda, y
+     * por tanto si merece la pena guardar estado que el proceso ya tiene en
+     * memoria por otra vía.
+     *
+     * @return {@code true} si el almacén es compartido o persistente
+     */
+    boolean isCompartido();
+
+    /**
+     * Devuelve el almacén configurado, que se crea la primera vez que se pide.
+     *
+     * @return el almacén de estado del proceso
+     */
+    static AlmacenEstado getInstancia() {
+        return Instancia.ALMACEN;
+    }
+
+    /**
+     * Contenedor de la instancia, para crearla solo cuando se usa.
+     */
+    final class Instancia {
+
+        private static final AlmacenEstado ALMACEN = Configuracion.getAlmacenEstado().equalsIgnoreCase("mapeado")
+                ? AlmacenEstadoMapeado.abrir()
+                : new AlmacenEstadoMemoria();
+
+        private Instancia() {
+        }
+    }
+}
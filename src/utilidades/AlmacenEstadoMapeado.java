@@ -0,0 +1,630 @@
+package utilidades;
+
+import config.Configuracion;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import seguridad.Logueadora;
+import seguridad.Origen;
+
+/**
+ * {@link AlmacenEstado} sobre un archivo mapeado en memoria, que conserva el
+ * estado entre reinicios y que pueden compartir varios procesos de la misma
+ * máquina abriendo el mismo archivo.
+ *
+ * <p>
+ * El archivo es un registro en el que solo se añade: una cabecera con el
+ * final de los datos y un número de generación, seguida de un registro por
+ * escritura o borrado. Cada proceso mantiene un índice de la posición del
+ * último registro de cada clave y, cuando el final del archivo avanza porque
+ * otro proceso ha escrito, lee solo los registros nuevos.</p>
+ *
+ * <p>
+ * Las escrituras no tocan el archivo: quedan pendientes en memoria y un hilo
+ * en segundo plano las añade por lotes cada
+ * {@link Configuracion#getEsperaAlmacenEstado()} milisegundos, con un único
+ * bloqueo del archivo por lote para excluir a los demás procesos. Si una clave
+ * se escribe varias veces antes del lote solo se guarda la última. Las
+ * lecturas se sirven desde una caché cercana de hasta
+ * {@link Configuracion#getMaxCacheEstado()} entradas, que se invalida clave a
+ * clave al ver registros de otros procesos; comprobar si los hay cuesta leer
+ * dos valores de la cabecera.</p>
+ *
+ * <p>
+ * Cuando el archivo se llena, el proceso que va a escribir lo compacta en el
+ * sitio dejando solo la última versión viva de cada clave. Mientras lo hace
+ * la generación es impar; los demás procesos esperan a que vuelva a ser par y
+ * entonces vuelven a leer el archivo entero. Si un proceso muere a mitad de
+ * una compactación, los datos no son fiables y el archivo se vacía: lo hace
+ * el siguiente proceso que lo abra o el primero que, tras esperar un segundo
+ * a que la generación vuelva a ser par, consiga bloquearlo.</p>
+ *
+ * <p>
+ * Mientras otro proceso compacta, un registro leído puede contener cualquier
+ * cosa hasta que se comprueba la generación. Por eso las longitudes de cada
+ * registro se comprueban antes de usarlas y un registro incoherente se trata
+ * como un motivo para volver a leer, no como un error.</p>
+ *
+ * <p>
+ * {@link #reemplazar(String, byte[], byte[], long)} es atómico dentro del
+ * proceso. Entre procesos gana la última escritura que llega al archivo.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class AlmacenEstadoMapeado implements AlmacenEstado {
+
+    private static final Origen ERROR_ESCRIBIR = new Origen(5, "Servidor", "AlmacenEstadoMapeado.volcar");
+
+    private static final int MAGICO = 0x45535431;
+    private static final int VERSION = 1;
+
+    // Cabecera: mágico (0), versión (4), generación (8), final de los datos (16)
+    private static final int POS_GENERACION = 8;
+    private static final int POS_FIN = 16;
+    private static final int DATOS = 64;
+
+    // Registro: longitud total, caducidad, longitud de la clave, clave, longitud del valor o BORRADO, valor
+    private static final int CABECERA_REGISTRO = 4 + 8 + 2 + 4;
+    private static final int BORRADO = -1;
+
+    /**
+     * Tiempo que se espera a que otro proceso termine de compactar antes de
+     * comprobar, con el archivo bloqueado, si ha muerto a mitad.
+     */
+    private static final long NANOS_ESPERA_COMPACTACION = TimeUnit.SECONDS.toNanos(1);
+
+    private static final VarHandle LARGO = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    /**
+     * Marca de la caché para una clave que no existe en el archivo.
+     */
+    private static final Entrada AUSENTE = new Entrada(null, 0);
+
+    private final FileChannel canal;
+    private final MappedByteBuffer mapa;
+    private final int capacidad;
+    private final long espera;
+    private final int maxCache;
+
+    private final ConcurrentHashMap<String, Entrada> cache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entrada> pendientes = new ConcurrentHashMap<>();
+
+    // Protegidos por el monitor del almacén
+    private HashMap<String, Integer> indice = new HashMap<>();
+    private volatile long leidoHasta = DATOS;
+    private volatile long generacionLeida = -1;
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder registros = new LongAdder();
+    private final LongAdder compactaciones = new LongAdder();
+
+    private final Thread escritor;
+    private volatile boolean apagando = false;
+
+    /**
+     * Valor de una clave y su caducidad. Un valor {@code null} indica que la
+     * clave está borrada.
+     */
+    private static final class Entrada {
+
+        final byte[] valor;
+        final long caduca;
+
+        Entrada(byte[] valor, long caduca) {
+            this.valor = valor;
+            this.caduca = caduca;
+        }
+
+        byte[] vigente(long ahora) {
+            return caduca != 0 && caduca <= ahora ? null : valor;
+        }
+    }
+
+    /**
+     * Abre el archivo configurado en {@link Configuracion#getRutaAlmacenEstado()}
+     * y arranca el hilo que escribe los lotes.
+     *
+     * @return el almacén abierto
+     * @throws UncheckedIOException si no se puede abrir o mapear el archivo
+     */
+    public static AlmacenEstadoMapeado abrir() {
+        try {
+            return new AlmacenEstadoMapeado(Configuracion.getRutaAlmacenEstado(),
+                    Configuracion.getTamanoAlmacenEstado() * 1024 * 1024,
+                    Configuracion.getEsperaAlmacenEstado(),
+                    Configuracion.getMaxCacheEstado());
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se puede abrir el almacén de estado", e);
+        }
+    }
+
+    /**
+     * Abre o crea un almacén en un archivo concreto y arranca el hilo que
+     * escribe los lotes.
+     *
+     * @param ruta ruta del archivo
+     * @param tamano tamaño en bytes si el archivo no existe
+     * @param espera milisegundos entre lotes
+     * @param maxCache número máximo de entradas de la caché cercana
+     * @throws IOException si no se puede abrir o mapear el archivo
+     */
+    public AlmacenEstadoMapeado(String ruta, int tamano, long espera, int maxCache) throws IOException {
+        this.canal = FileChannel.open(Paths.get(ruta),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.espera = espera;
+        this.maxCache = Math.max(1, maxCache);
+        FileLock bloqueo = canal.lock(0, DATOS, false);
+        try {
+            // Si el archivo ya existe se respeta su tamaño, para que todos los procesos mapeen lo mismo
+            long existente = canal.size();
+            this.capacidad = (int) (existente >= DATOS ? existente : Math.max(tamano, 2 * DATOS));
+            this.mapa = canal.map(FileChannel.MapMode.READ_WRITE, 0, capacidad);
+            if (mapa.getInt(0) != MAGICO) {
+                mapa.putInt(0, MAGICO);
+                mapa.putInt(4, VERSION);
+                LARGO.setRelease(mapa, POS_FIN, (long) DATOS);
+                LARGO.setRelease(mapa, POS_GENERACION, 0L);
+            } else if ((generacion() & 1) != 0) {
+                vaciarCompactacionInterrumpida();
+            }
+            synchronized (this) {
+                sincronizar();
+            }
+        } finally {
+            bloqueo.release();
+        }
+
+        escritor = new Thread(this::escribir, "estado-escritor");
+        escritor.setDaemon(true);
+        escritor.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apagando = true;
+            LockSupport.unpark(escritor);
+            try {
+                escritor.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "estado-apagado"));
+    }
+
+    @Override
+    public byte[] leer(String clave) {
+        comprobarCambios();
+        Entrada entrada = cache.get(clave);
+        if (entrada != null) {
+            aciertos.increment();
+        } else {
+            fallos.increment();
+            entrada = cargar(clave);
+        }
+        return entrada.vigente(System.currentTimeMillis());
+    }
+
+    @Override
+    public void escribir(String clave, byte[] valor, long caduca) {
+        anotar(clave, new Entrada(valor, caduca));
+    }
+
+    @Override
+    public boolean reemplazar(String clave, byte[] esperado, byte[] nuevo, long caduca) {
+        comprobarCambios();
+        boolean[] guardado = new boolean[1];
+        cache.compute(clave, (k, actual) -> {
+            // Si la clave no está en la caché no se puede comparar: el llamador la volverá a leer
+            if (actual == null || actual.vigente(System.currentTimeMillis()) != esperado) {
+                return actual;
+            }
+            Entrada entrada = new Entrada(nuevo, caduca);
+            pendientes.put(k, entrada);
+            guardado[0] = true;
+            return entrada;
+        });
+        if (guardado[0]) {
+            LockSupport.unpark(escritor);
+        }
+        return guardado[0];
+    }
+
+    @Override
+    public void borrar(String clave) {
+        anotar(clave, new Entrada(null, 0));
+    }
+
+    @Override
+    public boolean isCompartido() {
+        return true;
+    }
+
+    /**
+     * @return lecturas servidas por la caché cercana
+     */
+    public long getAciertos() {
+        return aciertos.sum();
+    }
+
+    /**
+     * @return lecturas que han tenido que ir al archivo
+     */
+    public long getFallos() {
+        return fallos.sum();
+    }
+
+    /**
+     * @return lotes escritos en el archivo
+     */
+    public long getLotes() {
+        return lotes.sum();
+    }
+
+    /**
+     * @return registros escritos en el archivo
+     */
+    public long getRegistros() {
+        return registros.sum();
+    }
+
+    /**
+     * @return compactaciones del archivo hechas por este proceso
+     */
+    public long getCompactaciones() {
+        return compactaciones.sum();
+    }
+
+    /**
+     * @return bytes ocupados del archivo
+     */
+    public long getOcupado() {
+        return (long) LARGO.getAcquire(mapa, POS_FIN);
+    }
+
+    /**
+     * @return tamaño del archivo en bytes
+     */
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    /**
+     * Deja una escritura pendiente, visible ya para este proceso, y avisa al
+     * hilo escritor.
+     */
+    private void anotar(String clave, Entrada entrada) {
+        pendientes.put(clave, entrada);
+        cache.put(clave, entrada);
+        recortarCache();
+        LockSupport.unpark(escritor);
+    }
+
+    /**
+     * Lee los registros nuevos de otros procesos si el final del archivo o la
+     * generación han cambiado desde la última vez.
+     */
+    private void comprobarCambios() {
+        if ((long) LARGO.getAcquire(mapa, POS_FIN) != leidoHasta || generacion() != generacionLeida) {
+            synchronized (this) {
+                sincronizar();
+            }
+        }
+    }
+
+    /**
+     * Busca una clave que no está en la caché: primero entre las escrituras
+     * pendientes y después en el archivo.
+     */
+    private Entrada cargar(String clave) {
+        Entrada pendiente = pendientes.get(clave);
+        if (pendiente != null) {
+            return pendiente;
+        }
+        synchronized (this) {
+            while (true) {
+                sincronizar();
+                long generacion = generacionLeida;
+                Integer posicion = indice.get(clave);
+                Entrada entrada = posicion == null ? AUSENTE : leerRegistro(posicion);
+                if (generacion() == generacion) {
+                    if (entrada == null) {
+                        // Registro dañado sin que nadie esté compactando
+                        entrada = AUSENTE;
+                    }
+                    // Una escritura local hecha mientras tanto es más reciente y se respeta
+                    Entrada previa = cache.putIfAbsent(clave, entrada);
+                    recortarCache();
+                    return previa != null ? previa : entrada;
+                }
+            }
+        }
+    }
+
+    /**
+     * Pone el índice al día con el archivo. Si otro proceso lo ha compactado
+     * se vuelve a leer entero. Debe llamarse con el monitor del almacén.
+     */
+    private void sincronizar() {
+        while (true) {
+            long generacion = esperarGeneracionPar();
+            if (generacion != generacionLeida) {
+                indice = new HashMap<>();
+                cache.clear();
+                leidoHasta = DATOS;
+                generacionLeida = generacion;
+            }
+            long fin = Math.min((long) LARGO.getAcquire(mapa, POS_FIN), capacidad);
+            int posicion = (int) leidoHasta;
+            while (posicion + CABECERA_REGISTRO <= fin) {
+                // Cada longitud se lee una vez y se comprueba antes de usarla
+                int longitud = mapa.getInt(posicion);
+                int longitudClave = mapa.getShort(posicion + 12);
+                if (longitud < CABECERA_REGISTRO + Math.max(longitudClave, 0) || longitudClave < 0
+                        || posicion + (long) longitud > fin) {
+                    break;
+                }
+                String clave = leerClave(posicion, longitudClave);
+                if (mapa.getInt(posicion + 14 + longitudClave) == BORRADO) {
+                    indice.remove(clave);
+                } else {
+                    indice.put(clave, posicion);
+                }
+                cache.remove(clave);
+                posicion += longitud;
+            }
+            if (generacion() == generacion) {
+                leidoHasta = fin;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Bucle del hilo escritor: espera a que haya escrituras pendientes, deja
+     * pasar el intervalo del lote para juntar más y las vuelca.
+     */
+    private void escribir() {
+        while (!apagando) {
+            if (pendientes.isEmpty()) {
+                LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+                continue;
+            }
+            try {
+                Thread.sleep(espera);
+            } catch (InterruptedException e) {
+                break;
+            }
+            volcar();
+        }
+        volcar();
+    }
+
+    /**
+     * Escribe en el archivo todas las escrituras pendientes, con el archivo
+     * bloqueado para los demás procesos. Si el lote no se puede escribir se
+     * pierde y sus claves salen de la caché, para que este proceso no siga
+     * viendo valores que los demás no tienen.
+     */
+    private void volcar() {
+        List<Map.Entry<String, Entrada>> lote = new ArrayList<>(pendientes.entrySet());
+        if (lote.isEmpty()) {
+            return;
+        }
+        List<byte[]> claves = new ArrayList<>(lote.size());
+        int necesario = 0;
+        for (Map.Entry<String, Entrada> pendiente : lote) {
+            byte[] clave = pendiente.getKey().getBytes(StandardCharsets.UTF_8);
+            claves.add(clave);
+            byte[] valor = pendiente.getValue().valor;
+            necesario += CABECERA_REGISTRO + clave.length + (valor == null ? 0 : valor.length);
+        }
+
+        boolean escrito = false;
+        try {
+            FileLock bloqueo = canal.lock(0, DATOS, false);
+            try {
+                synchronized (this) {
+                    sincronizar();
+                    if (leidoHasta + necesario > capacidad) {
+                        compactar();
+                    }
+                    if (leidoHasta + necesario > capacidad) {
+                        Logueadora.registrar(ERROR_ESCRIBIR, "el archivo está lleno, se pierden " + lote.size() + " escrituras");
+                    } else {
+                        int posicion = (int) leidoHasta;
+                        for (int i = 0; i < lote.size(); i++) {
+                            Map.Entry<String, Entrada> pendiente = lote.get(i);
+                            if (pendiente.getValue().valor == null) {
+                                indice.remove(pendiente.getKey());
+                            } else {
+                                indice.put(pendiente.getKey(), posicion);
+                            }
+                            posicion = escribirRegistro(posicion, claves.get(i), pendiente.getValue());
+                        }
+                        LARGO.setRelease(mapa, POS_FIN, (long) posicion);
+                        leidoHasta = posicion;
+                        lotes.increment();
+                        registros.add(lote.size());
+                        escrito = true;
+                    }
+                }
+            } finally {
+                bloqueo.release();
+            }
+        } catch (IOException e) {
+            Logueadora.registrar(ERROR_ESCRIBIR, e.getMessage());
+        }
+        for (Map.Entry<String, Entrada> pendiente : lote) {
+            pendientes.remove(pendiente.getKey(), pendiente.getValue());
+            if (!escrito) {
+                // Solo si nadie la ha vuelto a escribir mientras tanto
+                cache.remove(pendiente.getKey(), pendiente.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reescribe el archivo desde el principio con la última versión viva de
+     * cada clave. Debe llamarse con el archivo bloqueado, el monitor del
+     * almacén y el índice al día.
+     */
+    private void compactar() {
+        long ahora = System.currentTimeMillis();
+        byte[] vivos = new byte[(int) leidoHasta - DATOS];
+        int ocupado = 0;
+        HashMap<String, Integer> nuevo = new HashMap<>();
+        for (Map.Entry<String, Integer> entrada : indice.entrySet()) {
+            int posicion = entrada.getValue();
+            Entrada registro = leerRegistro(posicion);
+            if (registro == null || registro.vigente(ahora) == null) {
+                continue;
+            }
+            int longitud = mapa.getInt(posicion);
+            mapa.get(posicion, vivos, ocupado, longitud);
+            nuevo.put(entrada.getKey(), DATOS + ocupado);
+            ocupado += longitud;
+        }
+
+        long generacion = generacionLeida;
+        LARGO.setRelease(mapa, POS_GENERACION, generacion + 1);
+        mapa.put(DATOS, vivos, 0, ocupado);
+        LARGO.setRelease(mapa, POS_FIN, (long) (DATOS + ocupado));
+        LARGO.setRelease(mapa, POS_GENERACION, generacion + 2);
+
+        indice = nuevo;
+        generacionLeida = generacion + 2;
+        leidoHasta = DATOS + ocupado;
+        compactaciones.increment();
+    }
+
+    private int escribirRegistro(int posicion, byte[] clave, Entrada entrada) {
+        int longitudValor = entrada.valor == null ? 0 : entrada.valor.length;
+        int longitud = CABECERA_REGISTRO + clave.length + longitudValor;
+        mapa.putInt(posicion, longitud);
+        mapa.putLong(posicion + 4, entrada.caduca);
+        mapa.putShort(posicion + 12, (short) clave.length);
+        mapa.put(posicion + 14, clave);
+        mapa.putInt(posicion + 14 + clave.length, entrada.valor == null ? BORRADO : longitudValor);
+        if (entrada.valor != null) {
+            mapa.put(posicion + CABECERA_REGISTRO + clave.length, entrada.valor);
+        }
+        return posicion + longitud;
+    }
+
+    /**
+     * Lee el valor del registro de una posición.
+     *
+     * @return la entrada, {@link #AUSENTE} si es un borrado o {@code null} si
+     * sus longitudes no encajan, lo que puede pasar mientras otro proceso
+     * compacta el archivo
+     */
+    private Entrada leerRegistro(int posicion) {
+        if (posicion < DATOS || posicion + CABECERA_REGISTRO > capacidad) {
+            return null;
+        }
+        int longitud = mapa.getInt(posicion);
+        int longitudClave = mapa.getShort(posicion + 12);
+        if (longitudClave < 0 || longitud < CABECERA_REGISTRO + longitudClave
+                || posicion + (long) longitud > capacidad) {
+            return null;
+        }
+        int longitudValor = mapa.getInt(posicion + 14 + longitudClave);
+        if (longitudValor == BORRADO) {
+            return AUSENTE;
+        }
+        if (longitudValor < 0 || CABECERA_REGISTRO + longitudClave + longitudValor != longitud) {
+            return null;
+        }
+        byte[] valor = new byte[longitudValor];
+        mapa.get(posicion + CABECERA_REGISTRO + longitudClave, valor);
+        return new Entrada(valor, mapa.getLong(posicion + 4));
+    }
+
+    private String leerClave(int posicion, int longitudClave) {
+        byte[] clave = new byte[longitudClave];
+        mapa.get(posicion + 14, clave);
+        return new String(clave, StandardCharsets.UTF_8);
+    }
+
+    private long generacion() {
+        return (long) LARGO.getAcquire(mapa, POS_GENERACION);
+    }
+
+    /**
+     * Espera a que ningún otro proceso esté compactando el archivo.
+     *
+     * <p>
+     * Si la generación sigue siendo impar pasado
+     * {@link #NANOS_ESPERA_COMPACTACION}, se bloquea el archivo, lo que espera
+     * a que el proceso que compacta termine o muera. Si con el archivo
+     * bloqueado sigue siendo impar, quien compactaba ha muerto y el archivo se
+     * vacía como al abrirlo. Si el bloqueo ya lo tiene otro hilo de este
+     * proceso, nadie más puede estar compactando.</p>
+     */
+    private long esperarGeneracionPar() {
+        long limite = System.nanoTime() + NANOS_ESPERA_COMPACTACION;
+        long generacion;
+        while (((generacion = generacion()) & 1) != 0) {
+            if (System.nanoTime() - limite < 0) {
+                Thread.onSpinWait();
+                continue;
+            }
+            try {
+                FileLock bloqueo = canal.lock(0, DATOS, false);
+                try {
+                    if ((generacion() & 1) != 0) {
+                        vaciarCompactacionInterrumpida();
+                    }
+                } finally {
+                    bloqueo.release();
+                }
+            } catch (OverlappingFileLockException e) {
+                vaciarCompactacionInterrumpida();
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se puede bloquear el almacén de estado", e);
+            }
+        }
+        return generacion;
+    }
+
+    /**
+     * Vacía el archivo tras una compactación que no terminó, cuyos datos no
+     * son fiables. Debe llamarse con el archivo bloqueado.
+     */
+    private void vaciarCompactacionInterrumpida() {
+        LARGO.setRelease(mapa, POS_FIN, (long) DATOS);
+        LARGO.setRelease(mapa, POS_GENERACION, generacion() + 1);
+    }
+
+    /**
+     * Deja la caché cercana por debajo de su máximo quitando las primeras
+     * entradas que encuentra. Las escrituras pendientes siguen visibles
+     * porque {@link #cargar(String)} las busca antes que el archivo.
+     */
+    private void recortarCache() {
+        if (cache.size() <= maxCache) {
+            return;
+        }
+        for (Iterator<String> it = cache.keySet().iterator(); it.hasNext() && cache.size() > maxCache;) {
+            it.next();
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package utilidades;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link AlmacenEstado} en la memoria del proceso, sobre un
+ * {@link ConcurrentHashMap}. Las entradas caducadas se descartan al leerlas o
+ * al sustituirlas.
+ *
+ * <p>
+ * Una clave que no se vuelve a leer, como la partida de un token de sesión
+ * firmado que el cliente abandona, no se descartaría nunca. Por eso, como
+ * mucho una vez cada {@link #MILIS_PURGA} milisegundos, la primera escritura
+ * recorre la tabla y quita todas las entradas caducadas. No hace falta un
+ * hilo: si no se escribe, la tabla no crece.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class AlmacenEstadoMemoria implements AlmacenEstado {
+
+    /**
+     * Intervalo mínimo entre dos purgas de entradas caducadas.
+     */
+    private static final long MILIS_PURGA = 60_000;
+
+    private final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+    private final AtomicLong siguientePurga = new AtomicLong(System.currentTimeMillis() + MILIS_PURGA);
+
+    /**
+     * Valor guardado y su caducidad.
+     */
+    private static final class Entrada {
+
+        final byte[] valor;
+        final long caduca;
+
+        Entrada(byte[] valor, long caduca) {
+            this.valor = valor;
+            this.caduca = caduca;
+        }
+
+        boolean caducada(long ahora) {
+            return caduca != 0 && caduca <= ahora;
+        }
+    }
+
+    @Override
+    public byte[] leer(String clave) {
+        Entrada entrada = entradas.get(clave);
+        if (entrada == null) {
+            return null;
+        }
+        if (entrada.caducada(System.currentTimeMillis())) {
+            entradas.remove(clave, entrada);
+            return null;
+        }
+        return entrada.valor;
+    }
+
+    @Override
+    public void escribir(String clave, byte[] valor, long caduca) {
+        entradas.put(clave, new Entrada(valor, caduca));
+        purgarSiToca();
+    }
+
+    @Override
+    public boolean reemplazar(String clave, byte[] esperado, byte[] nuevo, long caduca) {
+        boolean[] guardado = new boolean[1];
+        entradas.compute(clave, (k, actual) -> {
+            byte[] valor = actual == null || actual.caducada(System.currentTimeMillis()) ? null : actual.valor;
+            if (valor != esperado) {
+                return actual;
+            }
+            guardado[0] = true;
+            return new Entrada(nuevo, caduca);
+        });
+        purgarSiToca();
+        return guardado[0];
+    }
+
+    @Override
+    public void borrar(String clave) {
+        entradas.remove(clave);
+    }
+
+    @Override
+    public boolean isCompartido() {
+        return false;
+    }
+
+    /**
+     * Quita las entradas caducadas si ha pasado el intervalo de purga. Solo
+     * la hace el hilo que consigue adelantar la siguiente purga.
+     */
+    private void purgarSiToca() {
+        long ahora = System.currentTimeMillis();
+        long prevista = siguientePurga.get();
+        if (ahora < prevista || !siguientePurga.compareAndSet(prevista, ahora + MILIS_PURGA)) {
+            return;
+        }
+        entradas.values().removeIf(entrada -> entrada.caducada(ahora));
+    }
+}
@@ -0,0 +1,145 @@
+package utilidades;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de duraciones en nanosegundos con cubetas logarítmicas, al
+ * estilo de HdrHistogram.
+ *
+ * <p>
+ * Cada potencia de dos se divide en cuatro cubetas lineales, así que el error
+ * relativo de cualquier valor es como mucho del 25 % y el histograma cubre
+ * desde un nanosegundo hasta siglos con un número fijo de cubetas. Cada
+ * cubeta es un {@link LongAdder}: registrar un valor es un cálculo de bits y
+ * un incremento sin contención, apto para el camino de cada petición.</p>
+ *
+ * <p>
+ * Las lecturas no son atómicas respecto a las escrituras concurrentes, lo
+ * normal en unas métricas.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class Histograma {
+
+    /**
+     * Cubetas por cada potencia de dos.
+     */
+    private static final int SUBCUBETAS = 4;
+    private static final int CUBETAS = 62 * SUBCUBETAS;
+
+    private final LongAdder[] cuentas = new LongAdder[CUBETAS];
+    private final LongAdder total = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+    private final LongAccumulator maximo = new LongAccumulator(Long::max, 0);
+
+    public Histograma() {
+        for (int i = 0; i < CUBETAS; i++) {
+            cuentas[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Anota una duración.
+     *
+     * @param nanos duración en nanosegundos; los negativos cuentan como cero
+     */
+    public void registrar(long nanos) {
+        long valor = Math.max(0, nanos);
+        cuentas[indice(valor)].increment();
+        total.increment();
+        suma.add(valor);
+        maximo.accumulate(valor);
+    }
+
+    /**
+     * @return número de valores anotados
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return suma de los valores anotados, en nanosegundos
+     */
+    public long getSuma() {
+        return suma.sum();
+    }
+
+    /**
+     * @return mayor valor anotado, en nanosegundos
+     */
+    public long getMaximo() {
+        return maximo.get();
+    }
+
+    /**
+     * Cuenta los valores menores o iguales que un límite, como las cubetas
+     * acumuladas de Prometheus. Conviene usar potencias de dos como límite,
+     * que coinciden con el borde de una cubeta.
+     *
+     * @param limite límite en nanosegundos
+     * @return valores anotados que no superan el límite
+     */
+    public long contarHasta(long limite) {
+        long cuenta = 0;
+        for (int i = 0; i < CUBETAS && limiteSuperior(i) - 1 <= limite; i++) {
+            cuenta += cuentas[i].sum();
+        }
+        return cuenta;
+    }
+
+    /**
+     * Estima un percentil a partir de las cubetas.
+     *
+     * @param percentil percentil entre 0 y 100
+     * @return el límite superior de la cubeta que contiene el percentil, en
+     * nanosegundos, o 0 si no hay valores
+     */
+    public long percentil(double percentil) {
+        long[] copia = new long[CUBETAS];
+        long cuenta = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            copia[i] = cuentas[i].sum();
+            cuenta += copia[i];
+        }
+        if (cuenta == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(cuenta * percentil / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += copia[i];
+            if (acumulado >= objetivo) {
+                return Math.min(limiteSuperior(i) - 1, getMaximo());
+            }
+        }
+        return getMaximo();
+    }
+
+    /**
+     * Cubeta de un valor: los valores 0 a 3 tienen la suya propia y a partir
+     * de ahí cada potencia de dos se divide en {@link #SUBCUBETAS} tramos
+     * iguales.
+     */
+    private static int indice(long valor) {
+        if (valor < SUBCUBETAS) {
+            return (int) valor;
+        }
+        int exponente = 63 - Long.numberOfLeadingZeros(valor);
+        int tramo = (int) (valor >>> (exponente - 2)) & (SUBCUBETAS - 1);
+        return Math.min((exponente - 1) * SUBCUBETAS + tramo, CUBETAS - 1);
+    }
+
+    /**
+     * Primer valor que ya no cabe en la cubeta.
+     */
+    private static long limiteSuperior(int indice) {
+        if (indice < SUBCUBETAS) {
+            return indice + 1;
+        }
+        int exponente = indice / SUBCUBETAS + 1;
+        int tramo = indice % SUBCUBETAS;
+        return (long) (SUBCUBETAS + tramo + 1) << (exponente - 2);
+    }
+}
@@ -0,0 +1,37 @@
+package utilidades;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Utilidades para los pools de hilos del servidor.
+ *
+ * <p>
+ * Los pools de conexiones y de BCrypt usan el mismo número mínimo y máximo de
+ * hilos y se redimensionan al recargar la configuración.</p>
+ *
+ * <p>
+ * Esta clase no está diseñada para ser instanciada.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class PoolsHilos {
+
+    /**
+     * Cambia el número de hilos de un pool con el mismo mínimo y máximo. El
+     * orden de los cambios evita que el mínimo supere al máximo en algún
+     * momento, lo que {@link ThreadPoolExecutor} no admite. Si se reduce, los
+     * hilos sobrantes terminan al acabar su tarea actual.
+     *
+     * @param pool pool a redimensionar
+     * @param hilos nuevo número de hilos
+     */
+    public static void redimensionar(ThreadPoolExecutor pool, int hilos) {
+        if (hilos > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(hilos);
+            pool.setCorePoolSize(hilos);
+        } else {
+            pool.setCorePoolSize(hilos);
+            pool.setMaximumPoolSize(hilos);
+        }
+    }
+}
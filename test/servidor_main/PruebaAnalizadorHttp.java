@@ -0,0 +1,310 @@
+package servidor_main;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Pruebas de {@link AnalizadorHttp}: línea de petición, finales de línea,
+ * cuerpos {@code chunked} con cabeceras finales, pipelining, límites de
+ * tamaño y cuerpos UTF-8 con caracteres multibyte.
+ *
+ * <p>
+ * Cada prueba es un método que lanza {@link AssertionError} si falla. Se
+ * ejecutan todas aunque alguna falle y el proceso termina con código 1 si ha
+ * fallado alguna.</p>
+ *
+ * <p>
+ * Uso: {@code ant test}.</p>
+ *
+ * @author Antonio Álvarez Cárdenas
+ */
+public class PruebaAnalizadorHttp {
+
+    /**
+     * Prueba a ejecutar.
+     */
+    private interface Prueba {
+
+        void ejecutar() throws Exception;
+    }
+
+    private static int fallidas = 0;
+
+    public static void main(String[] args) {
+        probar("Línea de petición", PruebaAnalizadorHttp::lineaPeticion);
+        probar("Línea de petición HTTP/1.0", PruebaAnalizadorHttp::lineaPeticionHttp10);
+        probar("Línea de petición mal formada", PruebaAnalizadorHttp::lineaPeticionMalFormada);
+        probar("Finales de línea CRLF y LF", PruebaAnalizadorHttp::finalesDeLinea);
+        probar("Cookie sessionID entre otras", PruebaAnalizadorHttp::cookieSesion);
+        probar("Cuerpo con Content-Length", PruebaAnalizadorHttp::cuerpoContentLength);
+        probar("Cuerpo chunked", PruebaAnalizadorHttp::cuerpoChunked);
+        probar("Cabeceras finales", PruebaAnalizadorHttp::cabecerasFinales);
+        probar("Cabeceras finales demasiado grandes", PruebaAnalizadorHttp::cabecerasFinalesGrandes);
+        probar("Pipelining", PruebaAnalizadorHttp::pipelining);
+        probar("Cabeceras demasiado grandes", PruebaAnalizadorHttp::cabecerasGrandes);
+        probar("Cuerpo demasiado grande", PruebaAnalizadorHttp::cuerpoGrande);
+        probar("Trozo demasiado grande", PruebaAnalizadorHttp::trozoGrande);
+        probar("Cuerpo UTF-8 multibyte", PruebaAnalizadorHttp::cuerpoMultibyte);
+        probar("Cuerpo chunked UTF-8 multibyte", PruebaAnalizadorHttp::cuerpoChunkedMultibyte);
+
+        System.out.println(fallidas == 0 ? "Todas las pruebas correctas" : fallidas + " pruebas fallidas");
+        if (fallidas > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void lineaPeticion() {
+        Peticion peticion = analizarEntera(new AnalizadorHttp(), "GET /index?x=1 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        comprobarIguales("GET", peticion.getMetodo());
+        comprobarIguales("/index?x=1", peticion.getUrl());
+        comprobarIguales("", peticion.getSessionID());
+        comprobarIguales("", peticion.getCuerpo());
+        comprobar(peticion.isKeepAlive(), "HTTP/1.1 mantiene la conexión por defecto");
+
+        peticion = analizarEntera(new AnalizadorHttp(), "GET / HTTP/1.1\r\nConnection: close\r\n\r\n");
+        comprobar(!peticion.isKeepAlive(), "Connection: close cierra la conexión");
+    }
+
+    private static void lineaPeticionHttp10() {
+        Peticion peticion = analizarEntera(new AnalizadorHttp(), "GET / HTTP/1.0\r\n\r\n");
+        comprobar(!peticion.isKeepAlive(), "HTTP/1.0 cierra la conexión por defecto");
+
+        peticion = analizarEntera(new AnalizadorHttp(), "GET / HTTP/1.0\r\nConnection: Keep-Alive\r\n\r\n");
+        comprobar(peticion.isKeepAlive(), "HTTP/1.0 con keep-alive mantiene la conexión");
+    }
+
+    private static void lineaPeticionMalFormada() {
+        comprobarRechazada(new AnalizadorHttp(), "/sinmetodo\r\n\r\n");
+        comprobarRechazada(new AnalizadorHttp(), "GET / HTTP/1.1\r\nCabecera sin dos puntos\r\n\r\n");
+        comprobarRechazada(new AnalizadorHttp(), "POST / HTTP/1.1\r\nContent-Length: 1a\r\n\r\n");
+    }
+
+    private static void finalesDeLinea() {
+        String crlf = "POST /dados HTTP/1.1\r\nCookie: sessionID=abc\r\nContent-Length: 3\r\n\r\nx=1";
+        String lf = crlf.replace("\r\n", "\n");
+        for (String texto : new String[]{crlf, lf}) {
+            Peticion peticion = analizarEntera(new AnalizadorHttp(), texto);
+            comprobarIguales("POST", peticion.getMetodo());
+            comprobarIguales("/dados", peticion.getUrl());
+            comprobarIguales("abc", peticion.getSessionID());
+            comprobarIguales("x=1", peticion.getCuerpo());
+        }
+    }
+
+    private static void cookieSesion() {
+        Peticion peticion = analizarEntera(new AnalizadorHttp(),
+                "GET / HTTP/1.1\r\ncookie: tema=oscuro; sessionID=0f8e-6d1c; idioma=es\r\n\r\n");
+        comprobarIguales("0f8e-6d1c", peticion.getSessionID());
+    }
+
+    private static void cuerpoContentLength() {
+        String cuerpo = "user=a%40b.com&pass=Abc123&accion=crear";
+        String texto = "POST / HTTP/1.1\r\nContent-Length: " + cuerpo.length() + "\r\n\r\n" + cuerpo;
+        for (int trozo : new int[]{Integer.MAX_VALUE, 1, 7}) {
+            comprobarIguales(cuerpo, analizarEntera(new AnalizadorHttp(), texto, trozo).getCuerpo());
+        }
+    }
+
+    private static void cuerpoChunked() {
+        String texto = "POST / HTTP/1.1\r\nTransfer-Encoding: gzip, Chunked\r\n\r\n"
+                + "4\r\nuser\r\n"
+                + "A;extension=1\r\n=a%40b.com\r\n"
+                + "0\r\n\r\n";
+        for (int trozo : new int[]{Integer.MAX_VALUE, 1, 3}) {
+            Peticion peticion = analizarEntera(new AnalizadorHttp(), texto, trozo);
+            comprobarIguales("user=a%40b.com", peticion.getCuerpo());
+        }
+        comprobarRechazada(new AnalizadorHttp(), "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n2\r\nabc\r\n0\r\n\r\n");
+        comprobarRechazada(new AnalizadorHttp(), "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n");
+    }
+
+    private static void cabecerasFinales() {
+        String texto = "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "3\r\nx=1\r\n"
+                + "0\r\n"
+                + "Expires: 0\r\n"
+                + "X-Suma: 1234\r\n"
+                + "\r\n"
+                + "GET /siguiente HTTP/1.1\r\n\r\n";
+        AnalizadorHttp analizador = new AnalizadorHttp();
+        byte[] datos = bytes(texto);
+        int consumidos = analizador.analizar(datos, 0, datos.length);
+        comprobar(analizador.isCompleta(), "La petición debe estar completa tras las cabeceras finales");
+        comprobarIguales("x=1", analizador.getPeticion().getCuerpo());
+        comprobarIguales(texto.indexOf("GET /siguiente"), consumidos);
+    }
+
+    private static void cabecerasFinalesGrandes() {
+        StringBuilder texto = new StringBuilder("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n1\r\nx\r\n0\r\n");
+        for (int i = 0; i < 100; i++) {
+            texto.append("X-Final: aaaaaaaaaa\r\n");
+        }
+        texto.append("\r\n");
+        comprobarRechazada(new AnalizadorHttp(512, 1024), texto.toString());
+    }
+
+    private static void pipelining() {
+        String primera = "POST /adivina HTTP/1.1\r\nContent-Length: 9\r\n\r\nnumero=50";
+        String segunda = "GET /index HTTP/1.1\r\nCookie: sessionID=s2\r\n\r\n";
+        String tercera = "\r\nGET /dados HTTP/1.1\r\nConnection: close\r\n\r\n";
+        byte[] datos = bytes(primera + segunda + tercera);
+
+        AnalizadorHttp analizador = new AnalizadorHttp();
+        int posicion = analizador.analizar(datos, 0, datos.length);
+        comprobar(analizador.isCompleta(), "La primera petición debe estar completa");
+        comprobarIguales(primera.length(), posicion);
+        comprobarIguales("numero=50", analizador.getPeticion().getCuerpo());
+
+        analizador.reiniciar();
+        posicion += analizador.analizar(datos, posicion, datos.length);
+        comprobar(analizador.isCompleta(), "La segunda petición debe estar completa");
+        comprobarIguales(primera.length() + segunda.length(), posicion);
+        comprobarIguales("/index", analizador.getPeticion().getUrl());
+        comprobarIguales("s2", analizador.getPeticion().getSessionID());
+        comprobarIguales("", analizador.getPeticion().getCuerpo());
+
+        analizador.reiniciar();
+        posicion += analizador.analizar(datos, posicion, datos.length);
+        comprobar(analizador.isCompleta(), "La tercera petición debe estar completa");
+        comprobarIguales(datos.length, posicion);
+        comprobarIguales("/dados", analizador.getPeticion().getUrl());
+        comprobarIguales("", analizador.getPeticion().getSessionID());
+        comprobar(!analizador.getPeticion().isKeepAlive(), "La tercera petición cierra la conexión");
+    }
+
+    private static void cabecerasGrandes() {
+        StringBuilder texto = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i < 100; i++) {
+            texto.append("X-Relleno: aaaaaaaaaa\r\n");
+        }
+        texto.append("\r\n");
+        comprobarRechazada(new AnalizadorHttp(512, 1024), texto.toString());
+        comprobarRechazada(new AnalizadorHttp(512, 1024), "GET /" + "a".repeat(600) + " HTTP/1.1\r\n\r\n");
+
+        // Justo en el límite se acepta; cuentan todos los bytes salvo los \n
+        String justa = "GET / HTTP/1.1\r\nX: " + "a".repeat(100) + "\r\n\r\n";
+        int bytes = justa.replace("\n", "").length();
+        analizarEntera(new AnalizadorHttp(bytes, 1024), justa);
+    }
+
+    private static void cuerpoGrande() {
+        comprobarRechazada(new AnalizadorHttp(512, 1024), "POST / HTTP/1.1\r\nContent-Length: 1025\r\n\r\n");
+        comprobarRechazada(new AnalizadorHttp(512, 1024), "POST / HTTP/1.1\r\nContent-Length: 99999999999999999999\r\n\r\n");
+        analizarEntera(new AnalizadorHttp(512, 1024), "POST / HTTP/1.1\r\nContent-Length: 1024\r\n\r\n" + "a".repeat(1024));
+    }
+
+    private static void trozoGrande() {
+        comprobarRechazada(new AnalizadorHttp(512, 1024),
+                "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n401\r\n");
+        // La suma de los trozos también cuenta
+        comprobarRechazada(new AnalizadorHttp(512, 1024),
+                "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n200\r\n" + "a".repeat(512)
+                + "\r\n201\r\n");
+    }
+
+    private static void cuerpoMultibyte() {
+        String cuerpo = "nombre=José Ñúñez&mensaje=¿Qué tal? 日本語 🎲";
+        byte[] utf8 = cuerpo.getBytes(StandardCharsets.UTF_8);
+        String texto = "POST / HTTP/1.1\r\nContent-Length: " + utf8.length + "\r\n\r\n";
+        byte[] datos = concatenar(bytes(texto), utf8);
+        // Trozos de un byte parten todos los caracteres multibyte
+        for (int trozo : new int[]{Integer.MAX_VALUE, 1, 2, 3}) {
+            Peticion peticion = analizarEntera(new AnalizadorHttp(), datos, trozo);
+            comprobarIguales(cuerpo, peticion.getCuerpo());
+        }
+    }
+
+    private static void cuerpoChunkedMultibyte() {
+        String cuerpo = "ñandú€🎲";
+        byte[] utf8 = cuerpo.getBytes(StandardCharsets.UTF_8);
+        // Los trozos se cortan en mitad de los caracteres
+        byte[] datos = concatenar(
+                bytes("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\n"),
+                Arrays.copyOfRange(utf8, 0, 3),
+                bytes("\r\n" + Integer.toHexString(utf8.length - 3) + "\r\n"),
+                Arrays.copyOfRange(utf8, 3, utf8.length),
+                bytes("\r\n0\r\n\r\n"));
+        for (int trozo : new int[]{Integer.MAX_VALUE, 1}) {
+            comprobarIguales(cuerpo, analizarEntera(new AnalizadorHttp(), datos, trozo).getCuerpo());
+        }
+    }
+
+    /**
+     * Analiza una petición entregándola de una vez y comprueba que se consume
+     * entera.
+     */
+    private static Peticion analizarEntera(AnalizadorHttp analizador, String texto) {
+        return analizarEntera(analizador, bytes(texto), Integer.MAX_VALUE);
+    }
+
+    private static Peticion analizarEntera(AnalizadorHttp analizador, String texto, int trozo) {
+        return analizarEntera(analizador, bytes(texto), trozo);
+    }
+
+    /**
+     * Analiza una petición entregándola en trozos de {@code trozo} bytes,
+     * como si llegara en varias lecturas de la conexión.
+     */
+    private static Peticion analizarEntera(AnalizadorHttp analizador, byte[] datos, int trozo) {
+        int posicion = 0;
+        while (posicion < datos.length) {
+            comprobar(!analizador.isCompleta(), "Petición completa antes de tiempo en el byte " + posicion);
+            int hasta = (int) Math.min(datos.length, (long) posicion + trozo);
+            int consumidos = analizador.analizar(datos, posicion, hasta);
+            comprobarIguales(hasta - posicion, consumidos);
+            posicion = hasta;
+        }
+        comprobar(analizador.isCompleta(), "La petición debe estar completa");
+        return analizador.getPeticion();
+    }
+
+    private static void comprobarRechazada(AnalizadorHttp analizador, String texto) {
+        byte[] datos = bytes(texto);
+        try {
+            analizador.analizar(datos, 0, datos.length);
+        } catch (IllegalArgumentException e) {
+            return;
+        }
+        throw new AssertionError("Se esperaba un rechazo: " + texto.substring(0, Math.min(60, texto.length())));
+    }
+
+    private static void comprobar(boolean condicion, String mensaje) {
+        if (!condicion) {
+            throw new AssertionError(mensaje);
+        }
+    }
+
+    private static void comprobarIguales(Object esperado, Object obtenido) {
+        if (!esperado.equals(obtenido)) {
+            throw new AssertionError("Se esperaba <" + esperado + "> pero se ha obtenido <" + obtenido + ">");
+        }
+    }
+
+    private static void probar(String nombre, Prueba prueba) {
+        try {
+            prueba.ejecutar();
+            System.out.println("OK     " + nombre);
+        } catch (Throwable e) {
+            fallidas++;
+            System.out.println("FALLO  " + nombre + ": " + e);
+        }
+    }
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] concatenar(byte[]... partes) {
+        int total = 0;
+        for (byte[] parte : partes) {
+            total += parte.length;
+        }
+        byte[] resultado = new byte[total];
+        int posicion = 0;
+        for (byte[] parte : partes) {
+            System.arraycopy(parte, 0, resultado, posicion, parte.length);
+            posicion += parte.length;
+        }
+        return resultado;
+    }
+}